@@ -0,0 +1,67 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * {@link MonteCarloAi} iterations per second on one thread from the start of a standard game,
+ * per engine; each operation is one iteration of a fresh search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MonteCarloBenchmark {
+
+	private static final int ITERATIONS = 500;
+
+	@Param({"my", "packed"}) public String engine;
+
+	private GameState state;
+
+	@Setup(Level.Trial) public void setUp() throws IOException {
+		Factory<GameState> factory = engine.equals("my") ?
+				new MyGameStateFactory() : new PackedGameStateFactory();
+		var detectives = ImmutableList.<Player>builder();
+		var locations = ScotlandYard.generateDetectiveLocations(0, 5);
+		for (int i = 0; i < 5; i++)
+			detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		state = factory.build(new GameSetup(ScotlandYard.standardGraph(),
+				ScotlandYard.STANDARD24MOVES), new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(0)),
+				detectives.build());
+	}
+
+	@Benchmark @OperationsPerInvocation(ITERATIONS) public Move search() {
+		return new MonteCarloAi(1, 0).search(state, Long.MAX_VALUE, ITERATIONS);
+	}
+}
@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Microbenchmarks of the game model, for every engine; see {@link GraphBenchmark} for reading
+ * the graph.
+ * <br>
+ * Game states memoize their available moves, so the move generation benchmarks build a fresh
+ * state per invocation; subtract {@link #build()} to get the cost of generation alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+	@Param({"my", "packed"}) public String engine;
+
+	private Factory<GameState> factory;
+	private GameSetup setup;
+	private Player mrX;
+	private Player mrXWithoutDoubles;
+	private ImmutableList<Player> detectives;
+	private GameState start;
+	private Move mrXMove;
+	private GameState detectivesTurn;
+	private Move detectiveMove;
+	private Random random;
+
+	@Setup(Level.Trial) public void setUp() throws IOException {
+		factory = engine.equals("my") ? new MyGameStateFactory() : new PackedGameStateFactory();
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		mrX = new Player(MRX, defaultMrXTickets(), 104);
+		mrXWithoutDoubles = new Player(MRX, ImmutableMap.of(Ticket.TAXI, 4, Ticket.BUS, 3,
+				Ticket.UNDERGROUND, 3, Ticket.DOUBLE, 0, Ticket.SECRET, 5), 104);
+		detectives = ImmutableList.of(
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(GREEN, defaultDetectiveTickets(), 29),
+				new Player(BLUE, defaultDetectiveTickets(), 94),
+				new Player(WHITE, defaultDetectiveTickets(), 50),
+				new Player(YELLOW, defaultDetectiveTickets(), 138));
+		start = factory.build(setup, mrX, detectives);
+		mrXMove = start.getAvailableMoves().iterator().next();
+		detectivesTurn = start.advance(mrXMove);
+		detectiveMove = detectivesTurn.getAvailableMoves().iterator().next();
+		random = new Random(42);
+	}
+
+	@Benchmark public GameState build() {
+		return factory.build(setup, mrX, detectives);
+	}
+
+	@Benchmark public ImmutableSet<Move> availableMovesMrX() {
+		return factory.build(setup, mrX, detectives).getAvailableMoves();
+	}
+
+	@Benchmark public ImmutableSet<Move> availableMovesMrXWithoutDoubles() {
+		return factory.build(setup, mrXWithoutDoubles, detectives).getAvailableMoves();
+	}
+
+	@Benchmark public ImmutableSet<Move> availableMovesDetectives() {
+		// the moves of all five detectives, on a fresh state as they are memoized
+		return factory.build(setup, mrX, detectives).advance(mrXMove).getAvailableMoves();
+	}
+
+	@Benchmark public GameState advanceMrX() {
+		return start.advance(mrXMove);
+	}
+
+	@Benchmark public GameState advanceDetective() {
+		return detectivesTurn.advance(detectiveMove);
+	}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS) public GameState randomPlayout() {
+		GameState state = start;
+		while (!state.isGameOver()) {
+			var moves = state.getAvailableMoves().asList();
+			state = state.advance(moves.get(random.nextInt(moves.size())));
+		}
+		return state;
+	}
+
+	@Benchmark public ImmutableBoard immutableBoard() {
+		return new ImmutableBoard(detectivesTurn);
+	}
+
+}
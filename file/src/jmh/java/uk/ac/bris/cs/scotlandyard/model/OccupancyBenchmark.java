@@ -0,0 +1,74 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark of the detective occupancy check of move generation on the standard map with
+ * five detectives, at 91, 29, 94, 50 and 138: every two-step route from every station is checked
+ * for free destinations, as double moves are, by scanning the detectives' locations and by a
+ * {@link StationSet}. See {@link ModelBenchmark} for whole move generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OccupancyBenchmark {
+
+	private CompactGraph graph;
+	private int[] detectives;
+	private StationSet occupied;
+
+	@Setup public void setUp() throws IOException {
+		graph = CompactGraph.of(ScotlandYard.standardGraph());
+		detectives = new int[]{91, 29, 94, 50, 138};
+		occupied = new StationSet(graph.nodeBound());
+		for (int location : detectives) occupied.add(location);
+	}
+
+	private boolean scan(int station) {
+		for (int location : detectives) if (location == station) return true;
+		return false;
+	}
+
+	@Benchmark public int listScan() {
+		int free = 0;
+		for (int source = 0; source < graph.nodeBound(); source++) {
+			for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+				int destination1 = graph.target(e1);
+				if (scan(destination1)) continue;
+				for (int e2 = graph.edgeStart(destination1); e2 < graph.edgeEnd(destination1); e2++)
+					if (!scan(graph.target(e2))) free++;
+			}
+		}
+		return free;
+	}
+
+	@Benchmark public int stationSet() {
+		int free = 0;
+		for (int source = 0; source < graph.nodeBound(); source++) {
+			for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+				int destination1 = graph.target(e1);
+				if (occupied.contains(destination1)) continue;
+				for (int e2 = graph.edgeStart(destination1); e2 < graph.edgeEnd(destination1); e2++)
+					if (!occupied.contains(graph.target(e2))) free++;
+			}
+		}
+		return free;
+	}
+
+}
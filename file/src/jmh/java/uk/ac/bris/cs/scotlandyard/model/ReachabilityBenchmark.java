@@ -0,0 +1,63 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.ImmutableIntArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Per call latency of {@link Reachability} on the standard map, searching without the result
+ * cache; {@link #cached()} is a repeated query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReachabilityBenchmark {
+
+	private Reachability reachability;
+	private ImmutableMap<Ticket, Integer> scarce;
+
+	@Setup(Level.Trial) public void setUp() throws IOException {
+		reachability = Reachability.of(ScotlandYard.standardGraph());
+		scarce = ImmutableMap.of(Ticket.TAXI, 3, Ticket.BUS, 2,
+				Ticket.UNDERGROUND, 1, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+	}
+
+	@Benchmark public ImmutableIntArray detective() {
+		return reachability.searchTurns(91, defaultDetectiveTickets(), Integer.MAX_VALUE);
+	}
+
+	@Benchmark public ImmutableIntArray detectiveScarceTickets() {
+		return reachability.searchTurns(91, scarce, Integer.MAX_VALUE);
+	}
+
+	@Benchmark public ImmutableIntArray mrX() {
+		return reachability.searchTurns(104, defaultMrXTickets(), Integer.MAX_VALUE);
+	}
+
+	@Benchmark public ImmutableIntArray cached() {
+		return reachability.turns(91, defaultDetectiveTickets(), Integer.MAX_VALUE);
+	}
+
+}
@@ -0,0 +1,99 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.primitives.ImmutableIntArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * How the model scales with the size of the map, on maps from {@link MapGenerator} with a fixed
+ * seed. Run a single size with {@code -Djmh.filter="ScalingBenchmark -p stations=100000"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+
+	@Param({"1000", "10000", "100000"}) public int stations;
+
+	private String graphText;
+	private Path binary;
+	private GameSetup setup;
+	private Player mrX;
+	private ImmutableList<Player> detectives;
+	private Reachability reachability;
+
+	@Setup public void setUp() throws IOException {
+		MapGenerator map = MapGenerator.generate(stations, 1);
+		graphText = map.graphText();
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = map.graph();
+		binary = Files.createTempFile("graph", ".bin");
+		BinaryGraph.write(graph, ImmutableMap.of(), binary);
+		setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		mrX = new Player(MRX, defaultMrXTickets(), stations / 2);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < ScotlandYard.DETECTIVES.size(); i++)
+			players.add(new Player(ScotlandYard.DETECTIVES.asList().get(i), defaultDetectiveTickets(),
+					1 + i * (stations / ScotlandYard.DETECTIVES.size())));
+		detectives = players.build();
+		reachability = Reachability.of(graph);
+	}
+
+	@TearDown public void tearDown() throws IOException {
+		Files.deleteIfExists(binary);
+	}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS) public MapGenerator generate() {
+		return MapGenerator.generate(stations, 1);
+	}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ImmutableValueGraph<Integer, ImmutableSet<Transport>> readGraph() {
+		return ScotlandYard.readGraph(graphText);
+	}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ImmutableValueGraph<Integer, ImmutableSet<Transport>> readBinaryGraph()
+			throws IOException {
+		return BinaryGraph.read(binary).graph();
+	}
+
+	@Benchmark public ImmutableSet<Move> availableMovesMrX() {
+		GameState state = new MyGameStateFactory().build(setup, mrX, detectives);
+		return state.getAvailableMoves();
+	}
+
+	@Benchmark public ImmutableIntArray detectiveReachability() {
+		return reachability.searchTurns(1, defaultDetectiveTickets(), Integer.MAX_VALUE);
+	}
+
+}
@@ -0,0 +1,338 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.AnytimeAi;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveEncoding;
+import uk.ac.bris.cs.scotlandyard.model.MutableGameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.SearchPool;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * MrX by iterative deepening alpha-beta search on a {@link MutableGameState}.
+ * <br>
+ * MrX knows where every detective is, so he can search the game tree directly. The search is
+ * paranoid: the detectives play as one side minimising MrX's score, and each detective's move is
+ * a ply. Every detective still to move in the round is branched on, as the order matters: a
+ * detective may move onto a station another detective left earlier in the round. Orders that
+ * reach the same position meet in the {@link TranspositionTable}. MrX's moves are tried furthest
+ * from the nearest detective first and detectives' moves closest to MrX first, after the best
+ * move stored in the table. Leaves are scored by the distances of the detectives to MrX.
+ * <br>
+ * The search runs as a turn of the {@link SearchPool} on the calling thread. It checks every few
+ * thousand nodes whether the turn has expired, a safety margin before the timeout, or the thread
+ * was interrupted, and stops; it then plays the best move of the deepest iteration completed,
+ * which is also published as the best move so far after every iteration.
+ * Positions must use stations up to {@link MoveEncoding#MAX_STATION}.
+ * <br>
+ * The detectives do not know where MrX is, so they cannot search the game tree; when asked to
+ * play them it hands their moves to an {@link InformationSetMctsAi}.
+ */
+public final class AlphaBetaMrXAi implements AnytimeAi {
+
+	static final int WIN = 1_000_000;
+	private static final int INFINITY = WIN + 1;
+	// scores beyond this are wins at a known distance
+	private static final int DECIDED = WIN / 2;
+	static final int MAX_PLY = TranspositionTable.MAX_DEPTH;
+	// nodes between checks of the clock
+	private static final int CHECK_INTERVAL = 1 << 11;
+	// distance given to detectives further away or unable to reach MrX
+	private static final int FAR = 10;
+
+	private final TranspositionTable table;
+	private final AtomicLong nodes = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+	private volatile long lastNodes;
+	private volatile long lastNanos;
+	private volatile int lastDepth;
+	private InformationSetMctsAi detectives;
+
+	/**
+	 * Searches with a transposition table of a million entries, 16 MiB
+	 */
+	public AlphaBetaMrXAi() { this(20); }
+
+	/**
+	 * @param tableBits the log2 of the number of transposition table entries
+	 */
+	AlphaBetaMrXAi(int tableBits) { this.table = new TranspositionTable(tableBits); }
+
+	@Nonnull @Override public String name() { return "Alpha-beta MrX"; }
+
+	@Override public void onStart() {
+		table.clear();
+		if (detectives != null) detectives.onStart();
+	}
+
+	@Override public void onTerminate() {
+		if (detectives != null) detectives.onTerminate();
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair,
+	                                        @Nonnull Consumer<Move> bestSoFar) {
+		return search(board, SearchPool.deadline(System.nanoTime(), timeoutPair), MAX_PLY,
+				bestSoFar);
+	}
+
+	@Nonnull Move search(@Nonnull Board board, long deadline, int maxDepth) {
+		return search(board, deadline, maxDepth, move -> {});
+	}
+
+	/**
+	 * @param board the board; detectives' moves are searched by {@link InformationSetMctsAi}
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @param maxDepth the deepest iteration, in plies
+	 * @param bestSoFar receives the best move of each iteration completed; not called for
+	 * detectives' moves
+	 * @return the best move of the deepest iteration completed
+	 * @throws IllegalArgumentException if there are no moves available
+	 */
+	@Nonnull Move search(@Nonnull Board board, long deadline, int maxDepth,
+	                     @Nonnull Consumer<Move> bestSoFar) {
+		var moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (moves.iterator().next().commencedBy().isDetective()) {
+			if (detectives == null) detectives = new InformationSetMctsAi();
+			return detectives.search(board, deadline, Long.MAX_VALUE);
+		}
+		long start = System.nanoTime();
+		int best;
+		Search search;
+		try (SearchPool.Turn turn = SearchPool.shared().startTurn(name(), deadline)) {
+			search = new Search(MutableGameState.of(board, moves.iterator().next().source()),
+					table, turn);
+			IntConsumer publish = code -> bestSoFar.accept(MoveEncoding.decode(code));
+			best = moves.size() == 1 ? MoveEncoding.encode(moves.iterator().next())
+					: turn.call(() -> search.iterate(maxDepth, publish));
+		}
+		long elapsed = System.nanoTime() - start;
+		lastNodes = search.nodes;
+		lastNanos = elapsed;
+		lastDepth = search.depth;
+		nodes.addAndGet(search.nodes);
+		searchNanos.addAndGet(elapsed);
+		Move move = MoveEncoding.decode(best);
+		return moves.stream().filter(move::equals).findFirst()
+				.orElseThrow(() -> new AssertionError("Searched an illegal move " + move));
+	}
+
+	/**
+	 * @return the depth of the deepest iteration completed by the last search, in plies
+	 */
+	public int lastDepth() { return lastDepth; }
+
+	/**
+	 * @return the nodes visited by the last search
+	 */
+	public long lastNodes() { return lastNodes; }
+
+	/**
+	 * @return nodes per second of the last search
+	 */
+	public double lastNodesPerSecond() { return lastNodes * 1e9 / Math.max(1, lastNanos); }
+
+	/**
+	 * @return nodes per second over all searches so far
+	 */
+	public double nodesPerSecond() { return nodes.get() * 1e9 / Math.max(1, searchNanos.get()); }
+
+	private static final class Search {
+		private final MutableGameState state;
+		private final TranspositionTable table;
+		private final DistanceOracle oracle;
+		private final SearchPool.Turn turn;
+		private final int[][] moves = new int[MAX_PLY + 1][64];
+		private final long[][] order = new long[MAX_PLY + 1][64];
+		private final MoveConsumer encoder;
+		private int[] buffer;
+		private int[] scratch = new int[64];
+		private int generated;
+		private long nodes;
+		private boolean aborted;
+		private int depth;
+
+		Search(MutableGameState state, TranspositionTable table, SearchPool.Turn turn) {
+			this.state = state;
+			this.table = table;
+			this.turn = turn;
+			this.oracle = DistanceOracle.of(state.getSetup().graph,
+					EnumSet.of(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND));
+			this.encoder = MoveEncoding.encoding(code -> {
+				if (generated == buffer.length) buffer = Arrays.copyOf(buffer, generated * 2);
+				buffer[generated++] = code;
+			});
+		}
+
+		int iterate(int maxDepth, IntConsumer publish) {
+			int best = 0;
+			for (int d = 1; d <= maxDepth; d++) {
+				long result = root(d, best);
+				if (aborted) break;
+				best = (int) result;
+				depth = d;
+				publish.accept(best);
+				// a forced result does not change with depth
+				if (Math.abs((int) (result >> 32)) > DECIDED) break;
+			}
+			if (best == 0) {
+				// not even the first iteration completed, play the first ordered move
+				sort(0, generate(0), 0);
+				best = moves[0][0];
+			}
+			return best;
+		}
+
+		// the best move and its score in the upper half
+		private long root(int depth, int previous) {
+			int n = generate(0);
+			sort(0, n, previous);
+			int alpha = -INFINITY;
+			int best = 0;
+			for (int i = 0; i < n; i++) {
+				int code = moves[0][i];
+				state.make(code);
+				int score = alphaBeta(depth - 1, 1, alpha, INFINITY);
+				state.unmake();
+				if (aborted) return 0;
+				if (score > alpha) {
+					alpha = score;
+					best = code;
+				}
+			}
+			table.store(state.zobristKey(), best, toTable(alpha, 0), depth, TranspositionTable.EXACT);
+			return (long) alpha << 32 | best & 0xFFFFFFFFL;
+		}
+
+		private int alphaBeta(int depth, int ply, int alpha, int beta) {
+			if (++nodes % CHECK_INTERVAL == 0
+					&& (turn.expired() || Thread.currentThread().isInterrupted()))
+				aborted = true;
+			if (aborted) return 0;
+			if (state.isGameOver())
+				return state.getWinner().contains(Piece.MrX.MRX) ? WIN - ply : -WIN + ply;
+			if (depth == 0 || ply == MAX_PLY) return evaluate();
+			long key = state.zobristKey();
+			long entry = table.probe(key);
+			int tableMove = 0;
+			if (entry != 0) {
+				tableMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT
+							|| bound == TranspositionTable.LOWER && score >= beta
+							|| bound == TranspositionTable.UPPER && score <= alpha)
+						return score;
+				}
+			}
+			int n = generate(ply);
+			if (n == 0) return evaluate();
+			sort(ply, n, tableMove);
+			boolean mrX = state.isMrXTurn();
+			int originalAlpha = alpha;
+			int originalBeta = beta;
+			int best = mrX ? -INFINITY : INFINITY;
+			int bestMove = 0;
+			for (int i = 0; i < n; i++) {
+				int code = moves[ply][i];
+				state.make(code);
+				int score = alphaBeta(depth - 1, ply + 1, alpha, beta);
+				state.unmake();
+				if (aborted) return 0;
+				if (mrX ? score > best : score < best) {
+					best = score;
+					bestMove = code;
+				}
+				if (mrX) alpha = Math.max(alpha, best);
+				else beta = Math.min(beta, best);
+				if (alpha >= beta) break;
+			}
+			int bound = best <= originalAlpha ? TranspositionTable.UPPER
+					: best >= originalBeta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, bestMove, toTable(best, ply), depth, bound);
+			return best;
+		}
+
+		// wins are stored relative to the node so they can be found at other plies
+		private static int toTable(int score, int ply) {
+			return score > DECIDED ? score + ply : score < -DECIDED ? score - ply : score;
+		}
+
+		private static int fromTable(int score, int ply) {
+			return score > DECIDED ? score - ply : score < -DECIDED ? score + ply : score;
+		}
+
+		// the moves of MrX, or of every detective still to move
+		private int generate(int ply) {
+			buffer = moves[ply];
+			generated = 0;
+			state.forEachAvailableMove(encoder);
+			moves[ply] = buffer;
+			return generated;
+		}
+
+		private void sort(int ply, int n, int first) {
+			int[] codes = moves[ply];
+			if (order[ply].length < n) order[ply] = new long[codes.length];
+			long[] keys = order[ply];
+			boolean mrX = state.isMrXTurn();
+			int mrXLocation = state.mrXLocation();
+			for (int i = 0; i < n; i++) {
+				int code = codes[i];
+				int destination = MoveEncoding.destination(code);
+				int priority;
+				if (code == first) priority = Integer.MIN_VALUE;
+				else if (mrX) {
+					// far from detectives first, then single moves before double moves
+					priority = -nearestDetective(destination) * 2
+							+ (MoveEncoding.isDouble(code) ? 1 : 0);
+				} else priority = distance(destination, mrXLocation);
+				keys[i] = (long) priority << 32 | i;
+			}
+			Arrays.sort(keys, 0, n);
+			if (scratch.length < n) scratch = new int[codes.length];
+			for (int i = 0; i < n; i++) scratch[i] = codes[(int) keys[i]];
+			System.arraycopy(scratch, 0, codes, 0, n);
+		}
+
+		private int distance(int from, int to) {
+			int distance = oracle.distance(from, to);
+			return distance == DistanceOracle.UNREACHABLE ? FAR : Math.min(distance, FAR);
+		}
+
+		private int nearestDetective(int station) {
+			int nearest = FAR;
+			for (int i = 1; i < state.playerCount(); i++)
+				nearest = Math.min(nearest, distance(state.location(i), station));
+			return nearest;
+		}
+
+		// MrX's score: the distance of the nearest detective weighs most, then all distances
+		private int evaluate() {
+			int mrX = state.mrXLocation();
+			int nearest = FAR;
+			int total = 0;
+			for (int i = 1; i < state.playerCount(); i++) {
+				int distance = distance(state.location(i), mrX);
+				nearest = Math.min(nearest, distance);
+				total += distance;
+			}
+			return nearest * 100 + total * 10;
+		}
+	}
+}
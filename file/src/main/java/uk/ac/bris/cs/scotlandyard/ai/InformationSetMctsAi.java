@@ -0,0 +1,481 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveEncoding;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution;
+import uk.ac.bris.cs.scotlandyard.model.MutableGameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchPool;
+import uk.ac.bris.cs.scotlandyard.model.StationSet;
+
+/**
+ * The detectives by information set Monte Carlo tree search (single observer ISMCTS).
+ * <br>
+ * The detectives do not know where MrX is, so each iteration first samples a location from a
+ * {@link MrXLocationDistribution} of his travel log and the detectives' moves, and searches the
+ * game as if MrX were there: a determinization. The tree is shared by all determinizations; an
+ * iteration only descends through moves legal in its determinization, and a move's UCT score
+ * counts the iterations it was available in rather than the visits of its parent. Playouts move
+ * greedily half of the time, detectives towards MrX and MrX away from the nearest detective.
+ * <br>
+ * Each task on the {@link SearchPool} grows its own tree from its own samples and the trees are
+ * merged at the end (root parallelisation), so tasks never contend on nodes. The merged tree is
+ * followed through the moves of every detective still to move this round, and that plan is played
+ * by the following calls without searching again as long as MrX has not moved, so all detectives
+ * are coordinated within the budget of the first call.
+ * <br>
+ * Only what the detectives may know is read from the board: the setup, the players, the
+ * detectives' locations, the tickets, the travel log and the detectives' moves. The board is
+ * never advanced, so a {@link Board.GameState} does not leak MrX's location either.
+ * Positions must use stations up to {@link MoveEncoding#MAX_STATION}, which also bounds the
+ * distance table of the greedy playouts to 64KB; larger maps are rejected before any is built.
+ * <br>
+ * MrX knows where everyone is, so when asked to play him it hands his moves to an
+ * {@link AlphaBetaMrXAi}.
+ */
+public final class InformationSetMctsAi implements Ai {
+
+	// the chance of a playout taking the greedy move
+	private static final double GREEDY = 0.5;
+	// nodes kept per thread before the trees stop growing
+	static final int MAX_NODES = 1 << 17;
+	// how strongly MrX is assumed to keep away from the detectives
+	private static final double MRX_AVOIDANCE = 1;
+
+	private final int threads;
+	private final long seed;
+	private GameSetup setup;
+	private MrXLocationDistribution distribution;
+	private DistanceOracle oracle;
+	private final ArrayDeque<Move> plan = new ArrayDeque<>();
+	private int planLog = -1;
+	private int searches;
+	private AlphaBetaMrXAi mrX;
+
+	private final AtomicLong iterations = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+	private volatile long lastIterations;
+	private volatile long lastNanos;
+	private volatile int lastCandidates;
+
+	/**
+	 * Searches on one thread per processor
+	 */
+	public InformationSetMctsAi() {
+		this(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+	}
+
+	/**
+	 * @param threads the number of search tasks; a single task runs on the calling thread
+	 * @param seed the seed of the samples and playouts; a single task searching a fixed number
+	 * of iterations is deterministic
+	 */
+	InformationSetMctsAi(int threads, long seed) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	@Nonnull @Override public String name() { return "ISMCTS detectives"; }
+
+	@Override public void onStart() {
+		plan.clear();
+		planLog = -1;
+		if (distribution != null) distribution.reset();
+		if (mrX != null) mrX.onStart();
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return search(board, SearchPool.deadline(System.nanoTime(), timeoutPair), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Plays the next move of the current plan, or searches for a new plan until the deadline or
+	 * the number of iterations, whichever comes first
+	 *
+	 * @param board the board; MrX's moves are searched by {@link AlphaBetaMrXAi}
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @param maxIterations the iterations to stop after, over all tasks
+	 * @return the first move of the plan
+	 * @throws IllegalArgumentException if there are no moves available
+	 */
+	@Nonnull Move search(@Nonnull Board board, long deadline, long maxIterations) {
+		var moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (moves.iterator().next().commencedBy().isMrX()) {
+			if (mrX == null) mrX = new AlphaBetaMrXAi();
+			return mrX.search(board, deadline, AlphaBetaMrXAi.MAX_PLY);
+		}
+		int logSize = board.getMrXTravelLog().size();
+		if (logSize == planLog && !plan.isEmpty() && moves.contains(plan.peek())) {
+			lastIterations = 0;
+			lastNanos = 0;
+			return plan.poll();
+		}
+		plan.clear();
+		long start = System.nanoTime();
+		update(board);
+		var samples = new Samples(board, distribution, oracle);
+		lastCandidates = samples.stations.length;
+		var remaining = new AtomicLong(maxIterations);
+		var random = new SplittableRandom(seed + searches++);
+		List<Node> roots = new ArrayList<>(threads);
+		long done = 0;
+		try (SearchPool.Turn turn = SearchPool.shared().startTurn(name(), deadline)) {
+			if (threads == 1) {
+				var worker = new Worker(samples, random);
+				done = turn.call(() -> worker.run(turn, remaining));
+				roots.add(worker.root);
+			} else {
+				List<Worker> workers = new ArrayList<>(threads);
+				List<Future<Long>> futures = new ArrayList<>(threads);
+				for (int i = 0; i < threads; i++) {
+					var worker = new Worker(samples, random.split());
+					workers.add(worker);
+					futures.add(turn.submit(() -> worker.run(turn, remaining)));
+				}
+				for (int i = 0; i < threads; i++) {
+					try {
+						done += futures.get(i).get();
+						roots.add(workers.get(i).root);
+					} catch (CancellationException e) {
+						// the turn expired before the task started
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// the turn is over, stop searching and answer with the trees of the finished tasks
+			remaining.set(0);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		long elapsed = System.nanoTime() - start;
+		lastIterations = done;
+		lastNanos = elapsed;
+		iterations.addAndGet(done);
+		searchNanos.addAndGet(elapsed);
+
+		planRound(roots);
+		planLog = logSize;
+		Move first = plan.poll();
+		if (first == null || !moves.contains(first)) {
+			plan.clear();
+			return moves.iterator().next();
+		}
+		return first;
+	}
+
+	// what the detectives know about MrX, caught up with the board
+	private void update(Board board) {
+		if (board.getSetup() != setup) {
+			setup = board.getSetup();
+			var graph = setup.graph;
+			int bound = CompactGraph.of(graph).nodeBound();
+			if (bound > MoveEncoding.MAX_STATION + 1)
+				throw new IllegalArgumentException("Station " + (bound - 1) + " cannot be encoded");
+			var starts = graph.nodes().containsAll(ScotlandYard.MRX_LOCATIONS) ?
+					ScotlandYard.MRX_LOCATIONS : graph.nodes();
+			distribution = new MrXLocationDistribution(graph, starts,
+					MrXLocationDistribution.distanceWeighted(graph, MRX_AVOIDANCE));
+			oracle = DistanceOracle.of(graph);
+		}
+		distribution.update(board);
+	}
+
+	// follows the most visited detective moves of the merged trees until MrX is to move
+	private void planRound(List<Node> roots) {
+		List<Node> level = roots;
+		while (!level.isEmpty()) {
+			var visits = new HashMap<Integer, Integer>();
+			for (Node node : level)
+				for (Node child : node.children.values())
+					if (!child.mrXMoved) visits.merge(child.move, child.visits, Integer::sum);
+			int best = 0;
+			int bestVisits = 0;
+			for (var entry : visits.entrySet()) {
+				int code = entry.getKey();
+				int n = entry.getValue();
+				if (n > bestVisits || n == bestVisits && n > 0 && code < best) {
+					best = code;
+					bestVisits = n;
+				}
+			}
+			if (bestVisits == 0) break;
+			plan.add(MoveEncoding.decode(best));
+			List<Node> next = new ArrayList<>(level.size());
+			for (Node node : level) {
+				Node child = node.children.get(best);
+				if (child != null) next.add(child);
+			}
+			level = next;
+		}
+	}
+
+	@Override public void onTerminate() {
+		plan.clear();
+		if (mrX != null) mrX.onTerminate();
+	}
+
+	/**
+	 * @return the iterations of the last search; 0 if the last move came from the plan
+	 */
+	public long lastIterations() { return lastIterations; }
+
+	/**
+	 * @return the number of stations MrX could be at in the last search
+	 */
+	public int lastCandidates() { return lastCandidates; }
+
+	/**
+	 * @return iterations per second of the last search
+	 */
+	public double lastIterationsPerSecond() { return lastIterations * 1e9 / Math.max(1, lastNanos); }
+
+	/**
+	 * @return iterations per second over all searches so far
+	 */
+	public double iterationsPerSecond() {
+		return iterations.get() * 1e9 / Math.max(1, searchNanos.get());
+	}
+
+	// the stations MrX could be at and their cumulative probabilities, shared by the workers
+	private static final class Samples {
+		final Board board;
+		final DistanceOracle oracle;
+		final int[] stations;
+		final double[] cumulative;
+		private final MutableGameState[] templates;
+
+		Samples(Board board, MrXLocationDistribution distribution, DistanceOracle oracle) {
+			this.board = board;
+			this.oracle = oracle;
+			double[] probabilities = distribution.probabilities();
+			var support = distribution.support();
+			if (support.isEmpty()) {
+				// the log contradicts what we assumed of MrX, he could be anywhere free
+				var graph = board.getSetup().graph;
+				support = new StationSet(probabilities.length);
+				for (int station : graph.nodes()) support.add(station);
+				for (Piece piece : board.getPlayers())
+					if (piece.isDetective())
+						board.getDetectiveLocation((Piece.Detective) piece).ifPresent(support::remove);
+				Arrays.fill(probabilities, 1);
+			}
+			stations = new int[support.size()];
+			cumulative = new double[stations.length];
+			double total = 0;
+			int i = 0;
+			for (int s = support.next(0); s >= 0; s = support.next(s + 1)) {
+				total += probabilities[s];
+				stations[i] = s;
+				cumulative[i++] = total;
+			}
+			templates = new MutableGameState[stations.length];
+		}
+
+		int sample(SplittableRandom random) {
+			double x = random.nextDouble() * cumulative[cumulative.length - 1];
+			int i = Arrays.binarySearch(cumulative, x);
+			return i >= 0 ? Math.min(i + 1, stations.length - 1) : -i - 1;
+		}
+
+		// the position with MrX at the station, built from the board once per station
+		synchronized MutableGameState template(int index) {
+			if (templates[index] == null)
+				templates[index] = MutableGameState.of(board, stations[index]);
+			return templates[index];
+		}
+	}
+
+	private static final class Worker {
+		private final Samples samples;
+		private final SplittableRandom random;
+		private final Map<Integer, MutableGameState> states = new HashMap<>();
+		private final MoveConsumer encoder;
+		private final List<Node> path = new ArrayList<>();
+		final Node root = new Node(0, false);
+		private int[] buffer = new int[64];
+		private int[] untried = new int[64];
+		private int generated;
+		private int nodes = 1;
+
+		Worker(Samples samples, SplittableRandom random) {
+			this.samples = samples;
+			this.random = random;
+			this.encoder = MoveEncoding.encoding(code -> {
+				if (generated == buffer.length) buffer = Arrays.copyOf(buffer, generated * 2);
+				buffer[generated++] = code;
+			});
+		}
+
+		long run(SearchPool.Turn turn, AtomicLong remaining) {
+			long done = 0;
+			// check the clock every few iterations, playouts are much slower than nanoTime
+			while (remaining.getAndDecrement() > 0
+					&& (done % 4 != 0 || !turn.expired())
+					&& !Thread.currentThread().isInterrupted()) {
+				int index = samples.sample(random);
+				var state = states.computeIfAbsent(index, i -> samples.template(i).copy());
+				iterate(state);
+				done++;
+			}
+			return done;
+		}
+
+		// the moves of MrX, or of the first detective still to move
+		private int generate(MutableGameState state) {
+			generated = 0;
+			state.forEachAvailableMove(encoder);
+			int n = generated;
+			if (!state.isMrXTurn() && n > 0) {
+				Piece first = MoveEncoding.piece(buffer[0]);
+				int kept = 0;
+				for (int i = 0; i < n; i++)
+					if (MoveEncoding.piece(buffer[i]) == first) buffer[kept++] = buffer[i];
+				n = kept;
+			}
+			return n;
+		}
+
+		private void iterate(MutableGameState state) {
+			int made = 0;
+			Node node = root;
+			path.clear();
+			while (!state.isGameOver()) {
+				int n = generate(state);
+				if (n == 0) break;
+				if (untried.length < n) untried = new int[buffer.length];
+				int unexpanded = 0;
+				for (int i = 0; i < n; i++) {
+					Node child = node.children.get(buffer[i]);
+					if (child == null) untried[unexpanded++] = buffer[i];
+					else child.available++;
+				}
+				Node next;
+				if (unexpanded > 0 && nodes < MAX_NODES) {
+					int code = untried[random.nextInt(unexpanded)];
+					next = new Node(code, state.isMrXTurn());
+					node.children.put(code, next);
+					nodes++;
+					state.make(code);
+					made++;
+					path.add(next);
+					break;
+				} else if (unexpanded == n) {
+					// the tree is full, play out from here
+					break;
+				}
+				next = select(node, n);
+				state.make(next.move);
+				made++;
+				path.add(next);
+				node = next;
+			}
+			made += playout(state);
+			boolean detectivesWon = !state.getWinner().contains(Piece.MrX.MRX);
+			for (Node n : path) {
+				n.visits++;
+				if (n.mrXMoved != detectivesWon) n.wins++;
+			}
+			for (int i = 0; i < made; i++) state.unmake();
+		}
+
+		// the child maximising UCT among the n moves in the buffer
+		private Node select(Node node, int n) {
+			Node best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++) {
+				Node child = node.children.get(buffer[i]);
+				if (child == null) continue;
+				double score = (double) child.wins / child.visits
+						+ MonteCarloAi.EXPLORATION * Math.sqrt(Math.log(child.available) / child.visits);
+				if (score > bestScore) {
+					bestScore = score;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		private int playout(MutableGameState state) {
+			int made = 0;
+			while (!state.isGameOver()) {
+				int n = generate(state);
+				if (n == 0) break;
+				int code = random.nextDouble() < GREEDY ? greedy(state, n) : buffer[random.nextInt(n)];
+				state.make(code);
+				made++;
+			}
+			return made;
+		}
+
+		private int greedy(MutableGameState state, int n) {
+			boolean mrX = state.isMrXTurn();
+			int best = buffer[0];
+			int bestScore = Integer.MIN_VALUE;
+			for (int i = 0; i < n; i++) {
+				int destination = MoveEncoding.destination(buffer[i]);
+				int score = mrX ? nearestDetective(state, destination)
+						: -distance(destination, state.mrXLocation());
+				if (score > bestScore) {
+					bestScore = score;
+					best = buffer[i];
+				}
+			}
+			return best;
+		}
+
+		private int distance(int from, int to) {
+			int distance = samples.oracle.distance(from, to);
+			return distance == DistanceOracle.UNREACHABLE ? DistanceOracle.MAX_DISTANCE : distance;
+		}
+
+		private int nearestDetective(MutableGameState state, int station) {
+			int nearest = DistanceOracle.MAX_DISTANCE;
+			for (int i = 1; i < state.playerCount(); i++)
+				nearest = Math.min(nearest, distance(state.location(i), station));
+			return nearest;
+		}
+	}
+
+	private static final class Node {
+		final int move;
+		// whether MrX made the move into this node, the side its wins count for
+		final boolean mrXMoved;
+		final Map<Integer, Node> children = new HashMap<>();
+		int visits;
+		int wins;
+		// the iterations this move was legal in when its parent was reached
+		int available = 1;
+
+		Node(int move, boolean mrXMoved) {
+			this.move = move;
+			this.mrXMoved = mrXMoved;
+		}
+	}
+}
@@ -0,0 +1,381 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.AnytimeAi;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveView;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.SearchPool;
+
+/**
+ * Monte Carlo tree search for either side, on top of {@link GameState#advance(Move)} of whichever
+ * engine built the board, so engines can be compared under the same time limit.
+ * <br>
+ * The search uses UCT with uniformly random playouts to the end of the game. Search tasks run on
+ * the {@link SearchPool} and share one tree: a task descending through a node counts its visit
+ * before the playout result is known, a virtual loss that steers other tasks to different
+ * branches. The search stops when its turn expires, a safety margin before the timeout, and
+ * picks the most visited move; every few iterations the most visited move so far is published.
+ * The tree below the position reached is kept for the next turn; the new position is found among
+ * the descendants of the move picked by its {@link GameState#zobristKey()}.
+ * <br>
+ * Needs the board to be a {@link GameState}, which is what the game passes MrX. Detectives are
+ * passed a {@link DetectiveView} that does not know where MrX is; their moves are searched by
+ * {@link InformationSetMctsAi} with the same threads and seed.
+ */
+public final class MonteCarloAi implements AnytimeAi {
+
+	// UCT exploration constant for rewards in [0, 1]
+	static final double EXPLORATION = Math.sqrt(2);
+	// nodes kept before the tree stops growing, each holds a game state
+	static final int MAX_NODES = 1 << 18;
+	// plies below the previous move searched for the next position
+	private static final int REUSE_DEPTH = 8;
+	// iterations of a task between publishing the best move so far
+	private static final int REPORT_INTERVAL = 256;
+
+	private final int threads;
+	private final long seed;
+	private InformationSetMctsAi detectives;
+	private Node previous;
+	private int searches;
+
+	private final AtomicLong iterations = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+	private volatile long lastIterations;
+	private volatile long lastNanos;
+	private volatile int lastReused;
+
+	/**
+	 * Searches on one thread per processor
+	 */
+	public MonteCarloAi() { this(Runtime.getRuntime().availableProcessors(), System.nanoTime()); }
+
+	/**
+	 * @param threads the number of search tasks; a single task runs on the calling thread
+	 * @param seed the seed of the playouts; a single task searching a fixed number of
+	 * iterations is deterministic
+	 */
+	MonteCarloAi(int threads, long seed) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	@Nonnull @Override public String name() { return "Monte Carlo"; }
+
+	@Override public void onStart() {
+		previous = null;
+		if (detectives != null) detectives.onStart();
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair,
+	                                        @Nonnull Consumer<Move> bestSoFar) {
+		return search(board, SearchPool.deadline(System.nanoTime(), timeoutPair), Long.MAX_VALUE,
+				bestSoFar);
+	}
+
+	@Nonnull Move search(@Nonnull Board board, long deadline, long maxIterations) {
+		return search(board, deadline, maxIterations, move -> {});
+	}
+
+	/**
+	 * Searches until the deadline or the number of iterations, whichever comes first
+	 *
+	 * @param board the game state
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @param maxIterations the iterations to stop after
+	 * @param bestSoFar receives the most visited move every few iterations; not called for
+	 * detectives' moves
+	 * @return the most visited move
+	 * @throws IllegalArgumentException if MrX is to move and the board is not a game state
+	 */
+	@Nonnull Move search(@Nonnull Board board, long deadline, long maxIterations,
+	                     @Nonnull Consumer<Move> bestSoFar) {
+		if (!(board instanceof GameState)) {
+			var moves = board.getAvailableMoves();
+			if (moves.isEmpty() || moves.iterator().next().commencedBy().isMrX())
+				throw new IllegalArgumentException("Monte Carlo search needs a GameState, got " + board);
+			if (detectives == null) detectives = new InformationSetMctsAi(threads, seed);
+			return detectives.search(board, deadline, maxIterations);
+		}
+		GameState state = (GameState) board;
+		var moves = state.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		long start = System.nanoTime();
+		Node root = reuse(state);
+		lastReused = root == null ? 0 : root.visits;
+		if (root == null) root = new Node(null, null, state, false);
+		var nodes = new AtomicInteger(root.size());
+		var remaining = new AtomicLong(maxIterations);
+		long done = 0;
+		var random = new SplittableRandom(seed + searches++);
+		Node searchRoot = root;
+		Runnable report = () -> {
+			Node best = searchRoot.mostVisited();
+			if (best != null) bestSoFar.accept(best.move);
+		};
+		try (SearchPool.Turn turn = SearchPool.shared().startTurn(name(), deadline)) {
+			if (moves.size() == 1) {
+				// nothing to search
+				bestSoFar.accept(moves.iterator().next());
+			} else if (threads == 1) {
+				done = turn.call(() -> run(searchRoot, turn, remaining, nodes, random, report));
+			} else {
+				List<Future<Long>> futures = new ArrayList<>(threads);
+				for (int i = 0; i < threads; i++) {
+					var split = random.split();
+					futures.add(turn.submit(() -> run(searchRoot, turn, remaining, nodes, split,
+							report)));
+				}
+				for (Future<Long> future : futures) {
+					try {
+						done += future.get();
+					} catch (CancellationException e) {
+						// the turn expired before the task started
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// the turn is over, stop searching and answer with what we have
+			remaining.set(0);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		long elapsed = System.nanoTime() - start;
+		lastIterations = done;
+		lastNanos = elapsed;
+		iterations.addAndGet(done);
+		searchNanos.addAndGet(elapsed);
+		Node best = root.mostVisited();
+		previous = best;
+		return best == null ? moves.iterator().next() : best.move;
+	}
+
+	private static long run(Node root, SearchPool.Turn turn, AtomicLong remaining,
+	                        AtomicInteger nodes, SplittableRandom random, Runnable report) {
+		long done = 0;
+		// check the clock every few iterations, playouts are much slower than nanoTime
+		while (remaining.getAndDecrement() > 0
+				&& (done % 4 != 0 || !turn.expired())
+				&& !Thread.currentThread().isInterrupted()) {
+			iterate(root, nodes, random);
+			if (++done % REPORT_INTERVAL == 0) report.run();
+		}
+		return done;
+	}
+
+	private static void iterate(Node root, AtomicInteger nodes, SplittableRandom random) {
+		Node node = root;
+		synchronized (root) {
+			root.visits++;
+		}
+		while (true) {
+			Move expand = null;
+			Node next;
+			synchronized (node) {
+				if (node.terminal) break;
+				// nothing to expand or select yet but another thread is adding a child, wait for it
+				// rather than play out from an interior node
+				while (node.children.isEmpty() && node.expanding > 0
+						&& (node.untried.isEmpty() || nodes.get() >= MAX_NODES)) {
+					try {
+						node.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				if (!node.untried.isEmpty() && nodes.get() < MAX_NODES) {
+					expand = node.untried.remove(node.untried.size() - 1);
+					node.expanding++;
+					next = null;
+				} else if (node.children.isEmpty()) {
+					// the tree is full, play out from here
+					break;
+				} else {
+					next = node.select();
+					next.visits++;
+				}
+			}
+			if (expand != null) {
+				Node child = null;
+				try {
+					child = new Node(node, expand, node.state.advance(expand),
+							expand.commencedBy().isMrX());
+					nodes.incrementAndGet();
+				} finally {
+					synchronized (node) {
+						if (child != null) node.children.add(child);
+						node.expanding--;
+						node.notifyAll();
+					}
+				}
+				node = child;
+				break;
+			}
+			node = next;
+		}
+		boolean mrXWon = node.terminal ? node.mrXWon : playout(node.state, random);
+		for (Node n = node; ; n = n.parent) {
+			synchronized (n) {
+				if (n != root && n.mrXMoved == mrXWon) n.wins++;
+			}
+			if (n == root) break;
+		}
+	}
+
+	private static boolean playout(GameState state, SplittableRandom random) {
+		while (state.getWinner().isEmpty()) {
+			var moves = state.getAvailableMoves().asList();
+			state = state.advance(moves.get(random.nextInt(moves.size())));
+		}
+		return state.getWinner().contains(Piece.MrX.MRX);
+	}
+
+	@Nullable private Node reuse(GameState state) {
+		Node from = previous;
+		previous = null;
+		if (from == null || !state.hasZobristKey()) return null;
+		long key = state.zobristKey();
+		var level = new ArrayDeque<Node>();
+		level.add(from);
+		for (int depth = 0; depth <= REUSE_DEPTH && !level.isEmpty(); depth++) {
+			var next = new ArrayDeque<Node>();
+			for (Node node : level) {
+				if (node.state.zobristKey() == key
+						&& node.state.getAvailableMoves().equals(state.getAvailableMoves()))
+					return node.detach();
+				next.addAll(node.children);
+			}
+			level = next;
+		}
+		return null;
+	}
+
+	@Override public void onTerminate() {
+		previous = null;
+		if (detectives != null) detectives.onTerminate();
+	}
+
+	/**
+	 * @return the iterations of the last search
+	 */
+	public long lastIterations() { return lastIterations; }
+
+	/**
+	 * @return the visits of the subtree reused by the last search; 0 if it started afresh
+	 */
+	public int lastReusedVisits() { return lastReused; }
+
+	/**
+	 * @return iterations per second of the last search
+	 */
+	public double lastIterationsPerSecond() { return lastIterations * 1e9 / Math.max(1, lastNanos); }
+
+	/**
+	 * @return iterations per second over all searches so far
+	 */
+	public double iterationsPerSecond() {
+		return iterations.get() * 1e9 / Math.max(1, searchNanos.get());
+	}
+
+	static final class Node {
+		// null once the node becomes the root
+		private Node parent;
+		final Move move;
+		final GameState state;
+		// whether MrX made the move into this node, the side its wins count for
+		final boolean mrXMoved;
+		final boolean terminal;
+		final boolean mrXWon;
+		final List<Move> untried;
+		final List<Node> children = new ArrayList<>();
+		// guarded by this
+		int visits;
+		int wins;
+		// moves taken off untried whose child is not in children yet; guarded by this
+		int expanding;
+
+		Node(@Nullable Node parent, @Nullable Move move, GameState state, boolean mrXMoved) {
+			this.parent = parent;
+			this.move = move;
+			this.state = state;
+			this.mrXMoved = mrXMoved;
+			var winner = state.getWinner();
+			this.terminal = !winner.isEmpty();
+			this.mrXWon = winner.contains(Piece.MrX.MRX);
+			this.untried = terminal ? List.of() : new ArrayList<>(state.getAvailableMoves());
+			// a new node is created by an iteration that visits it
+			this.visits = parent == null ? 0 : 1;
+		}
+
+		// the child maximising UCT, called holding this
+		Node select() {
+			double log = Math.log(Math.max(1, visits));
+			Node best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				int n;
+				int w;
+				synchronized (child) {
+					n = child.visits;
+					w = child.wins;
+				}
+				double score = (double) w / n + EXPLORATION * Math.sqrt(log / n);
+				if (score > bestScore) {
+					bestScore = score;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		@Nullable synchronized Node mostVisited() {
+			Node best = null;
+			int bestVisits = -1;
+			for (Node child : children) {
+				int n;
+				synchronized (child) {
+					n = child.visits;
+				}
+				if (n > bestVisits) {
+					bestVisits = n;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		Node detach() {
+			parent = null;
+			return this;
+		}
+
+		// the number of nodes in this subtree
+		int size() {
+			int size = 1;
+			for (Node child : children) size += child.size();
+			return size;
+		}
+	}
+}
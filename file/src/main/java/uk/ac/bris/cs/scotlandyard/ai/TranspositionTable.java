@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, lock-free transposition table of search results keyed by
+ * {@link uk.ac.bris.cs.scotlandyard.model.Zobrist} keys.
+ * <br>
+ * Each slot holds the data word and the key XOR-ed with the data word. Threads may store and
+ * probe the same slot without locks: a slot torn by a concurrent store no longer checks against
+ * either key and reads as a miss. A slot is replaced when the new result is at least as deep or
+ * belongs to another position.
+ * <br>
+ * A data word packs the best move code (32 bits), the score (24 bits), the depth (6 bits) and
+ * the {@link #EXACT}, {@link #LOWER} or {@link #UPPER} bound (2 bits).
+ */
+final class TranspositionTable {
+
+	static final int EXACT = 1;
+	static final int LOWER = 2;
+	static final int UPPER = 3;
+	static final int MAX_DEPTH = 63;
+	// scores must fit in 24 bits
+	static final int MAX_SCORE = (1 << 23) - 1;
+
+	private final long[] checks;
+	private final long[] data;
+	private final int mask;
+
+	/**
+	 * @param bits the log2 of the number of slots, 16 bytes each
+	 */
+	TranspositionTable(int bits) {
+		if (bits < 1 || bits > 28) throw new IllegalArgumentException("Bad table size: " + bits);
+		checks = new long[1 << bits];
+		data = new long[1 << bits];
+		mask = (1 << bits) - 1;
+	}
+
+	private int slot(long key) { return (int) (key ^ key >>> 32) & mask; }
+
+	/**
+	 * @param key the position key
+	 * @return the data word stored for the key; 0 if there is none
+	 */
+	long probe(long key) {
+		int slot = slot(key);
+		long word = data[slot];
+		return word != 0 && (checks[slot] ^ word) == key ? word : 0;
+	}
+
+	/**
+	 * @param key the position key
+	 * @param move the best move code, or 0
+	 * @param score the score, at most {@link #MAX_SCORE} in magnitude
+	 * @param depth the depth searched, clamped to {@link #MAX_DEPTH}
+	 * @param bound the kind of bound the score is
+	 */
+	void store(long key, int move, int score, int depth, int bound) {
+		if (Math.abs(score) > MAX_SCORE) throw new IllegalArgumentException("Bad score: " + score);
+		int slot = slot(key);
+		long old = data[slot];
+		if (old != 0 && (checks[slot] ^ old) == key && depth(old) > depth) return;
+		long word = (long) move << 32 | (long) (score & 0xFFFFFF) << 8
+				| Math.min(depth, MAX_DEPTH) << 2 | bound;
+		data[slot] = word;
+		checks[slot] = key ^ word;
+	}
+
+	static int move(long word) { return (int) (word >>> 32); }
+
+	static int score(long word) { return (int) (word << 32 >> 40); }
+
+	static int depth(long word) { return (int) (word >>> 2) & MAX_DEPTH; }
+
+	static int bound(long word) { return (int) word & 3; }
+
+	/**
+	 * Forgets every result
+	 */
+	void clear() {
+		Arrays.fill(data, 0);
+		Arrays.fill(checks, 0);
+	}
+}
@@ -0,0 +1,180 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.primitives.ImmutableIntArray;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+import uk.ac.bris.cs.scotlandyard.model.MoveEncoding;
+
+/**
+ * A client of {@link GameServer}. Requests block until answered and may be made from many threads
+ * at once; a request the server rejects throws {@link IllegalArgumentException}.
+ */
+public final class GameClient implements AutoCloseable {
+
+	/**
+	 * Receives the events of the sessions of a client, on the thread reading the connection; it
+	 * must not make requests itself
+	 */
+	public interface Listener {
+		/**
+		 * @param session the session
+		 * @param move the {@link MoveEncoding} code of the move made
+		 */
+		default void onMoveMade(int session, int move) {}
+
+		/**
+		 * @param session the session
+		 * @param move the {@link MoveEncoding} code of the last move made
+		 * @param winner the winning side
+		 */
+		default void onGameOver(int session, int move, @Nonnull Side winner) {}
+	}
+
+	private final Lines lines;
+	private final AtomicLong tags = new AtomicLong();
+	private final Map<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private volatile boolean closed;
+
+	GameClient(Lines lines) {
+		this.lines = lines;
+		Thread reader = new Thread(this::read, "game-client-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * @param address the address the server listens on, TCP or Unix domain
+	 * @return a client connected to the server
+	 * @throws IOException if connecting failed
+	 */
+	@Nonnull public static GameClient connect(@Nonnull SocketAddress address) throws IOException {
+		return new GameClient(Lines.of(SocketChannel.open(address)));
+	}
+
+	/**
+	 * @param listener receives events of all sessions of this client from now on
+	 */
+	public void addListener(@Nonnull Listener listener) {
+		listeners.add(Objects.requireNonNull(listener));
+	}
+
+	/**
+	 * @param seed the seed of the start locations
+	 * @return the new session
+	 * @throws IOException if the connection failed
+	 */
+	public int newSession(int seed) throws IOException {
+		return Integer.parseInt(request("NEW " + seed));
+	}
+
+	/**
+	 * @param session the session
+	 * @return the {@link MoveEncoding} codes of the available moves; empty if the game is over
+	 * @throws IOException if the connection failed
+	 */
+	@Nonnull public ImmutableIntArray moves(int session) throws IOException {
+		String result = request("MOVES " + session);
+		if (result.isEmpty()) return ImmutableIntArray.of();
+		String[] codes = result.split(" ");
+		var moves = ImmutableIntArray.builder(codes.length);
+		for (String code : codes) moves.add(Integer.parseInt(code));
+		return moves.build();
+	}
+
+	/**
+	 * Makes a move; the events it causes are delivered before this returns
+	 *
+	 * @param session the session
+	 * @param move the {@link MoveEncoding} code of an available move
+	 * @throws IOException if the connection failed
+	 */
+	public void move(int session, int move) throws IOException {
+		request("MOVE " + session + " " + move);
+	}
+
+	/**
+	 * @param session the session to end
+	 * @throws IOException if the connection failed
+	 */
+	public void endSession(int session) throws IOException {
+		request("CLOSE " + session);
+	}
+
+	private String request(String command) throws IOException {
+		long tag = tags.incrementAndGet();
+		var future = new CompletableFuture<String>();
+		pending.put(tag, future);
+		if (closed) {
+			pending.remove(tag);
+			throw new IOException("Connection closed");
+		}
+		lines.writeLine(tag + " " + command);
+		String response;
+		try {
+			response = future.get();
+		} catch (InterruptedException e) {
+			pending.remove(tag);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + command);
+		} catch (ExecutionException e) {
+			throw new IOException("Connection closed", e.getCause());
+		}
+		if (response.startsWith("ERROR"))
+			throw new IllegalArgumentException(response.substring(Math.min(6, response.length())));
+		return response.length() > 3 ? response.substring(3) : "";
+	}
+
+	private void read() {
+		IOException failure = new IOException("Connection closed");
+		try {
+			String line;
+			while ((line = lines.readLine()) != null) {
+				String[] words = line.split(" ", 2);
+				if (words[0].equals("*")) event(words[1].split(" "));
+				else {
+					var future = pending.remove(Long.parseLong(words[0]));
+					if (future != null) future.complete(words.length > 1 ? words[1] : "");
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			closed = true;
+			for (var future : pending.values()) future.completeExceptionally(failure);
+			pending.clear();
+		}
+	}
+
+	private void event(String[] words) {
+		int session = Integer.parseInt(words[1]);
+		int move = Integer.parseInt(words[2]);
+		for (Listener listener : listeners) {
+			switch (words[0]) {
+				case "MOVE_MADE": listener.onMoveMade(session, move); break;
+				case "GAME_OVER": listener.onGameOver(session, move, Side.valueOf(words[3])); break;
+				default: // newer events
+			}
+		}
+	}
+
+	/**
+	 * Disconnects; the server ends all sessions of this client
+	 */
+	@Override public void close() throws IOException { lines.close(); }
+}
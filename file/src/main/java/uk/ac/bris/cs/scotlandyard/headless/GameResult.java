@@ -0,0 +1,102 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The result of a single headless game
+ */
+public final class GameResult {
+
+	/**
+	 * The sides of a game
+	 */
+	public enum Side {MRX, DETECTIVES}
+
+	/**
+	 * Why a side lost before the game was over
+	 */
+	public enum Forfeit {
+		/**
+		 * {@link uk.ac.bris.cs.scotlandyard.model.Ai#pickMove} did not return in time
+		 */
+		TIMEOUT,
+		/**
+		 * the move picked was not one of the available moves
+		 */
+		ILLEGAL_MOVE,
+		/**
+		 * the Ai threw an exception
+		 */
+		ERROR
+	}
+
+	/**
+	 * the seed of the start locations
+	 */
+	public final int seed;
+	/**
+	 * the winning side
+	 */
+	public final Side winner;
+	private final Forfeit forfeit;
+	private final Throwable error;
+	/**
+	 * the number of moves made, one per {@link uk.ac.bris.cs.scotlandyard.model.Ai#pickMove} call
+	 */
+	public final int moves;
+	/**
+	 * the number of rounds played, i.e entries in MrX's travel log
+	 */
+	public final int rounds;
+	/**
+	 * the total time spent picking moves
+	 */
+	public final long pickNanos;
+	/**
+	 * the total time of the game
+	 */
+	public final long elapsedNanos;
+
+	GameResult(int seed, @Nonnull Side winner, @Nullable Forfeit forfeit, @Nullable Throwable error,
+	           int moves, int rounds, long pickNanos, long elapsedNanos) {
+		this.seed = seed;
+		this.winner = Objects.requireNonNull(winner);
+		this.forfeit = forfeit;
+		this.error = error;
+		this.moves = moves;
+		this.rounds = rounds;
+		this.pickNanos = pickNanos;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return why the losing side forfeited; empty if the game was played to the end
+	 */
+	@Nonnull public Optional<Forfeit> forfeit() { return Optional.ofNullable(forfeit); }
+
+	/**
+	 * @return what the losing side threw when it forfeited by {@link Forfeit#ERROR}; empty
+	 * otherwise
+	 */
+	@Nonnull public Optional<Throwable> error() { return Optional.ofNullable(error); }
+
+	/**
+	 * @param that another result
+	 * @return whether both games were played the same way, ignoring the time taken
+	 */
+	public boolean samePlay(@Nonnull GameResult that) {
+		return seed == that.seed && winner == that.winner && forfeit == that.forfeit
+				&& moves == that.moves && rounds == that.rounds;
+	}
+
+	@Override public String toString() {
+		return "GameResult{seed=" + seed + ", winner=" + winner
+				+ (forfeit == null ? "" : ", forfeit=" + forfeit)
+				+ (error == null ? "" : ", error=" + error)
+				+ ", moves=" + moves + ", rounds=" + rounds + '}';
+	}
+}
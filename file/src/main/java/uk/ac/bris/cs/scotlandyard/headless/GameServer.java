@@ -0,0 +1,409 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveEncoding;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Hosts many concurrent games, each a {@link Model}, for clients speaking a line protocol over
+ * TCP, Unix domain sockets or an in-process pipe, see {@link GameClient}.
+ * <br>
+ * Every request is a line {@code <tag> <command> <args...>} and is answered by a line
+ * {@code <tag> OK <results...>} or {@code <tag> ERROR <message>}, where the tag is chosen by the
+ * client. Moves are {@link MoveEncoding} codes and sessions are numbers. The commands are:
+ * <ul>
+ * <li>{@code NEW <seed>} starts a game from the start locations of the seed, like
+ * {@link Simulator}, and answers the session</li>
+ * <li>{@code MOVES <session>} answers the available moves, none if the game is over</li>
+ * <li>{@code MOVE <session> <move>} makes a move</li>
+ * <li>{@code CLOSE <session>} ends a session</li>
+ * </ul>
+ * The {@link Model.Observer} events of a session are sent before the answer to the move causing
+ * them, as {@code * MOVE_MADE <session> <move>} or {@code * GAME_OVER <session> <move> <winner>}
+ * where the winner is a {@link Side}.
+ * <br>
+ * Sessions belong to the connection that started them. Requests of a session run in order on the
+ * session's own sequential executor, backed by a shared pool, so a connection can play many
+ * sessions at once. A connection may have a limited window of requests in flight; a client that
+ * does not read its answers stops the server reading its requests, so a slow client holds up
+ * only itself.
+ */
+public final class GameServer implements AutoCloseable {
+
+	// lines buffered in each direction of an in-process connection
+	private static final int PIPE_CAPACITY = 64;
+
+	private final GameSetup setup;
+	private final Factory<Model> factory;
+	private final int detectiveCount;
+	private final int window;
+	private final ExecutorService workers;
+	private final Set<Closeable> open = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger sessionIds = new AtomicInteger();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong finished = new AtomicLong();
+	private final AtomicLong moves = new AtomicLong();
+
+	private GameServer(Builder builder) {
+		this.setup = builder.setup;
+		this.factory = builder.factory;
+		this.detectiveCount = builder.detectiveCount;
+		this.window = builder.window;
+		this.workers = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("game-server-%d")
+				.setDaemon(true)
+				.build());
+	}
+
+	/**
+	 * @return a builder of a server
+	 */
+	@Nonnull public static Builder builder() { return new Builder(); }
+
+	/**
+	 * Builder of {@link GameServer}, by default on the standard map with {@link MyModelFactory},
+	 * five detectives and a window of 16 requests per connection
+	 */
+	public static final class Builder {
+		private GameSetup setup;
+		private Factory<Model> factory = new MyModelFactory();
+		private int detectiveCount = ScotlandYard.DETECTIVES.size();
+		private int window = 16;
+
+		private Builder() {}
+
+		/**
+		 * @param setup the game setup, on a graph of at most {@link MoveEncoding#MAX_STATION}
+		 * stations
+		 * @return this builder
+		 */
+		@Nonnull public Builder setup(@Nonnull GameSetup setup) {
+			this.setup = Objects.requireNonNull(setup);
+			return this;
+		}
+
+		/**
+		 * @param factory the model factory
+		 * @return this builder
+		 */
+		@Nonnull public Builder model(@Nonnull Factory<Model> factory) {
+			this.factory = Objects.requireNonNull(factory);
+			return this;
+		}
+
+		/**
+		 * @param count the number of detectives, from 1 to {@link ScotlandYard#DETECTIVES}
+		 * @return this builder
+		 */
+		@Nonnull public Builder detectiveCount(int count) {
+			if (count < 1 || count > ScotlandYard.DETECTIVES.size())
+				throw new IllegalArgumentException("Bad detective count: " + count);
+			this.detectiveCount = count;
+			return this;
+		}
+
+		/**
+		 * @param window the number of requests a connection may have in flight
+		 * @return this builder
+		 */
+		@Nonnull public Builder window(int window) {
+			if (window < 1) throw new IllegalArgumentException("Window must be positive: " + window);
+			this.window = window;
+			return this;
+		}
+
+		/**
+		 * @return the server, to be closed after use
+		 * @throws IOException if the standard map cannot be read when no setup was given
+		 */
+		@Nonnull public GameServer build() throws IOException {
+			if (setup == null)
+				setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+			int maxStation = setup.graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(0);
+			if (maxStation > MoveEncoding.MAX_STATION)
+				throw new IllegalArgumentException("Station " + maxStation + " cannot be encoded");
+			return new GameServer(this);
+		}
+	}
+
+	/**
+	 * Accepts connections on an address until the server is closed
+	 *
+	 * @param address an {@link InetSocketAddress} or a {@link UnixDomainSocketAddress}
+	 * @return the bound address, e.g with the port picked for port 0
+	 * @throws IOException if binding failed
+	 */
+	@Nonnull public SocketAddress listen(@Nonnull SocketAddress address) throws IOException {
+		ServerSocketChannel server = address instanceof UnixDomainSocketAddress ?
+				ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+		open.add(server);
+		try {
+			server.bind(address);
+		} catch (IOException e) {
+			open.remove(server);
+			server.close();
+			throw e;
+		}
+		workers.execute(() -> {
+			try {
+				while (true) {
+					SocketChannel channel = server.accept();
+					try {
+						serve(Lines.of(channel));
+					} catch (IOException e) {
+						channel.close();
+					}
+				}
+			} catch (IOException e) {
+				// closed
+			} finally {
+				open.remove(server);
+			}
+		});
+		return server.getLocalAddress();
+	}
+
+	/**
+	 * @return a client connected through an in-process pipe, without sockets
+	 */
+	@Nonnull public GameClient connect() {
+		Lines[] pipe = Lines.pipe(PIPE_CAPACITY);
+		serve(pipe[0]);
+		return new GameClient(pipe[1]);
+	}
+
+	void serve(Lines lines) {
+		var connection = new Connection(lines);
+		open.add(connection);
+		workers.execute(connection::run);
+	}
+
+	/**
+	 * @return the number of sessions started
+	 */
+	public long sessionsStarted() { return started.get(); }
+
+	/**
+	 * @return the number of sessions played until the game was over
+	 */
+	public long sessionsFinished() { return finished.get(); }
+
+	/**
+	 * @return the number of moves made in all sessions
+	 */
+	public long movesMade() { return moves.get(); }
+
+	/**
+	 * Stops listening and closes every connection
+	 */
+	@Override public void close() {
+		for (Closeable closeable : open) {
+			try {
+				closeable.close();
+			} catch (IOException ignored) {}
+		}
+		workers.shutdownNow();
+	}
+
+	private final class Connection implements Closeable {
+		private final Lines lines;
+		private final Semaphore inFlight = new Semaphore(window);
+		private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+		private Connection(Lines lines) { this.lines = lines; }
+
+		private void run() {
+			try {
+				String line;
+				while ((line = lines.readLine()) != null) {
+					inFlight.acquire();
+					dispatch(line);
+				}
+			} catch (IOException e) {
+				// disconnected
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close();
+			}
+		}
+
+		private void dispatch(String line) {
+			String[] words = line.split(" ");
+			if (words.length < 2) {
+				answer("?", ignored -> {
+					throw new IllegalArgumentException("Malformed request: " + line);
+				}, words);
+				return;
+			}
+			String tag = words[0];
+			switch (words[1]) {
+				case "NEW":
+					workers.execute(() -> answer(tag, this::start, words));
+					break;
+				case "MOVES":
+				case "MOVE":
+				case "CLOSE":
+					Session session;
+					try {
+						session = session(words);
+					} catch (IllegalArgumentException e) {
+						answer(tag, ignored -> { throw e; }, words);
+						return;
+					}
+					session.executor.execute(() -> answer(tag, session::handle, words));
+					break;
+				default:
+					answer(tag, ignored -> {
+						throw new IllegalArgumentException("Unknown command: " + words[1]);
+					}, words);
+			}
+		}
+
+		// answers a request and frees its place in the window
+		private void answer(String tag, Function<String[], String> handler, String[] words) {
+			try {
+				String result;
+				try {
+					String value = handler.apply(words);
+					result = value.isEmpty() ? "OK" : "OK " + value;
+				} catch (UncheckedIOException e) {
+					throw e;
+				} catch (RuntimeException e) {
+					result = "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+				}
+				write(tag + " " + result);
+			} catch (UncheckedIOException e) {
+				close();
+			} finally {
+				inFlight.release();
+			}
+		}
+
+		private void write(String line) {
+			try {
+				lines.writeLine(line);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private static int argument(String[] words, int index) {
+			if (words.length <= index)
+				throw new IllegalArgumentException("Missing argument of " + words[1]);
+			return Integer.parseInt(words[index]);
+		}
+
+		private Session session(String[] words) {
+			int id = argument(words, 2);
+			Session session = sessions.get(id);
+			if (session == null) throw new IllegalArgumentException("No session " + id);
+			return session;
+		}
+
+		private String start(String[] words) {
+			int seed = argument(words, 2);
+			Model model = factory.build(setup, Simulator.mrX(seed),
+					Simulator.detectives(seed, detectiveCount));
+			var session = new Session(sessionIds.incrementAndGet(), model, this);
+			model.registerObserver(session);
+			sessions.put(session.id, session);
+			started.incrementAndGet();
+			return String.valueOf(session.id);
+		}
+
+		@Override public void close() {
+			if (!open.remove(this)) return;
+			sessions.clear();
+			try {
+				lines.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	private final class Session implements Model.Observer {
+		private final int id;
+		private final Model model;
+		private final Connection connection;
+		// runs the requests of this session in order on the shared pool
+		private final Executor executor = MoreExecutors.newSequentialExecutor(workers);
+		private int lastMove;
+
+		private Session(int id, Model model, Connection connection) {
+			this.id = id;
+			this.model = model;
+			this.connection = connection;
+		}
+
+		private String handle(String[] words) {
+			Board board = model.getCurrentBoard();
+			switch (words[1]) {
+				case "MOVES":
+					if (!board.getWinner().isEmpty()) return "";
+					return board.getAvailableMoves().stream()
+							.map(move -> String.valueOf(MoveEncoding.encode(move)))
+							.collect(Collectors.joining(" "));
+				case "MOVE":
+					if (!board.getWinner().isEmpty())
+						throw new IllegalStateException("Game over in session " + id);
+					int code = Connection.argument(words, 3);
+					Move move = MoveEncoding.decode(code);
+					if (!board.getAvailableMoves().contains(move))
+						throw new IllegalArgumentException("Illegal move " + move);
+					lastMove = code;
+					model.chooseMove(move);
+					moves.incrementAndGet();
+					return "";
+				case "CLOSE":
+					connection.sessions.remove(id);
+					model.unregisterObserver(this);
+					return "";
+				default:
+					throw new AssertionError();
+			}
+		}
+
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+			String line = "* " + event + " " + id + " " + lastMove;
+			if (event == Event.GAME_OVER) {
+				finished.incrementAndGet();
+				line += " " + (board.getWinner().contains(Piece.MrX.MRX) ? Side.MRX : Side.DETECTIVES);
+			}
+			connection.write(line);
+		}
+	}
+}
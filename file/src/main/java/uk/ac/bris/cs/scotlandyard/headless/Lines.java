@@ -0,0 +1,152 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A bidirectional stream of ASCII lines, the transport of {@link GameServer} and
+ * {@link GameClient}. Reading and writing may happen on different threads at the same time.
+ */
+interface Lines extends Closeable {
+
+	/**
+	 * @return the next line without the terminator; null at the end of the stream
+	 * @throws IOException if reading failed
+	 */
+	@Nullable String readLine() throws IOException;
+
+	/**
+	 * Writes a line, blocking while the other end is not keeping up
+	 *
+	 * @param line the line without the terminator
+	 * @throws IOException if writing failed or the stream is closed
+	 */
+	void writeLine(@Nonnull String line) throws IOException;
+
+	/**
+	 * @param channel a connected blocking socket channel, TCP or Unix domain
+	 * @return lines over the channel
+	 * @throws IOException if the channel cannot be configured
+	 */
+	static Lines of(SocketChannel channel) throws IOException {
+		// requests are small lines answered one by one, which Nagle's algorithm would delay
+		if (channel.getRemoteAddress() instanceof InetSocketAddress)
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		return new ChannelLines(channel);
+	}
+
+	/**
+	 * @param capacity the number of lines buffered in each direction
+	 * @return the two ends of an in-process connection; what one end writes the other reads
+	 */
+	static Lines[] pipe(int capacity) {
+		var ab = new ArrayBlockingQueue<String>(capacity);
+		var ba = new ArrayBlockingQueue<String>(capacity);
+		var closed = new AtomicBoolean();
+		return new Lines[]{new QueueLines(ba, ab, closed), new QueueLines(ab, ba, closed)};
+	}
+
+	// reads and writes the channel directly; the channel streams of Channels serialise reads and
+	// writes on the blocking lock, which deadlocks a reader and a writer on different threads
+	final class ChannelLines implements Lines {
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocate(8192).flip();
+		private final StringBuilder line = new StringBuilder();
+		private final Object writeLock = new Object();
+
+		private ChannelLines(SocketChannel channel) { this.channel = channel; }
+
+		@Nullable @Override public String readLine() throws IOException {
+			line.setLength(0);
+			while (true) {
+				while (in.hasRemaining()) {
+					char c = (char) (in.get() & 0xFF);
+					if (c == '\n') return line.toString();
+					if (c != '\r') line.append(c);
+				}
+				in.clear();
+				int read = channel.read(in);
+				in.flip();
+				if (read < 0) return line.length() == 0 ? null : line.toString();
+			}
+		}
+
+		@Override public void writeLine(@Nonnull String line) throws IOException {
+			ByteBuffer out = ByteBuffer.wrap((line + '\n').getBytes(StandardCharsets.US_ASCII));
+			synchronized (writeLock) {
+				while (out.hasRemaining()) channel.write(out);
+			}
+		}
+
+		@Override public void close() throws IOException { channel.close(); }
+	}
+
+	final class QueueLines implements Lines {
+		// a line no one can write, marks the end of the stream
+		private static final String END = new String("\n");
+		private final BlockingQueue<String> in;
+		private final BlockingQueue<String> out;
+		// shared by both ends
+		private final AtomicBoolean closed;
+
+		private QueueLines(BlockingQueue<String> in, BlockingQueue<String> out,
+		                   AtomicBoolean closed) {
+			this.in = in;
+			this.out = out;
+			this.closed = closed;
+		}
+
+		// the lines written to this end and not read by the other end yet
+		int pending() { return out.size(); }
+
+		@Nullable @Override public String readLine() throws IOException {
+			try {
+				String line = in.take();
+				if (line == END) {
+					// leave the end for later reads
+					in.offer(END);
+					return null;
+				}
+				return line;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted", e);
+			}
+		}
+
+		@Override public void writeLine(@Nonnull String line) throws IOException {
+			try {
+				out.put(line);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted", e);
+			}
+			if (closed.get()) {
+				out.clear();
+				out.offer(END);
+				throw new IOException("Closed");
+			}
+		}
+
+		@Override public void close() {
+			closed.set(true);
+			// clearing unblocks writers, which then see the stream closed
+			for (var queue : List.of(in, out)) {
+				queue.clear();
+				queue.offer(END);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Forfeit;
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+
+/**
+ * Aggregate statistics of a batch of headless games
+ */
+public final class Report {
+
+	private final ImmutableList<GameResult> results;
+	private final long wallNanos;
+
+	Report(@Nonnull ImmutableList<GameResult> results, long wallNanos) {
+		this.results = results;
+		this.wallNanos = wallNanos;
+	}
+
+	/**
+	 * @return the result of every game, in seed order
+	 */
+	@Nonnull public ImmutableList<GameResult> results() { return results; }
+
+	/**
+	 * @return the number of games
+	 */
+	public int games() { return results.size(); }
+
+	/**
+	 * @param side the side
+	 * @return the number of games the side won
+	 */
+	public int wins(@Nonnull Side side) {
+		return (int) results.stream().filter(r -> r.winner == side).count();
+	}
+
+	/**
+	 * @param side the side
+	 * @return the fraction of games the side won; 0 if there were no games
+	 */
+	public double winRate(@Nonnull Side side) {
+		return results.isEmpty() ? 0 : (double) wins(side) / results.size();
+	}
+
+	/**
+	 * @return the number of games lost by each kind of forfeit
+	 */
+	@Nonnull public ImmutableMultiset<Forfeit> forfeits() {
+		return results.stream().flatMap(r -> r.forfeit().stream())
+				.collect(ImmutableMultiset.toImmutableMultiset());
+	}
+
+	/**
+	 * @return the average number of moves per game
+	 */
+	public double averageMoves() {
+		return results.stream().mapToInt(r -> r.moves).average().orElse(0);
+	}
+
+	/**
+	 * @return the average number of rounds per game
+	 */
+	public double averageRounds() {
+		return results.stream().mapToInt(r -> r.rounds).average().orElse(0);
+	}
+
+	/**
+	 * @return the total number of moves made
+	 */
+	public long totalMoves() { return results.stream().mapToLong(r -> r.moves).sum(); }
+
+	/**
+	 * @return the wall clock time of the whole batch
+	 */
+	public long wallNanos() { return wallNanos; }
+
+	/**
+	 * @return moves made per second of wall clock time, across all games
+	 */
+	public double movesPerSecond() {
+		return totalMoves() * 1e9 / Math.max(1, wallNanos);
+	}
+
+	@Override public String toString() {
+		return String.format(Locale.ENGLISH,
+				"%d games in %d ms: MrX won %.1f%%, detectives won %.1f%%, forfeits %s%n"
+						+ "average %.1f moves, %.1f rounds per game; %.0f moves/s",
+				games(), TimeUnit.NANOSECONDS.toMillis(wallNanos),
+				winRate(Side.MRX) * 100, winRate(Side.DETECTIVES) * 100, forfeits(),
+				averageMoves(), averageRounds(), movesPerSecond());
+	}
+}
@@ -0,0 +1,175 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Load test of {@link GameServer}: clients play sessions of random moves at the same time and
+ * measure sessions per second and the latency of every move request.
+ * <br>
+ * Run with {@code [--clients C] [--sessions N] [--seed S] [--tcp]}; by default clients connect in
+ * process, with {@code --tcp} over loopback.
+ */
+public final class ServerLoad {
+
+	private final long sessions;
+	private final long wallNanos;
+	private final long[] latencies;
+
+	private ServerLoad(long sessions, long wallNanos, long[] latencies) {
+		this.sessions = sessions;
+		this.wallNanos = wallNanos;
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Opens a connection of a client
+	 */
+	@FunctionalInterface
+	public interface Connector {
+		/**
+		 * @return a new client
+		 * @throws IOException if connecting failed
+		 */
+		@Nonnull GameClient connect() throws IOException;
+	}
+
+	/**
+	 * Plays sessions to the end with uniformly random moves, on one thread per client
+	 *
+	 * @param connector connects the clients
+	 * @param clients the number of clients
+	 * @param sessions the number of sessions each client plays one after another
+	 * @param seed the seed of the start locations of the first session and of the moves
+	 * @return the load measured
+	 * @throws IOException if a connection failed
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	@Nonnull public static ServerLoad run(@Nonnull Connector connector, int clients, int sessions,
+	                                      int seed) throws IOException, InterruptedException {
+		if (clients < 1) throw new IllegalArgumentException("Clients must be positive: " + clients);
+		if (sessions < 0) throw new IllegalArgumentException("Negative sessions: " + sessions);
+		List<GameClient> connected = new ArrayList<>();
+		try {
+			for (int i = 0; i < clients; i++) connected.add(connector.connect());
+			long[][] latencies = new long[clients][];
+			IOException[] failures = new IOException[clients];
+			List<Thread> threads = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int i = 0; i < clients; i++) {
+				int index = i;
+				Thread thread = new Thread(() -> {
+					try {
+						latencies[index] = play(connected.get(index), sessions, seed + index * sessions);
+					} catch (IOException e) {
+						failures[index] = e;
+					}
+				}, "server-load-" + i);
+				thread.setDaemon(true);
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) thread.join();
+			long wall = System.nanoTime() - start;
+			for (IOException failure : failures) if (failure != null) throw failure;
+			long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+			return new ServerLoad((long) clients * sessions, wall, all);
+		} finally {
+			for (GameClient client : connected) client.close();
+		}
+	}
+
+	private static long[] play(GameClient client, int sessions, int seed) throws IOException {
+		var random = new SplittableRandom(seed);
+		long[] latencies = new long[64];
+		int count = 0;
+		for (int i = 0; i < sessions; i++) {
+			int session = client.newSession(seed + i);
+			while (true) {
+				var moves = client.moves(session);
+				if (moves.isEmpty()) break;
+				long start = System.nanoTime();
+				client.move(session, moves.get(random.nextInt(moves.length())));
+				if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+				latencies[count++] = System.nanoTime() - start;
+			}
+			client.endSession(session);
+		}
+		return Arrays.copyOf(latencies, count);
+	}
+
+	/**
+	 * @return the number of sessions played
+	 */
+	public long sessions() { return sessions; }
+
+	/**
+	 * @return the number of moves made
+	 */
+	public long moves() { return latencies.length; }
+
+	/**
+	 * @return the wall clock time of the whole load
+	 */
+	public long wallNanos() { return wallNanos; }
+
+	/**
+	 * @return sessions played per second of wall clock time
+	 */
+	public double sessionsPerSecond() { return sessions * 1e9 / Math.max(1, wallNanos); }
+
+	/**
+	 * @param percentile from 0 to 100
+	 * @return the move request latency at the percentile, e.g 99 for p99; 0 without moves
+	 */
+	public long latencyNanos(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Bad percentile: " + percentile);
+		if (latencies.length == 0) return 0;
+		int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+		return latencies[Math.max(0, index)];
+	}
+
+	@Override public String toString() {
+		return String.format(Locale.ENGLISH,
+				"%d sessions, %d moves in %d ms: %.1f sessions/s; move latency p50 %.1f us, "
+						+ "p99 %.1f us, max %.1f us",
+				sessions, moves(), TimeUnit.NANOSECONDS.toMillis(wallNanos), sessionsPerSecond(),
+				latencyNanos(50) / 1e3, latencyNanos(99) / 1e3, latencyNanos(100) / 1e3);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int clients = Runtime.getRuntime().availableProcessors();
+		int sessions = 100;
+		int seed = 0;
+		boolean tcp = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--clients": clients = Integer.parseInt(args[++i]); break;
+				case "--sessions": sessions = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				case "--tcp": tcp = true; break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+		try (GameServer server = GameServer.builder().build()) {
+			Connector connector = server::connect;
+			if (tcp) {
+				SocketAddress address = server.listen(
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				connector = () -> GameClient.connect(address);
+			}
+			System.out.println(run(connector, clients, sessions, seed));
+		}
+	}
+}
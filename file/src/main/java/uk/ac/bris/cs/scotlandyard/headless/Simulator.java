@@ -0,0 +1,390 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Forfeit;
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutors;
+import uk.ac.bris.cs.scotlandyard.model.AnytimeAi;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveView;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchPool;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Plays games between two {@link Ai}s without the UI, for self-play and comparing AIs.
+ * <br>
+ * Game n of a batch starts from {@link ScotlandYard#generateMrXLocation(int)} and
+ * {@link ScotlandYard#generateDetectiveLocations(int, int)} of seed n with default tickets, so
+ * batches are reproducible for deterministic AIs. Games run in parallel on a fixed pool, each with
+ * fresh AI instances. Every {@link Ai#pickMove} call runs on a separate AI thread and is given the
+ * timeout; like in the UI, a side that takes longer loses the game, unless it is an
+ * {@link AnytimeAi} that published a move by then, as does a side that picks a move that is not
+ * available or throws; what it threw is kept in the {@link GameResult}. An exception escaping an
+ * AI thread any other way fails the batch. AI threads are platform or virtual threads, see
+ * {@link AiExecutors}. Detective AIs are given a {@link DetectiveView} of the game. After a batch
+ * the command line prints the processor time per turn of the AIs that search on the
+ * {@link SearchPool}.
+ * <br>
+ * Run with {@code --mrx <ai> --detectives <ai> [--games N] [--seed S] [--threads T]
+ * [--timeout-ms M] [--detective-count D] [--engine my|packed] [--ai-threads platform|virtual]},
+ * where an Ai is a class name or the {@link Ai#name()} of an Ai on the classpath.
+ */
+public final class Simulator implements AutoCloseable {
+
+	private final GameSetup setup;
+	private final Factory<GameState> factory;
+	private final Supplier<Ai> mrX;
+	private final Supplier<Ai> detectives;
+	private final int detectiveCount;
+	private final Duration timeout;
+	private final int threads;
+	private final ExecutorService aiExecutor;
+	// the first exception that escaped an AI thread, fatal to the batch
+	private final AtomicReference<Throwable> crashed = new AtomicReference<>();
+
+	private Simulator(Builder builder) {
+		this.setup = builder.setup;
+		this.factory = builder.factory;
+		this.mrX = builder.mrX;
+		this.detectives = builder.detectives;
+		this.detectiveCount = builder.detectiveCount;
+		this.timeout = builder.timeout;
+		this.threads = builder.threads;
+		this.aiExecutor = AiExecutors.newExecutor(builder.aiThreads, "ai-thread-",
+				(t, e) -> crashed.compareAndSet(null, e));
+	}
+
+	/**
+	 * @param mrX creates MrX's Ai, called once per game
+	 * @param detectives creates the detectives' Ai, called once per game
+	 * @return a builder of a simulator between the given AIs
+	 */
+	@Nonnull public static Builder builder(@Nonnull Supplier<Ai> mrX,
+	                                       @Nonnull Supplier<Ai> detectives) {
+		return new Builder(mrX, detectives);
+	}
+
+	/**
+	 * Builder of {@link Simulator}, by default on the standard map with
+	 * {@link MyGameStateFactory}, five detectives, a one second timeout, one thread per
+	 * processor and AI threads of {@link AiExecutors#defaultMode()}
+	 */
+	public static final class Builder {
+		private final Supplier<Ai> mrX;
+		private final Supplier<Ai> detectives;
+		private GameSetup setup;
+		private Factory<GameState> factory = new MyGameStateFactory();
+		private int detectiveCount = ScotlandYard.DETECTIVES.size();
+		private Duration timeout = Duration.ofSeconds(1);
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private AiExecutors.Mode aiThreads = AiExecutors.defaultMode();
+
+		private Builder(Supplier<Ai> mrX, Supplier<Ai> detectives) {
+			this.mrX = Objects.requireNonNull(mrX);
+			this.detectives = Objects.requireNonNull(detectives);
+		}
+
+		/**
+		 * @param setup the game setup
+		 * @return this builder
+		 */
+		@Nonnull public Builder setup(@Nonnull GameSetup setup) {
+			this.setup = Objects.requireNonNull(setup);
+			return this;
+		}
+
+		/**
+		 * @param factory the game state factory
+		 * @return this builder
+		 */
+		@Nonnull public Builder engine(@Nonnull Factory<GameState> factory) {
+			this.factory = Objects.requireNonNull(factory);
+			return this;
+		}
+
+		/**
+		 * @param count the number of detectives, from 1 to {@link ScotlandYard#DETECTIVES}
+		 * @return this builder
+		 */
+		@Nonnull public Builder detectiveCount(int count) {
+			if (count < 1 || count > ScotlandYard.DETECTIVES.size())
+				throw new IllegalArgumentException("Bad detective count: " + count);
+			this.detectiveCount = count;
+			return this;
+		}
+
+		/**
+		 * @param timeout the time each {@link Ai#pickMove} call may take
+		 * @return this builder
+		 */
+		@Nonnull public Builder timeout(@Nonnull Duration timeout) {
+			if (timeout.isNegative() || timeout.isZero())
+				throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+			this.timeout = timeout;
+			return this;
+		}
+
+		/**
+		 * @param threads the number of games played at the same time
+		 * @return this builder
+		 */
+		@Nonnull public Builder threads(int threads) {
+			if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * @param mode the kind of threads {@link Ai#pickMove} runs on, see
+		 * {@link AiExecutors#effectiveMode(AiExecutors.Mode)}
+		 * @return this builder
+		 */
+		@Nonnull public Builder aiThreads(@Nonnull AiExecutors.Mode mode) {
+			this.aiThreads = Objects.requireNonNull(mode);
+			return this;
+		}
+
+		/**
+		 * @return the simulator, to be closed after use
+		 * @throws IOException if the standard map cannot be read when no setup was given
+		 */
+		@Nonnull public Simulator build() throws IOException {
+			if (setup == null)
+				setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+			return new Simulator(this);
+		}
+	}
+
+	/**
+	 * @param nameOrClass the class name of an Ai, or the {@link Ai#name()} of an Ai on the
+	 * classpath as listed by {@link ResourceManager#scanAis()}
+	 * @return a supplier of new instances of the Ai
+	 * @throws IllegalArgumentException if there is no such Ai
+	 */
+	@SuppressWarnings("unchecked")
+	@Nonnull public static Supplier<Ai> ai(@Nonnull String nameOrClass) {
+		Class<Ai> type;
+		try {
+			Class<?> found = Class.forName(nameOrClass);
+			if (!Ai.class.isAssignableFrom(found))
+				throw new IllegalArgumentException(found + " does not implement " + Ai.class);
+			type = (Class<Ai>) found;
+		} catch (ClassNotFoundException e) {
+			type = (Class<Ai>) ResourceManager.scanAis().stream()
+					.filter(ai -> ai.name().equalsIgnoreCase(nameOrClass))
+					.findFirst()
+					.orElseThrow(() -> new IllegalArgumentException("No Ai named " + nameOrClass))
+					.getClass();
+		}
+		Class<Ai> ai = type;
+		return () -> ResourceManager.instantiateAi(ai);
+	}
+
+	static Player mrX(int seed) {
+		return new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed));
+	}
+
+	static ImmutableList<Player> detectives(int seed, int count) {
+		var locations = ScotlandYard.generateDetectiveLocations(seed, count);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < count; i++)
+			players.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		return players.build();
+	}
+
+	private GameState start(int seed) {
+		return factory.build(setup, mrX(seed), detectives(seed, detectiveCount));
+	}
+
+	/**
+	 * Plays a single game on the calling thread
+	 *
+	 * @param seed the seed of the start locations
+	 * @return the result of the game
+	 * @throws InterruptedException if interrupted while waiting for an Ai
+	 * @throws IllegalStateException if an exception escaped an AI thread
+	 */
+	@Nonnull public GameResult play(int seed) throws InterruptedException {
+		long start = System.nanoTime();
+		long picking = 0;
+		int moves = 0;
+		GameState state = start(seed);
+		Ai mrXAi = mrX.get();
+		Ai detectivesAi = detectives.get();
+		mrXAi.onStart();
+		detectivesAi.onStart();
+		try {
+			while (!state.isGameOver()) {
+				var available = state.getAvailableMoves();
+				Side side = available.iterator().next().commencedBy().isMrX() ?
+						Side.MRX : Side.DETECTIVES;
+				Ai ai = side == Side.MRX ? mrXAi : detectivesAi;
+				// detectives must not see where MrX is
+				Board board = side == Side.MRX ? state : DetectiveView.of(state);
+				long pickStart = System.nanoTime();
+				Move move;
+				try {
+					move = AiExecutors.pickMove(aiExecutor, ai, board, timeout);
+				} catch (TimeoutException e) {
+					checkNotCrashed();
+					return forfeit(seed, side, Forfeit.TIMEOUT, null, moves, state, picking, start);
+				} catch (ExecutionException e) {
+					return forfeit(seed, side, Forfeit.ERROR, e.getCause(), moves, state, picking,
+							start);
+				} finally {
+					picking += System.nanoTime() - pickStart;
+				}
+				checkNotCrashed();
+				if (!available.contains(move))
+					return forfeit(seed, side, Forfeit.ILLEGAL_MOVE, null, moves, state, picking, start);
+				state = state.advance(move);
+				moves++;
+			}
+			Side winner = state.getWinner().contains(Piece.MrX.MRX) ? Side.MRX : Side.DETECTIVES;
+			return new GameResult(seed, winner, null, null, moves, state.getMrXTravelLog().size(),
+					picking, System.nanoTime() - start);
+		} finally {
+			mrXAi.onTerminate();
+			detectivesAi.onTerminate();
+		}
+	}
+
+	private static GameResult forfeit(int seed, Side loser, Forfeit forfeit, Throwable error,
+	                                  int moves, GameState state, long picking, long start) {
+		return new GameResult(seed, loser == Side.MRX ? Side.DETECTIVES : Side.MRX, forfeit, error,
+				moves, state.getMrXTravelLog().size(), picking, System.nanoTime() - start);
+	}
+
+	// an exception escaping an AI thread could have been any game's, so no result can be trusted
+	private void checkNotCrashed() {
+		Throwable e = crashed.get();
+		if (e != null) throw new IllegalStateException("An Ai thread crashed", e);
+	}
+
+	/**
+	 * Plays games in parallel, one per seed from the first seed
+	 *
+	 * @param firstSeed the seed of the first game
+	 * @param games the number of games
+	 * @return the report of all games
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	@Nonnull public Report run(int firstSeed, int games) throws InterruptedException {
+		if (games < 0) throw new IllegalArgumentException("Negative games: " + games);
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("simulator-%d")
+				.setDaemon(true)
+				.build());
+		long start = System.nanoTime();
+		try {
+			List<Future<GameResult>> futures = new ArrayList<>(games);
+			for (int i = 0; i < games; i++) {
+				int seed = firstSeed + i;
+				futures.add(pool.submit(() -> play(seed)));
+			}
+			var results = ImmutableList.<GameResult>builderWithExpectedSize(games);
+			for (Future<GameResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// creating or starting an Ai failed, or an Ai thread crashed
+					throw new IllegalStateException("Game failed", e.getCause());
+				}
+			}
+			return new Report(results.build(), System.nanoTime() - start);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops the AI threads; moves still being picked are interrupted
+	 */
+	@Override public void close() { aiExecutor.shutdownNow(); }
+
+	private static Factory<GameState> engine(String name) {
+		switch (name) {
+			case "my": return new MyGameStateFactory();
+			case "packed": return new PackedGameStateFactory();
+			default: throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String mrX = null;
+		String detectives = null;
+		int games = 100;
+		int seed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long timeoutMillis = 1000;
+		int detectiveCount = ScotlandYard.DETECTIVES.size();
+		String engine = "my";
+		AiExecutors.Mode aiThreads = AiExecutors.defaultMode();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--mrx": mrX = args[++i]; break;
+				case "--detectives": detectives = args[++i]; break;
+				case "--games": games = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--timeout-ms": timeoutMillis = Long.parseLong(args[++i]); break;
+				case "--detective-count": detectiveCount = Integer.parseInt(args[++i]); break;
+				case "--engine": engine = args[++i]; break;
+				case "--ai-threads":
+					aiThreads = AiExecutors.Mode.valueOf(args[++i].toUpperCase(Locale.ENGLISH));
+					break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+		if (mrX == null || detectives == null) {
+			System.err.println("Usage: Simulator --mrx <ai> --detectives <ai> [--games N] [--seed S] "
+					+ "[--threads T] [--timeout-ms M] [--detective-count D] [--engine my|packed] "
+					+ "[--ai-threads platform|virtual]");
+			System.exit(2);
+		}
+		try (Simulator simulator = builder(ai(mrX), ai(detectives))
+				.engine(engine(engine))
+				.detectiveCount(detectiveCount)
+				.timeout(Duration.ofMillis(timeoutMillis))
+				.threads(threads)
+				.aiThreads(aiThreads)
+				.build()) {
+			Report report = simulator.run(seed, games);
+			System.out.println(report);
+			report.results().forEach(result -> result.error().ifPresent(e ->
+					System.err.println("Game " + result.seed + ": " + e)));
+		}
+		// AIs searching on the shared pool report their processor time
+		SearchPool.shared().usage().forEach((ai, usage) -> System.out.println(ai + ": " + usage));
+	}
+}
@@ -0,0 +1,200 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * Executors for {@link Ai#pickMove} requests, on platform threads or on virtual threads.
+ * <br>
+ * A cached pool of platform threads needs a thread per AI that is thinking or stuck, which runs
+ * out with thousands of concurrent games; virtual threads make a blocked AI cost only its stack.
+ * The project targets Java 17, so virtual threads are looked up reflectively and used when the
+ * runtime has them (Java 21 or later); elsewhere {@link Mode#VIRTUAL} falls back to platform
+ * threads. The mode defaults to the {@value #PROPERTY} system property, {@code platform} or
+ * {@code virtual}.
+ * <br>
+ * {@link #call(ExecutorService, Callable, Duration)} bounds a request by a deadline: the request
+ * is cancelled and its thread interrupted when the deadline passes or the caller is interrupted,
+ * so it never outlives the turn it was made for. {@link #pickMove(ExecutorService, Ai, Board,
+ * Duration)} does the same for a move and plays the best move so far of an {@link AnytimeAi} that
+ * is still searching at the deadline.
+ */
+public final class AiExecutors {
+
+	private AiExecutors() {}
+
+	/**
+	 * The kind of threads requests run on
+	 */
+	public enum Mode {PLATFORM, VIRTUAL}
+
+	/**
+	 * The system property selecting the default {@link Mode}
+	 */
+	public static final String PROPERTY = "scotlandyard.ai.threads";
+
+	// Thread.ofVirtual(), null if virtual threads are not available
+	@Nullable private static final Method OF_VIRTUAL = findOfVirtual();
+
+	@Nullable private static Method findOfVirtual() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			// throws on Java 19 and 20 without --enable-preview
+			ofVirtual.invoke(null);
+			return ofVirtual;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return whether the runtime supports virtual threads
+	 */
+	public static boolean virtualThreadsAvailable() { return OF_VIRTUAL != null; }
+
+	/**
+	 * @return the mode given by the {@value #PROPERTY} system property; {@link Mode#PLATFORM} if
+	 * unset
+	 * @throws IllegalArgumentException if the property is not a mode
+	 */
+	@Nonnull public static Mode defaultMode() {
+		String value = System.getProperty(PROPERTY, "platform");
+		try {
+			return Mode.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Bad " + PROPERTY + ": " + value, e);
+		}
+	}
+
+	/**
+	 * @param mode the requested mode
+	 * @return the mode executors are created with, {@link Mode#PLATFORM} if virtual threads are
+	 * not available
+	 */
+	@Nonnull public static Mode effectiveMode(@Nonnull Mode mode) {
+		return mode == Mode.VIRTUAL && virtualThreadsAvailable() ? Mode.VIRTUAL : Mode.PLATFORM;
+	}
+
+	/**
+	 * @param mode the kind of threads, see {@link #effectiveMode(Mode)}
+	 * @param name the prefix of thread names, followed by a counter
+	 * @param handler handles exceptions escaping the threads
+	 * @return an executor running each request on a new virtual thread, or on a cached pool of
+	 * daemon platform threads
+	 */
+	@Nonnull public static ExecutorService newExecutor(@Nonnull Mode mode,
+	                                                   @Nonnull String name,
+	                                                   @Nonnull UncaughtExceptionHandler handler) {
+		Objects.requireNonNull(name);
+		Objects.requireNonNull(handler);
+		if (effectiveMode(mode) == Mode.VIRTUAL) {
+			try {
+				return virtualExecutor(name, handler);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Virtual threads are available but failed", e);
+			}
+		}
+		return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat(name.replace("%", "%%") + "%d")
+				.setDaemon(true)
+				.setUncaughtExceptionHandler(handler)
+				.build());
+	}
+
+	private static ExecutorService virtualExecutor(String name, UncaughtExceptionHandler handler)
+			throws ReflectiveOperationException {
+		Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+		Object builder = Objects.requireNonNull(OF_VIRTUAL).invoke(null);
+		builder = builderType.getMethod("name", String.class, long.class)
+				.invoke(builder, name, 0L);
+		builder = builderType.getMethod("uncaughtExceptionHandler", UncaughtExceptionHandler.class)
+				.invoke(builder, handler);
+		ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		return (ExecutorService) Executors.class
+				.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+				.invoke(null, factory);
+	}
+
+	/**
+	 * Runs a request and waits for it until the deadline. The request is cancelled, interrupting
+	 * its thread, if it is not done by then or the caller is interrupted while waiting.
+	 *
+	 * @param executor the executor to run the request on
+	 * @param request the request, e.g a call to {@link Ai#pickMove}
+	 * @param timeout the time until the deadline
+	 * @param <T> the result type
+	 * @return the result of the request
+	 * @throws TimeoutException if the request did not finish in time
+	 * @throws ExecutionException if the request threw
+	 * @throws InterruptedException if the caller was interrupted
+	 */
+	public static <T> T call(@Nonnull ExecutorService executor,
+	                         @Nonnull Callable<T> request,
+	                         @Nonnull Duration timeout)
+			throws TimeoutException, ExecutionException, InterruptedException {
+		Future<T> future = executor.submit(request);
+		try {
+			return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		} finally {
+			// no-op if done
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Asks an Ai for a move and waits for it until the deadline, like
+	 * {@link #call(ExecutorService, Callable, Duration)}. An {@link AnytimeAi} still searching at
+	 * the deadline is cancelled and its latest published move that is available is returned.
+	 *
+	 * @param executor the executor to run the request on
+	 * @param ai the Ai
+	 * @param board the board to pick a move on
+	 * @param timeout the time the Ai is given
+	 * @return the move picked, which is not checked against the available moves unless it was
+	 * taken from those published
+	 * @throws TimeoutException if the Ai did not finish in time and published no available move
+	 * @throws ExecutionException if the Ai threw
+	 * @throws InterruptedException if the caller was interrupted
+	 */
+	@Nonnull public static Move pickMove(@Nonnull ExecutorService executor,
+	                                     @Nonnull Ai ai,
+	                                     @Nonnull Board board,
+	                                     @Nonnull Duration timeout)
+			throws TimeoutException, ExecutionException, InterruptedException {
+		var timeoutPair = new Pair<>(timeout.toMillis(), TimeUnit.MILLISECONDS);
+		if (!(ai instanceof AnytimeAi))
+			return call(executor, () -> ai.pickMove(board, timeoutPair), timeout);
+		var latest = new AtomicReference<Move>();
+		Consumer<Move> bestSoFar = move -> {
+			if (move != null && board.getAvailableMoves().contains(move)) latest.set(move);
+		};
+		try {
+			return call(executor, () -> ((AnytimeAi) ai).pickMove(board, timeoutPair, bestSoFar),
+					timeout);
+		} catch (TimeoutException e) {
+			Move move = latest.get();
+			if (move == null) throw e;
+			return move;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * An {@link Ai} that can be stopped at any time: while it searches it publishes the best move
+ * found so far, and when the timeout runs out before it returns, the game plays the last move it
+ * published instead of ending the game. Only an Ai that published nothing loses by timeout.
+ * <br>
+ * Publish early and publish often: the first move should come as soon as the Ai has any
+ * reasonable move, later ones as the search improves on it.
+ */
+public interface AnytimeAi extends Ai {
+
+	/**
+	 * @param board the game board
+	 * @param timeoutPair how long the Ai has to make a decision, see
+	 * {@link Ai#pickMove(Board, Pair)}
+	 * @param bestSoFar receives the best move found so far each time it changes; may be called
+	 * from any thread, moves that are not available are ignored
+	 * @return a correct move from {@link Board#getAvailableMoves()} in the game board
+	 */
+	@Nonnull Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair,
+	                       @Nonnull Consumer<Move> bestSoFar);
+
+	/**
+	 * Picks a move without publishing moves on the way
+	 */
+	@Nonnull @Override default Move pickMove(@Nonnull Board board,
+	                                         Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, timeoutPair, move -> {});
+	}
+}
@@ -0,0 +1,328 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A precompiled binary form of the game graph, for maps large enough that parsing the text
+ * format of {@link ScotlandYard#readGraph(String)} slows down startup.
+ * <br>
+ * The file is little endian and laid out as {@link CompactGraph} is in memory, so loading is
+ * a bulk read of a memory mapped file. The arrays read become the {@link CompactGraph} of the
+ * graph, once checked against it, so it is never compiled; the Guava graph is still rebuilt
+ * because {@link GameSetup} needs one:
+ * <pre>
+ * int magic 'SYG1', int version
+ * int nodeCount, int nodeBound, int edgeCount, int flags (bit 0: positions)
+ * int[nodeCount]     stations in ascending order
+ * int[nodeBound + 1] offsets of the edges leaving each station
+ * int[edgeCount]     edge targets, undirected edges are stored in both directions
+ * byte[edgeCount]    edge transport masks (bit {@link Transport#ordinal()}), padded to 4 bytes
+ * int[nodeCount * 2] x and y of each station in the order of the station table, if bit 0 is set
+ * </pre>
+ * Run {@link #main(String[])} with {@code <graph.txt> [pos.txt] <out>} to convert a map.
+ */
+public final class BinaryGraph {
+
+	/**
+	 * 'SYG1'
+	 */
+	static final int MAGIC = 0x53594731;
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 6 * Integer.BYTES;
+	private static final int FLAG_POSITIONS = 1;
+
+	// one shared edge value per transport mask
+	private static final ImmutableSet<?>[] TRANSPORT_SETS =
+			new ImmutableSet<?>[1 << Transport.values().length];
+
+	static {
+		for (int mask = 0; mask < TRANSPORT_SETS.length; mask++) {
+			var set = EnumSet.noneOf(Transport.class);
+			for (Transport t : Transport.values())
+				if ((mask & 1 << t.ordinal()) != 0) set.add(t);
+			TRANSPORT_SETS[mask] = Sets.immutableEnumSet(set);
+		}
+	}
+
+	private final ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private final ImmutableMap<Integer, Entry<Integer, Integer>> positions;
+
+	private BinaryGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                    ImmutableMap<Integer, Entry<Integer, Integer>> positions) {
+		this.graph = graph;
+		this.positions = positions;
+	}
+
+	/**
+	 * @return the graph, as returned by {@link ScotlandYard#readGraph(String)} for the same map
+	 */
+	@Nonnull public ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph() { return graph; }
+
+	/**
+	 * @return the unscaled x and y of each station as given in {@code pos.txt}; empty if the file
+	 * has no positions
+	 */
+	@Nonnull public ImmutableMap<Integer, Entry<Integer, Integer>> positions() { return positions; }
+
+	@SuppressWarnings("unchecked")
+	private static ImmutableSet<Transport> transports(int mask) {
+		return (ImmutableSet<Transport>) TRANSPORT_SETS[mask];
+	}
+
+	/**
+	 * @param content the content of a station position file such as {@code pos.txt}: a count
+	 * followed by lines of station, x and y; blank lines are ignored
+	 * @return the unscaled x and y of each station
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	@Nonnull public static ImmutableMap<Integer, Entry<Integer, Integer>> readPositions(
+			@Nonnull String content) {
+		var builder = ImmutableMap.<Integer, Entry<Integer, Integer>>builder();
+		boolean counted = false;
+		for (String line : (Iterable<String>) content.lines()::iterator) {
+			if (line.isBlank()) continue;
+			String[] values = line.trim().split("\\s+");
+			// the count on the first line, then a station and its position per line
+			String error = (counted ? "Bad position line: " : "Bad count line: ") + line;
+			if (values.length != (counted ? 3 : 1)) throw new IllegalArgumentException(error);
+			try {
+				if (counted) builder.put(Integer.parseInt(values[0]), new SimpleImmutableEntry<>(
+						Integer.parseInt(values[1]), Integer.parseInt(values[2])));
+				else Integer.parseInt(values[0]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(error, e);
+			}
+			counted = true;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param positions the positions of the stations, see {@link #positions()}; may be empty,
+	 * otherwise every station must have one
+	 * @param out the file to write
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a station has no position
+	 */
+	public static void write(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                         @Nonnull Map<Integer, ? extends Entry<Integer, Integer>> positions,
+	                         @Nonnull Path out) throws IOException {
+		CompactGraph compact = CompactGraph.of(graph);
+		int nodeCount = compact.nodeCount();
+		int bound = compact.nodeBound();
+		int edges = compact.edgeCount();
+		boolean hasPositions = !positions.isEmpty();
+		ByteBuffer buffer = ByteBuffer.allocate(size(nodeCount, bound, edges, hasPositions))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION)
+				.putInt(nodeCount).putInt(bound).putInt(edges)
+				.putInt(hasPositions ? FLAG_POSITIONS : 0);
+		for (int node = 0; node < bound; node++) if (compact.contains(node)) buffer.putInt(node);
+		for (int node = 0; node <= bound; node++)
+			buffer.putInt(node < bound ? compact.edgeStart(node) : edges);
+		for (int e = 0; e < edges; e++) buffer.putInt(compact.target(e));
+		for (int e = 0; e < edges; e++) buffer.put((byte) compact.transports(e));
+		buffer.position(buffer.position() + padding(edges));
+		if (hasPositions) {
+			for (int node = 0; node < bound; node++) {
+				if (!compact.contains(node)) continue;
+				Entry<Integer, Integer> position = positions.get(node);
+				if (position == null)
+					throw new IllegalArgumentException("No position for station " + node);
+				buffer.putInt(position.getKey()).putInt(position.getValue());
+			}
+		}
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) channel.write(buffer);
+		}
+	}
+
+	private static int padding(int edges) { return -edges & 3; }
+
+	private static int size(int nodeCount, int bound, int edges, boolean positions) {
+		long size = HEADER_BYTES + (long) Integer.BYTES * (nodeCount + bound + 1 + edges)
+				+ edges + padding(edges) + (positions ? 2L * Integer.BYTES * nodeCount : 0);
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Graph is too large");
+		return (int) size;
+	}
+
+	/**
+	 * @param file a file written by {@link #write(ImmutableValueGraph, Map, Path)}
+	 * @return the graph and positions of the file
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a binary graph or is corrupt
+	 */
+	@Nonnull public static BinaryGraph read(@Nonnull Path file) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return read(mapped.order(ByteOrder.LITTLE_ENDIAN));
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated graph file: " + file, e);
+		}
+	}
+
+	private static BinaryGraph read(ByteBuffer buffer) {
+		if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+			throw new IllegalArgumentException("Not a binary graph");
+		int version = buffer.getInt();
+		if (version != VERSION) throw new IllegalArgumentException("Unknown version: " + version);
+		int nodeCount = buffer.getInt();
+		int bound = buffer.getInt();
+		int edges = buffer.getInt();
+		int flags = buffer.getInt();
+		if (nodeCount < 0 || bound < nodeCount || edges < 0)
+			throw new IllegalArgumentException("Bad header");
+		if (buffer.remaining() < size(nodeCount, bound, edges, (flags & FLAG_POSITIONS) != 0)
+				- HEADER_BYTES) throw new IllegalArgumentException("Truncated graph file");
+
+		int[] nodes = new int[nodeCount];
+		int[] offsets = new int[bound + 1];
+		int[] targets = new int[edges];
+		byte[] transports = new byte[edges];
+		buffer.asIntBuffer().get(nodes);
+		buffer.position(buffer.position() + nodes.length * Integer.BYTES);
+		buffer.asIntBuffer().get(offsets);
+		buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+		buffer.asIntBuffer().get(targets);
+		buffer.position(buffer.position() + targets.length * Integer.BYTES);
+		buffer.get(transports);
+		buffer.position(buffer.position() + padding(edges));
+
+		boolean[] stations = new boolean[bound];
+		for (int node : nodes) {
+			if (node < 0 || node >= bound || stations[node])
+				throw new IllegalArgumentException("Bad station: " + node);
+			stations[node] = true;
+		}
+		if (offsets[0] != 0 || offsets[bound] != edges)
+			throw new IllegalArgumentException("Bad offsets");
+		for (int node = 0; node < bound; node++) {
+			// only stations have edges
+			if (offsets[node] > offsets[node + 1]
+					|| (!stations[node] && offsets[node] != offsets[node + 1]))
+				throw new IllegalArgumentException("Bad offsets of station " + node);
+		}
+
+		var builder = ValueGraphBuilder.undirected()
+				.expectedNodeCount(nodeCount)
+				.<Integer, ImmutableSet<Transport>>immutable();
+		for (int node : nodes) builder.addNode(node);
+		for (int node : nodes) {
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				int target = targets[e];
+				int mask = transports[e] & 0xFF;
+				if (target < 0 || target >= bound || !stations[target])
+					throw new IllegalArgumentException("Bad target: " + target);
+				if (mask >= TRANSPORT_SETS.length)
+					throw new IllegalArgumentException("Bad transports: " + mask);
+				// each undirected edge is stored twice, add it once
+				if (target < node) continue;
+				builder.putEdgeValue(node, target, transports(mask));
+			}
+		}
+		var graph = builder.build();
+		// the arrays must be exactly the adjacency of the graph before they are used for it
+		int[] seen = new int[bound];
+		for (int node : nodes) {
+			if (offsets[node + 1] - offsets[node] != graph.degree(node))
+				throw new IllegalArgumentException("Asymmetric edges of station " + node);
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				int target = targets[e];
+				boolean same = seen[target] != node + 1 && graph.hasEdgeConnecting(node, target)
+						&& graph.edgeValue(node, target).orElseThrow()
+						.equals(transports(transports[e] & 0xFF));
+				if (!same) throw new IllegalArgumentException("Asymmetric edges of station " + node);
+				seen[target] = node + 1;
+			}
+		}
+		CompactGraph.seed(graph, new CompactGraph(nodeCount, stations, offsets, targets, transports));
+
+		var positions = ImmutableMap.<Integer, Entry<Integer, Integer>>of();
+		if ((flags & FLAG_POSITIONS) != 0) {
+			var read = ImmutableMap.<Integer, Entry<Integer, Integer>>builderWithExpectedSize(nodeCount);
+			for (int node : nodes)
+				read.put(node, new SimpleImmutableEntry<>(buffer.getInt(), buffer.getInt()));
+			positions = read.build();
+		}
+		return new BinaryGraph(graph, positions);
+	}
+
+	/**
+	 * Converts a text graph, and optionally its station positions, to the binary format
+	 *
+	 * @param text the graph in the format of {@link ScotlandYard#readGraph(String)}
+	 * @param positions the station positions, see {@link #readPositions(String)}; null for none
+	 * @param out the file to write
+	 * @return the graph written
+	 * @throws IOException if a file cannot be read or written
+	 */
+	static ImmutableValueGraph<Integer, ImmutableSet<Transport>> convert(
+			Path text, @Nullable Path positions, Path out) throws IOException {
+		var graph = ScotlandYard.readGraph(Files.readString(text, StandardCharsets.UTF_8));
+		write(graph, positions == null ? ImmutableMap.of() :
+				readPositions(Files.readString(positions, StandardCharsets.UTF_8)), out);
+		return graph;
+	}
+
+	/**
+	 * Converts a text graph, and optionally its station positions, to the binary format
+	 *
+	 * @param args {@code <graph.txt> [pos.txt] <out>}
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BinaryGraph <graph.txt> [pos.txt] <out>");
+			System.exit(2);
+		}
+		Path out = Paths.get(args[args.length - 1]);
+		var graph = convert(Paths.get(args[0]), args.length == 3 ? Paths.get(args[1]) : null, out);
+		System.out.printf("Wrote %d stations and %d routes to %s (%d bytes)%n",
+				graph.nodes().size(), graph.edges().size(), out, Files.size(out));
+	}
+
+	@Override public String toString() {
+		return "BinaryGraph{graph=" + graph + ", positions=" + positions.size() + '}';
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		BinaryGraph that = (BinaryGraph) o;
+		return graph.equals(that.graph) && positions.equals(that.positions);
+	}
+	@Override public int hashCode() { return Objects.hash(graph, positions); }
+}
@@ -3,10 +3,14 @@ package uk.ac.bris.cs.scotlandyard.model;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
 
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 
@@ -26,6 +30,51 @@ public interface Board {
 		int getCount(@Nonnull Ticket ticket);
 	}
 
+	/**
+	 * Receives available moves as primitive fields so they can be enumerated without
+	 * constructing {@link Move} instances, see {@link #forEachAvailableMove(MoveConsumer)}
+	 */
+	interface MoveConsumer {
+		/**
+		 * @param piece the player making the move
+		 * @param source where the player is before the move
+		 * @param ticket the ticket
+		 * @param destination the destination
+		 */
+		void acceptSingle(@Nonnull Piece piece, int source, @Nonnull Ticket ticket, int destination);
+		/**
+		 * @param piece the player making the move, always MrX
+		 * @param source where the player is before the move
+		 * @param ticket1 the first ticket
+		 * @param destination1 the first destination
+		 * @param ticket2 the second ticket
+		 * @param destination2 the second destination
+		 */
+		void acceptDouble(@Nonnull Piece piece, int source,
+		                  @Nonnull Ticket ticket1, int destination1,
+		                  @Nonnull Ticket ticket2, int destination2);
+
+		/**
+		 * @param sink receives a {@link SingleMove} or {@link DoubleMove} per accepted move
+		 * @return a consumer that materialises every move it accepts
+		 */
+		@Nonnull static MoveConsumer materialising(@Nonnull Consumer<? super Move> sink) {
+			Objects.requireNonNull(sink);
+			return new MoveConsumer() {
+				@Override public void acceptSingle(@Nonnull Piece piece, int source,
+				                                   @Nonnull Ticket ticket, int destination) {
+					sink.accept(new SingleMove(piece, source, ticket, destination));
+				}
+				@Override public void acceptDouble(@Nonnull Piece piece, int source,
+				                                   @Nonnull Ticket ticket1, int destination1,
+				                                   @Nonnull Ticket ticket2, int destination2) {
+					sink.accept(new DoubleMove(piece, source,
+							ticket1, destination1, ticket2, destination2));
+				}
+			};
+		}
+	}
+
 	/**
 	 * @return the current game setup
 	 */
@@ -58,6 +107,35 @@ public interface Board {
 	 * This is mutually exclusive with {@link #getWinner()}
 	 */
 	@Nonnull ImmutableSet<Move> getAvailableMoves();
+	/**
+	 * Implementations should override this if the winner can be determined without generating
+	 * all available moves.
+	 *
+	 * @return whether the game is over, i.e {@link #getWinner()} is not empty
+	 */
+	default boolean isGameOver() { return !getWinner().isEmpty(); }
+	/**
+	 * Enumerates the same moves as {@link #getAvailableMoves()}, each exactly once, without
+	 * requiring the move set to be built. The default implementation adapts
+	 * {@link #getAvailableMoves()}; implementations that generate moves should override this.
+	 *
+	 * @param consumer receives every available move
+	 */
+	default void forEachAvailableMove(@Nonnull MoveConsumer consumer) {
+		Objects.requireNonNull(consumer);
+		var visitor = new Move.Visitor<Void>() {
+			@Override public Void visit(SingleMove m) {
+				consumer.acceptSingle(m.commencedBy(), m.source(), m.ticket, m.destination);
+				return null;
+			}
+			@Override public Void visit(DoubleMove m) {
+				consumer.acceptDouble(m.commencedBy(), m.source(),
+						m.ticket1, m.destination1, m.ticket2, m.destination2);
+				return null;
+			}
+		};
+		for (Move move : getAvailableMoves()) move.accept(visitor);
+	}
 
 
 	/**
@@ -74,6 +152,20 @@ public interface Board {
 		 * {@link #getAvailableMoves()}
 		 */
 		@Nonnull GameState advance(Move move);
+
+		/**
+		 * @return whether the implementation maintains {@link #zobristKey()}; false by default
+		 */
+		default boolean hasZobristKey() { return false; }
+
+		/**
+		 * @return the {@link Zobrist} key of this state, maintained incrementally by
+		 * {@link #advance(Move)}; equal states have equal keys
+		 * @throws UnsupportedOperationException if {@link #hasZobristKey()} is false
+		 */
+		default long zobristKey() {
+			throw new UnsupportedOperationException("Zobrist keys are not maintained");
+		}
 	}
 
 
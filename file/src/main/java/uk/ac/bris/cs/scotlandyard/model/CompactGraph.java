@@ -0,0 +1,180 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A compiled, read-only form of the ScotlandYard game graph for move generation.
+ * <br>
+ * The adjacency is stored in compressed sparse row form: the edges leaving station {@code n} are
+ * {@code edgeStart(n) <= e < edgeEnd(n)}, each with a neighbour {@link #target(int)} and a
+ * transport bit mask {@link #transports(int)} (bit {@link Transport#ordinal()}). Stations are
+ * indexed directly by their number, so the arrays are sized by the largest station number.
+ * Undirected edges are stored in both directions and neighbours keep the order of
+ * {@link ImmutableValueGraph#adjacentNodes(Object)}, or of the file for a graph read by
+ * {@link BinaryGraph}.
+ * <br>
+ * Use {@link #of(ImmutableValueGraph)} to obtain an instance; compiled graphs are cached by the
+ * identity of the source graph so each graph is compiled once no matter how many
+ * {@link GameSetup}s or game states share it. {@link BinaryGraph} puts the arrays it read in the
+ * cache, so graphs it reads are never compiled.
+ */
+public final class CompactGraph {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>,
+			CompactGraph> CACHE = CacheBuilder.newBuilder()
+			.weakKeys() // weak keys are compared by identity
+			.build(CacheLoader.from(CompactGraph::new));
+
+	/**
+	 * Ticket bit masks (bit {@link Ticket#ordinal()}) indexed by transport bit mask
+	 */
+	private static final int[] TICKETS_BY_TRANSPORTS = new int[1 << Transport.values().length];
+
+	static {
+		for (int mask = 0; mask < TICKETS_BY_TRANSPORTS.length; mask++) {
+			for (Transport t : Transport.values())
+				if ((mask & 1 << t.ordinal()) != 0)
+					TICKETS_BY_TRANSPORTS[mask] |= 1 << t.requiredTicket().ordinal();
+		}
+	}
+
+	private final int nodeCount;
+	private final boolean[] nodes;
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] transports;
+
+	private CompactGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int bound = 0;
+		int degrees = 0;
+		for (int node : graph.nodes()) {
+			if (node < 0) throw new IllegalArgumentException("Negative station: " + node);
+			bound = Math.max(bound, node + 1);
+			degrees += graph.degree(node);
+		}
+		this.nodeCount = graph.nodes().size();
+		this.nodes = new boolean[bound];
+		this.offsets = new int[bound + 1];
+		this.targets = new int[degrees];
+		this.transports = new byte[degrees];
+		for (int node : graph.nodes()) {
+			nodes[node] = true;
+			offsets[node + 1] = graph.degree(node);
+		}
+		for (int i = 0; i < bound; i++) offsets[i + 1] += offsets[i];
+		for (int node : graph.nodes()) {
+			int e = offsets[node];
+			for (int adjacent : graph.adjacentNodes(node)) {
+				int mask = 0;
+				//noinspection ConstantConditions
+				for (Transport t : graph.edgeValueOrDefault(node, adjacent, ImmutableSet.of()))
+					mask |= 1 << t.ordinal();
+				targets[e] = adjacent;
+				transports[e] = (byte) mask;
+				e++;
+			}
+		}
+	}
+
+	// arrays laid out and checked by the caller, see BinaryGraph; they are kept, not copied
+	CompactGraph(int nodeCount, boolean[] nodes, int[] offsets, int[] targets, byte[] transports) {
+		this.nodeCount = nodeCount;
+		this.nodes = nodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.transports = transports;
+	}
+
+	/**
+	 * Caches the compiled form of a graph that has the same adjacency, so {@link #of} returns it
+	 * instead of compiling the graph
+	 *
+	 * @param graph the game graph
+	 * @param compiled its compiled form
+	 */
+	static void seed(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                 CompactGraph compiled) {
+		CACHE.asMap().putIfAbsent(graph, compiled);
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the compiled form of the given graph, compiled at most once per graph instance
+	 * @throws IllegalArgumentException if the graph contains negative station numbers
+	 */
+	@Nonnull public static CompactGraph of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		try {
+			return CACHE.getUnchecked(graph);
+		} catch (UncheckedExecutionException e) {
+			// the loader only throws for bad graphs, report those as they were thrown
+			Throwables.throwIfUnchecked(e.getCause());
+			throw e;
+		}
+	}
+
+	/**
+	 * @param transports a transport bit mask, as returned by {@link #transports(int)}
+	 * @return a ticket bit mask (bit {@link Ticket#ordinal()}) of the tickets required by the
+	 * transports; {@link Ticket#SECRET} is only included for {@link Transport#FERRY}
+	 */
+	public static int requiredTickets(int transports) { return TICKETS_BY_TRANSPORTS[transports]; }
+
+	/**
+	 * @return the number of stations in the graph
+	 */
+	public int nodeCount() { return nodeCount; }
+
+	/**
+	 * @return one more than the largest station number; all station numbers are below this
+	 */
+	public int nodeBound() { return nodes.length; }
+
+	/**
+	 * @param node the station
+	 * @return whether the station is part of the graph
+	 */
+	public boolean contains(int node) { return node >= 0 && node < nodes.length && nodes[node]; }
+
+	/**
+	 * @param node the station
+	 * @return the first edge index of the station; equal to {@link #edgeEnd(int)} if the station
+	 * has no edges or is not part of the graph
+	 */
+	public int edgeStart(int node) { return node >= 0 && node < nodes.length ? offsets[node] : 0; }
+
+	/**
+	 * @param node the station
+	 * @return one past the last edge index of the station
+	 */
+	public int edgeEnd(int node) { return node >= 0 && node < nodes.length ? offsets[node + 1] : 0; }
+
+	/**
+	 * @param edge the edge index
+	 * @return the station at the other end of the edge
+	 */
+	public int target(int edge) { return targets[edge]; }
+
+	/**
+	 * @param edge the edge index
+	 * @return the transport bit mask of the edge (bit {@link Transport#ordinal()})
+	 */
+	public int transports(int edge) { return transports[edge]; }
+
+	/**
+	 * @return the total number of directed edges, i.e twice the number of undirected edges
+	 */
+	public int edgeCount() { return targets.length; }
+
+}
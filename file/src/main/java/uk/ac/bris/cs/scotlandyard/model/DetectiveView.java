@@ -0,0 +1,95 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A board as the detectives see it, to be handed to detective {@link Ai}s.
+ * <br>
+ * The board of the game tells more than the detectives may know: while MrX is to move his moves
+ * start from his location, and a {@link Board.GameState} can be advanced until a detective lands
+ * on him. The view is only a {@link Board}; it has no moves while MrX is to move and its
+ * {@link #toString()} does not describe the board. Everything else is public: the detectives'
+ * locations and tickets, the travel log, the winner and MrX's tickets, which are his starting
+ * tickets less the ones in the log plus the ones the detectives have used.
+ * <br>
+ * Nothing is copied: queries are answered by the board when they are asked and the filtered
+ * moves are computed on first use, so a view costs the same whether or not the Ai reads it. The
+ * board must not change while the view is in use, which holds for the game states models hand
+ * out.
+ */
+public final class DetectiveView implements Board {
+
+	private final Board board;
+	private final Supplier<ImmutableSet<Move>> moves;
+
+	private DetectiveView(Board board) {
+		this.board = board;
+		this.moves = Suppliers.memoize(() -> board.getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().isDetective())
+				.collect(ImmutableSet.toImmutableSet()));
+	}
+
+	/**
+	 * @param board the board of the game
+	 * @return the detectives' view of the board
+	 */
+	@Nonnull public static DetectiveView of(@Nonnull Board board) {
+		Objects.requireNonNull(board);
+		return board instanceof DetectiveView ? (DetectiveView) board : new DetectiveView(board);
+	}
+
+	@Nonnull @Override public GameSetup getSetup() { return board.getSetup(); }
+
+	@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return board.getPlayers(); }
+
+	@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+		return board.getDetectiveLocation(detective);
+	}
+
+	@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+		return board.getPlayerTickets(piece);
+	}
+
+	@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+		return board.getMrXTravelLog();
+	}
+
+	@Nonnull @Override public ImmutableSet<Piece> getWinner() { return board.getWinner(); }
+
+	@Override public boolean isGameOver() { return board.isGameOver(); }
+
+	/**
+	 * @return the detectives' moves; empty while MrX is to move
+	 */
+	@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() { return moves.get(); }
+
+	@Override public void forEachAvailableMove(@Nonnull MoveConsumer consumer) {
+		Objects.requireNonNull(consumer);
+		board.forEachAvailableMove(new MoveConsumer() {
+			@Override public void acceptSingle(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket, int destination) {
+				if (piece.isDetective()) consumer.acceptSingle(piece, source, ticket, destination);
+			}
+			@Override public void acceptDouble(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket1, int destination1,
+			                                   @Nonnull Ticket ticket2, int destination2) {
+				// only MrX has double moves
+			}
+		});
+	}
+
+	@Override public String toString() {
+		return "DetectiveView{log=" + board.getMrXTravelLog() + '}';
+	}
+}
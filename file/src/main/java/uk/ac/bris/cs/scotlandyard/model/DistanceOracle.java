@@ -0,0 +1,168 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * All-pairs hop distances of a game graph, optionally restricted to a set of transports, e.g
+ * taxi only or everything but the underground. Distances count routes taken and ignore tickets
+ * and detectives.
+ * <br>
+ * Distances are computed once per graph and transport set with a breadth first search from every
+ * station and stored as unsigned bytes in a {@code nodeBound * nodeBound} table, 40KB for the
+ * standard map, so lookups are a single array read. Oracles are cached by the identity of the
+ * graph like {@link CompactGraph}.
+ */
+public final class DistanceOracle {
+
+	/**
+	 * Distance between stations that are not connected, or not part of the graph
+	 */
+	public static final int UNREACHABLE = -1;
+	/**
+	 * The largest distance a table can hold
+	 */
+	public static final int MAX_DISTANCE = 0xFE;
+
+	private static final int UNREACHABLE_BYTE = 0xFF;
+	private static final int ALL_TRANSPORTS = (1 << Transport.values().length) - 1;
+
+	// one slot per transport mask, filled on first use
+	private static final LoadingCache<CompactGraph, AtomicReferenceArray<DistanceOracle>> CACHE =
+			CacheBuilder.newBuilder()
+					.weakKeys()
+					.build(CacheLoader.from(graph -> new AtomicReferenceArray<>(ALL_TRANSPORTS + 1)));
+
+	private final CompactGraph graph;
+	private final int transports;
+	private final int bound;
+	private final byte[] distances;
+
+	private DistanceOracle(CompactGraph graph, int transports) {
+		this.graph = graph;
+		this.transports = transports;
+		this.bound = graph.nodeBound();
+		if ((long) bound * bound > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Graph is too large for a distance table");
+		this.distances = new byte[bound * bound];
+		Arrays.fill(distances, (byte) UNREACHABLE_BYTE);
+		int[] queue = new int[bound];
+		for (int source = 0; source < bound; source++)
+			if (graph.contains(source)) search(source, queue);
+	}
+
+	private void search(int source, int[] queue) {
+		int row = source * bound;
+		distances[row + source] = 0;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			int node = queue[head++];
+			int next = (distances[row + node] & 0xFF) + 1;
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+				int target = graph.target(e);
+				if ((graph.transports(e) & transports) == 0
+						|| (distances[row + target] & 0xFF) != UNREACHABLE_BYTE) continue;
+				if (next > MAX_DISTANCE)
+					throw new IllegalArgumentException("Graph is too deep for a distance table");
+				distances[row + target] = (byte) next;
+				queue[tail++] = target;
+			}
+		}
+	}
+
+	private static int mask(Set<Transport> transports) {
+		int mask = 0;
+		for (Transport t : transports) mask |= 1 << t.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the oracle of the graph using every transport
+	 * @throws IllegalArgumentException if a distance exceeds {@link #MAX_DISTANCE} or the table
+	 * would not fit in an array
+	 */
+	@Nonnull public static DistanceOracle of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return of(CompactGraph.of(graph), ALL_TRANSPORTS);
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @param transports the transports that may be used
+	 * @return the oracle of the graph restricted to the given transports, computed at most once
+	 * per graph instance and transport set
+	 * @throws IllegalArgumentException if a distance exceeds {@link #MAX_DISTANCE} or the table
+	 * would not fit in an array
+	 */
+	@Nonnull public static DistanceOracle of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+			@Nonnull Set<Transport> transports) {
+		return of(CompactGraph.of(graph), mask(Objects.requireNonNull(transports)));
+	}
+
+	static DistanceOracle of(CompactGraph graph, int transports) {
+		var oracles = CACHE.getUnchecked(graph);
+		DistanceOracle oracle = oracles.get(transports);
+		if (oracle == null) {
+			// racing threads compute the same table, only the first one is kept
+			oracles.compareAndSet(transports, null, new DistanceOracle(graph, transports));
+			oracle = oracles.get(transports);
+		}
+		return oracle;
+	}
+
+	/**
+	 * @return the transports routes may use
+	 */
+	@Nonnull public ImmutableSet<Transport> transports() {
+		var set = EnumSet.noneOf(Transport.class);
+		for (Transport t : Transport.values())
+			if ((transports & 1 << t.ordinal()) != 0) set.add(t);
+		return Sets.immutableEnumSet(set);
+	}
+
+	/**
+	 * @param from the source station
+	 * @param to the destination station
+	 * @return the least number of routes from source to destination; {@link #UNREACHABLE} if there
+	 * is no path or either station is not part of the graph
+	 */
+	public int distance(int from, int to) {
+		if (from < 0 || from >= bound || to < 0 || to >= bound) return UNREACHABLE;
+		int distance = distances[from * bound + to] & 0xFF;
+		return distance == UNREACHABLE_BYTE ? UNREACHABLE : distance;
+	}
+
+	/**
+	 * @param to the destination station
+	 * @param from the source stations, e.g the locations of all detectives
+	 * @return the least distance from any of the sources; {@link #UNREACHABLE} if none of them
+	 * can reach the destination
+	 */
+	public int minDistance(int to, @Nonnull int... from) {
+		int min = UNREACHABLE;
+		for (int source : from) {
+			int distance = distance(source, to);
+			if (distance != UNREACHABLE && (min == UNREACHABLE || distance < min)) min = distance;
+		}
+		return min;
+	}
+
+}
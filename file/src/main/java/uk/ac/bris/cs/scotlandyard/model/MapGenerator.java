@@ -0,0 +1,344 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Generates Scotland Yard style maps of any size for scaling tests, deterministically from a
+ * seed.
+ * <br>
+ * Stations are numbered from 1 and laid out row by row on a jittered square grid. Like the
+ * standard map, the transports are layered:
+ * <ul>
+ *     <li>taxi routes join most neighbouring stations, with extra routes added until every
+ *     station can be reached by taxi</li>
+ *     <li>bus routes join stops every two or more stations along rows and columns</li>
+ *     <li>underground routes join a few stations every six or more stations apart</li>
+ *     <li>ferry routes join stations along a river through the middle of the map</li>
+ * </ul>
+ * The result is written in the text format of {@link ScotlandYard#readGraph(String)} with
+ * station positions in the format of {@code pos.txt}. Run {@link #main(String[])} with
+ * {@code <stations> [seed] [directory]} to write {@code graph.txt} and {@code pos.txt}.
+ */
+public final class MapGenerator {
+
+	/**
+	 * Distance between neighbouring stations in position units
+	 */
+	public static final int SPACING = 40;
+
+	private final int stations;
+	private final int columns;
+	private final int[] xs;
+	private final int[] ys;
+	// routes, one per station pair and transport, with the lower station first
+	private final EnumMap<Transport, int[]> routes = new EnumMap<>(Transport.class);
+	private final EnumMap<Transport, Integer> routeCounts = new EnumMap<>(Transport.class);
+
+	private MapGenerator(int stations, long seed) {
+		if (stations < 2 || stations > 10_000_000)
+			throw new IllegalArgumentException("Stations must be between 2 and 10^7: " + stations);
+		this.stations = stations;
+		this.columns = (int) Math.ceil(Math.sqrt(stations));
+		this.xs = new int[stations + 1];
+		this.ys = new int[stations + 1];
+		// each layer has its own stream so changing one leaves the others as they were
+		SplittableRandom random = new SplittableRandom(seed);
+		SplittableRandom positions = random.split();
+		SplittableRandom taxi = random.split();
+		SplittableRandom bus = random.split();
+		SplittableRandom underground = random.split();
+		SplittableRandom ferry = random.split();
+		for (int s = 1; s <= stations; s++) {
+			xs[s] = column(s) * SPACING + SPACING / 2 + positions.nextInt(-SPACING / 3, SPACING / 3);
+			ys[s] = row(s) * SPACING + SPACING / 2 + positions.nextInt(-SPACING / 3, SPACING / 3);
+		}
+		generateTaxi(taxi);
+		generateLines(Transport.BUS, bus, 2, 0.6, 0.9);
+		generateLines(Transport.UNDERGROUND, underground, 6, 0.35, 0.8);
+		generateFerry(ferry);
+	}
+
+	/**
+	 * @param stations the number of stations, from 2 to 10^7
+	 * @param seed the seed, equal seeds and sizes generate equal maps
+	 * @return the generated map
+	 */
+	@Nonnull public static MapGenerator generate(int stations, long seed) {
+		return new MapGenerator(stations, seed);
+	}
+
+	private int row(int station) { return (station - 1) / columns; }
+	private int column(int station) { return (station - 1) % columns; }
+	private int station(int row, int column) {
+		if (row < 0 || column < 0 || column >= columns) return -1;
+		long station = (long) row * columns + column + 1;
+		return station <= stations ? (int) station : -1;
+	}
+
+	private void addRoute(Transport transport, int a, int b) {
+		int[] pairs = routes.computeIfAbsent(transport, t -> new int[64]);
+		int count = routeCounts.getOrDefault(transport, 0);
+		if (count * 2 == pairs.length) routes.put(transport, pairs = Arrays.copyOf(pairs, count * 4));
+		pairs[count * 2] = Math.min(a, b);
+		pairs[count * 2 + 1] = Math.max(a, b);
+		routeCounts.put(transport, count + 1);
+	}
+
+	private static int find(int[] parents, int x) {
+		while (parents[x] != x) x = parents[x] = parents[parents[x]];
+		return x;
+	}
+
+	private static boolean union(int[] parents, int a, int b) {
+		int ra = find(parents, a);
+		int rb = find(parents, b);
+		if (ra == rb) return false;
+		parents[ra] = rb;
+		return true;
+	}
+
+	private void generateTaxi(SplittableRandom random) {
+		int[] parents = new int[stations + 1];
+		for (int s = 0; s <= stations; s++) parents[s] = s;
+		// the grid routes that were left out, by station: bit 0 right, bit 1 down
+		byte[] skipped = new byte[stations + 1];
+		for (int s = 1; s <= stations; s++) {
+			int right = station(row(s), column(s) + 1);
+			int down = station(row(s) + 1, column(s));
+			int diagonal = station(row(s) + 1, column(s) + 1);
+			if (right > 0) {
+				if (random.nextDouble() < 0.7) {
+					addRoute(Transport.TAXI, s, right);
+					union(parents, s, right);
+				} else skipped[s] |= 1;
+			}
+			if (down > 0) {
+				if (random.nextDouble() < 0.7) {
+					addRoute(Transport.TAXI, s, down);
+					union(parents, s, down);
+				} else skipped[s] |= 2;
+			}
+			if (diagonal > 0 && random.nextDouble() < 0.1) {
+				addRoute(Transport.TAXI, s, diagonal);
+				union(parents, s, diagonal);
+			}
+		}
+		// the full grid is connected, so adding back skipped routes that join parts connects it
+		for (int s = 1; s <= stations; s++) {
+			int right = station(row(s), column(s) + 1);
+			int down = station(row(s) + 1, column(s));
+			if ((skipped[s] & 1) != 0 && union(parents, s, right)) addRoute(Transport.TAXI, s, right);
+			if ((skipped[s] & 2) != 0 && union(parents, s, down)) addRoute(Transport.TAXI, s, down);
+		}
+	}
+
+	/**
+	 * Routes along rows and columns between stops on a coarser grid, every stride stations
+	 */
+	private void generateLines(Transport transport, SplittableRandom random, int stride,
+	                           double stopChance, double routeChance) {
+		int rows = row(stations) + 1;
+		boolean[] stops = new boolean[stations + 1];
+		for (int r = 0; r < rows; r += stride)
+			for (int c = 0; c < columns; c += stride) {
+				int s = station(r, c);
+				if (s > 0) stops[s] = random.nextDouble() < stopChance;
+			}
+		for (int r = 0; r < rows; r += stride) {
+			int previous = -1;
+			for (int c = 0; c < columns; c += stride) {
+				int s = station(r, c);
+				if (s < 0 || !stops[s]) continue;
+				if (previous > 0 && random.nextDouble() < routeChance) addRoute(transport, previous, s);
+				previous = s;
+			}
+		}
+		for (int c = 0; c < columns; c += stride) {
+			int previous = -1;
+			for (int r = 0; r < rows; r += stride) {
+				int s = station(r, c);
+				if (s < 0 || !stops[s]) continue;
+				if (previous > 0 && random.nextDouble() < routeChance) addRoute(transport, previous, s);
+				previous = s;
+			}
+		}
+	}
+
+	private void generateFerry(SplittableRandom random) {
+		int river = row(stations) / 2;
+		int c = random.nextInt(Math.max(1, Math.min(columns, 8)));
+		// about one ferry route per 100 stations along the river, like the four of the standard map
+		int count = Math.max(1, stations / 100);
+		for (int i = 0; i < count; i++) {
+			int from = station(river, c);
+			c += 3 + random.nextInt(8);
+			int to = station(river, c);
+			if (from < 0 || to < 0) break;
+			addRoute(Transport.FERRY, from, to);
+		}
+	}
+
+	/**
+	 * @return the number of stations
+	 */
+	public int stations() { return stations; }
+
+	/**
+	 * @return the number of routes, counting each transport between two stations once
+	 */
+	public int routes() {
+		int routes = 0;
+		for (int count : routeCounts.values()) routes += count;
+		return routes;
+	}
+
+	/**
+	 * @param transport the transport
+	 * @return the number of routes of the transport
+	 */
+	public int routes(@Nonnull Transport transport) {
+		return routeCounts.getOrDefault(transport, 0);
+	}
+
+	/**
+	 * @param station the station, from 1
+	 * @return the x position of the station
+	 */
+	public int x(int station) { return xs[station]; }
+
+	/**
+	 * @param station the station, from 1
+	 * @return the y position of the station
+	 */
+	public int y(int station) { return ys[station]; }
+
+	/**
+	 * @param out where to write the graph in the format of {@link ScotlandYard#readGraph(String)}
+	 * @throws IOException if writing fails
+	 */
+	public void writeGraph(@Nonnull Appendable out) throws IOException {
+		out.append(Integer.toString(stations)).append(' ')
+				.append(Integer.toString(routes())).append('\n');
+		for (int s = 1; s <= stations; s++) out.append(Integer.toString(s)).append('\n');
+		for (var entry : routes.entrySet()) {
+			String name = entry.getKey().name().charAt(0)
+					+ entry.getKey().name().substring(1).toLowerCase(Locale.ENGLISH);
+			int[] pairs = entry.getValue();
+			for (int i = 0; i < routeCounts.get(entry.getKey()); i++)
+				out.append(Integer.toString(pairs[i * 2])).append(' ')
+						.append(Integer.toString(pairs[i * 2 + 1])).append(' ')
+						.append(name).append('\n');
+		}
+	}
+
+	/**
+	 * @param out where to write the station positions in the format of {@code pos.txt}
+	 * @throws IOException if writing fails
+	 */
+	public void writePositions(@Nonnull Appendable out) throws IOException {
+		out.append(Integer.toString(stations)).append('\n');
+		for (int s = 1; s <= stations; s++)
+			out.append(Integer.toString(s)).append(' ')
+					.append(Integer.toString(xs[s])).append(' ')
+					.append(Integer.toString(ys[s])).append('\n');
+	}
+
+	/**
+	 * @return the graph in the format of {@link ScotlandYard#readGraph(String)}
+	 */
+	@Nonnull public String graphText() {
+		var builder = new StringBuilder();
+		try {
+			writeGraph(builder);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return the station positions in the format of {@code pos.txt}
+	 */
+	@Nonnull public String positionsText() {
+		var builder = new StringBuilder();
+		try {
+			writePositions(builder);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return the graph, equal to reading {@link #graphText()} with
+	 * {@link ScotlandYard#readGraph(String)} without formatting and parsing the text
+	 */
+	@Nonnull public ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph() {
+		// build the edge values first, some station pairs have more than one transport
+		var values = new HashMap<Long, ImmutableSet<Transport>>();
+		for (var entry : routes.entrySet()) {
+			int[] pairs = entry.getValue();
+			for (int i = 0; i < routeCounts.get(entry.getKey()); i++)
+				values.merge((long) pairs[i * 2] << 32 | pairs[i * 2 + 1],
+						ImmutableSet.of(entry.getKey()),
+						(a, b) -> ImmutableSet.<Transport>builder().addAll(a).addAll(b).build());
+		}
+		var builder = ValueGraphBuilder.undirected()
+				.expectedNodeCount(stations)
+				.<Integer, ImmutableSet<Transport>>immutable();
+		for (int s = 1; s <= stations; s++) builder.addNode(s);
+		values.forEach((pair, transports) ->
+				builder.putEdgeValue((int) (pair >>> 32), (int) (long) pair, transports));
+		return builder.build();
+	}
+
+	/**
+	 * Writes {@code graph.txt} and {@code pos.txt} of a generated map
+	 *
+	 * @param args {@code <stations> [seed] [directory]}
+	 * @throws IOException if writing fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: MapGenerator <stations> [seed] [directory]");
+			System.exit(2);
+		}
+		int stations = Integer.parseInt(args[0]);
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		Path directory = Paths.get(args.length > 2 ? args[2] : ".");
+		Files.createDirectories(directory);
+		long start = System.nanoTime();
+		MapGenerator map = generate(stations, seed);
+		try (BufferedWriter graph = Files.newBufferedWriter(directory.resolve("graph.txt"),
+				StandardCharsets.UTF_8);
+		     BufferedWriter positions = Files.newBufferedWriter(directory.resolve("pos.txt"),
+				     StandardCharsets.UTF_8)) {
+			map.writeGraph(graph);
+			map.writePositions(positions);
+		}
+		System.out.printf("Generated %d stations and %d routes (%d taxi, %d bus, %d underground, "
+						+ "%d ferry) in %d ms%n", stations, map.routes(),
+				map.routes(Transport.TAXI), map.routes(Transport.BUS),
+				map.routes(Transport.UNDERGROUND), map.routes(Transport.FERRY),
+				(System.nanoTime() - start) / 1_000_000);
+	}
+}
@@ -0,0 +1,197 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A canonical 32-bit encoding of {@link Move}s so search code can keep moves in {@code int[]}s
+ * and only materialise {@link Move} objects at the API boundary.
+ * <br>
+ * A code is laid out as {@code kind << 24 | source << 16 | destination1 << 8 | destination2}
+ * where kind is {@code piece * 5 + ticket} for single moves, with piece being the index in
+ * {@link ScotlandYard#ALL_PIECES}, and {@code 30 + ticket1 * 5 + ticket2} for MrX's double
+ * moves. {@code destination2} is 0 for single moves. Stations must therefore be in
+ * {@code [0, }{@link #MAX_STATION}{@code ]}, which holds for the standard 199 station map.
+ * Codes are never negative, so -1 can be used as a sentinel.
+ * <br>
+ * Two moves are {@link Move#equals(Object)} if and only if their codes are equal.
+ */
+public final class MoveEncoding {
+
+	private MoveEncoding() {}
+
+	/**
+	 * The largest station number that can be encoded
+	 */
+	public static final int MAX_STATION = 0xFF;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int TICKET_COUNT = TICKETS.length;
+	private static final int DOUBLE_KIND = ScotlandYard.ALL_PIECES.size() * TICKET_COUNT;
+
+	private static int station(int station) {
+		if (station < 0 || station > MAX_STATION)
+			throw new IllegalArgumentException("Station cannot be encoded: " + station);
+		return station;
+	}
+
+	private static int pieceIndex(Piece piece) {
+		int index = ScotlandYard.ALL_PIECES.indexOf(Objects.requireNonNull(piece));
+		if (index < 0) throw new IllegalArgumentException("Unknown piece: " + piece);
+		return index;
+	}
+
+	/**
+	 * @param piece the player making the move
+	 * @param source the source
+	 * @param ticket the ticket
+	 * @param destination the destination
+	 * @return the code of the single move
+	 * @throws IllegalArgumentException if a station is outside of {@code [0, MAX_STATION]}
+	 */
+	public static int single(@Nonnull Piece piece, int source,
+	                         @Nonnull Ticket ticket, int destination) {
+		int kind = pieceIndex(piece) * TICKET_COUNT + ticket.ordinal();
+		return kind << 24 | station(source) << 16 | station(destination) << 8;
+	}
+
+	/**
+	 * @param source the source
+	 * @param ticket1 the first ticket
+	 * @param destination1 the first destination
+	 * @param ticket2 the second ticket
+	 * @param destination2 the second destination
+	 * @return the code of MrX's double move
+	 * @throws IllegalArgumentException if a station is outside of {@code [0, MAX_STATION]}
+	 */
+	public static int doubleMove(int source,
+	                             @Nonnull Ticket ticket1, int destination1,
+	                             @Nonnull Ticket ticket2, int destination2) {
+		int kind = DOUBLE_KIND + ticket1.ordinal() * TICKET_COUNT + ticket2.ordinal();
+		return kind << 24 | station(source) << 16 | station(destination1) << 8
+				| station(destination2);
+	}
+
+	/**
+	 * @param move the move
+	 * @return the code of the move
+	 * @throws IllegalArgumentException if the move cannot be encoded, i.e a station is out of
+	 * range or a double move is not made by MrX
+	 */
+	public static int encode(@Nonnull Move move) {
+		return move.accept(new FunctionalVisitor<>(
+				m -> single(m.commencedBy(), m.source(), m.ticket, m.destination),
+				m -> {
+					if (m.commencedBy() != MrX.MRX)
+						throw new IllegalArgumentException("Only MrX makes double moves: " + m);
+					return doubleMove(m.source(), m.ticket1, m.destination1,
+							m.ticket2, m.destination2);
+				}));
+	}
+
+	private static int kind(int code) { return code >>> 24; }
+
+	/**
+	 * @param code the move code
+	 * @return whether the code is of a double move
+	 */
+	public static boolean isDouble(int code) { return kind(code) >= DOUBLE_KIND; }
+
+	/**
+	 * @param code the move code
+	 * @return the player making the move
+	 */
+	@Nonnull public static Piece piece(int code) {
+		return isDouble(code) ? MrX.MRX : ScotlandYard.ALL_PIECES.get(kind(code) / TICKET_COUNT);
+	}
+
+	/**
+	 * @param code the move code
+	 * @return the source of the move
+	 */
+	public static int source(int code) { return code >>> 16 & 0xFF; }
+
+	/**
+	 * @param code the move code
+	 * @return the ticket of a single move or the first ticket of a double move
+	 */
+	@Nonnull public static Ticket ticket1(int code) {
+		int kind = kind(code);
+		return kind >= DOUBLE_KIND ?
+				TICKETS[(kind - DOUBLE_KIND) / TICKET_COUNT] : TICKETS[kind % TICKET_COUNT];
+	}
+
+	/**
+	 * @param code the move code
+	 * @return the destination of a single move or the first destination of a double move
+	 */
+	public static int destination1(int code) { return code >>> 8 & 0xFF; }
+
+	/**
+	 * @param code the move code of a double move
+	 * @return the second ticket
+	 * @throws IllegalArgumentException if the code is not of a double move
+	 */
+	@Nonnull public static Ticket ticket2(int code) {
+		if (!isDouble(code)) throw new IllegalArgumentException("Not a double move: " + code);
+		return TICKETS[(kind(code) - DOUBLE_KIND) % TICKET_COUNT];
+	}
+
+	/**
+	 * @param code the move code of a double move
+	 * @return the second destination
+	 * @throws IllegalArgumentException if the code is not of a double move
+	 */
+	public static int destination2(int code) {
+		if (!isDouble(code)) throw new IllegalArgumentException("Not a double move: " + code);
+		return code & 0xFF;
+	}
+
+	/**
+	 * @param code the move code
+	 * @return where the player ends up after the move
+	 */
+	public static int destination(int code) {
+		return isDouble(code) ? code & 0xFF : destination1(code);
+	}
+
+	/**
+	 * @param code the move code
+	 * @return a new move for the code; see {@link MoveTable#decode(int)} for interned single moves
+	 */
+	@Nonnull public static Move decode(int code) {
+		if (isDouble(code)) return new DoubleMove(MrX.MRX, source(code),
+				ticket1(code), destination1(code), ticket2(code), destination2(code));
+		return new SingleMove(piece(code), source(code), ticket1(code), destination1(code));
+	}
+
+	/**
+	 * @param sink receives the code of every accepted move
+	 * @return a move consumer that encodes moves without allocating, for use with
+	 * {@link Board#forEachAvailableMove(MoveConsumer)}
+	 */
+	@Nonnull public static MoveConsumer encoding(@Nonnull IntConsumer sink) {
+		Objects.requireNonNull(sink);
+		return new MoveConsumer() {
+			@Override public void acceptSingle(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket, int destination) {
+				sink.accept(single(piece, source, ticket, destination));
+			}
+			@Override public void acceptDouble(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket1, int destination1,
+			                                   @Nonnull Ticket ticket2, int destination2) {
+				sink.accept(doubleMove(source, ticket1, destination1, ticket2, destination2));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A flyweight table of {@link SingleMove}s for one {@link CompactGraph}: there is at most one
+ * instance per piece, ticket and edge of the graph, created on first use.
+ * <br>
+ * Every move a player can make along a route of the graph is a single move or a pair of them, so
+ * materialising moves through the table stops the game states from allocating the same
+ * {@link SingleMove} over and over. Single moves that do not follow an edge of the graph are
+ * still created, just not interned.
+ */
+public final class MoveTable {
+
+	private static final LoadingCache<CompactGraph, MoveTable> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(MoveTable::new));
+
+	private static final int TICKET_COUNT = Ticket.values().length;
+	private static final int SLOTS_PER_EDGE = ScotlandYard.ALL_PIECES.size() * TICKET_COUNT;
+
+	private final CompactGraph graph;
+	// entries are immutable, so publishing them through a racy array write is safe
+	private final SingleMove[] singles;
+
+	private MoveTable(CompactGraph graph) {
+		this.graph = graph;
+		this.singles = new SingleMove[graph.edgeCount() * SLOTS_PER_EDGE];
+	}
+
+	/**
+	 * @param graph the compiled game graph
+	 * @return the move table of the graph, created at most once per graph instance
+	 */
+	@Nonnull public static MoveTable of(@Nonnull CompactGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	private int edge(int source, int destination) {
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (graph.target(e) == destination) return e;
+		return -1;
+	}
+
+	/**
+	 * @param piece the player making the move
+	 * @param source the source
+	 * @param ticket the ticket
+	 * @param destination the destination
+	 * @return the interned single move; a new instance if there is no such route
+	 */
+	@Nonnull public SingleMove single(@Nonnull Piece piece, int source,
+	                                  @Nonnull Ticket ticket, int destination) {
+		int edge = edge(source, destination);
+		int pieceIndex = ScotlandYard.ALL_PIECES.indexOf(Objects.requireNonNull(piece));
+		if (edge < 0 || pieceIndex < 0) return new SingleMove(piece, source, ticket, destination);
+		int slot = edge * SLOTS_PER_EDGE + pieceIndex * TICKET_COUNT + ticket.ordinal();
+		SingleMove move = singles[slot];
+		if (move == null) singles[slot] = move = new SingleMove(piece, source, ticket, destination);
+		return move;
+	}
+
+	/**
+	 * @param code a move code, see {@link MoveEncoding}
+	 * @return the move of the code, interned if it is a single move
+	 */
+	@Nonnull public Move decode(int code) {
+		if (MoveEncoding.isDouble(code)) return MoveEncoding.decode(code);
+		return single(MoveEncoding.piece(code), MoveEncoding.source(code),
+				MoveEncoding.ticket1(code), MoveEncoding.destination1(code));
+	}
+
+	/**
+	 * @param sink receives a move per accepted move, single moves are interned
+	 * @return a consumer that materialises every move it accepts
+	 */
+	@Nonnull public MoveConsumer materialising(@Nonnull Consumer<? super Move> sink) {
+		Objects.requireNonNull(sink);
+		return new MoveConsumer() {
+			@Override public void acceptSingle(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket, int destination) {
+				sink.accept(single(piece, source, ticket, destination));
+			}
+			@Override public void acceptDouble(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket1, int destination1,
+			                                   @Nonnull Ticket ticket2, int destination2) {
+				sink.accept(new DoubleMove(piece, source,
+						ticket1, destination1, ticket2, destination2));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,291 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A probability distribution over the stations MrX could be at, as far as the detectives know;
+ * the weighted counterpart of {@link MrXLocationTracker}.
+ * <br>
+ * Each hidden log entry spreads the probability of every station over the stations MrX could
+ * have moved to with the logged ticket, in proportion to the {@link MovementModel} weights of
+ * the destinations; stations taken by a detective cannot be moved to. A reveal puts all the
+ * probability on the revealed station. Like the tracker, updates are incremental and read only
+ * the new log entries, and the detectives' current locations are ruled out while the game is
+ * still running. Detective locations are those at the time of the update, so the distribution is
+ * exact for the model when updated after every move.
+ * <br>
+ * Probabilities are kept in {@code double[]} indexed by station. An update visits every station
+ * a fixed number of times and each station is written independently, so on graphs with at least
+ * {@link #PARALLEL_THRESHOLD} stations the update runs in parallel on the common pool.
+ */
+public final class MrXLocationDistribution implements Model.Observer {
+
+	/**
+	 * How MrX is expected to choose between the stations he can move to
+	 */
+	@FunctionalInterface public interface MovementModel {
+		/**
+		 * @param detectives the detectives' locations
+		 * @return the relative weight of moving to each station given the detectives' locations;
+		 * positive. Asked for once per update and called from several threads on large graphs.
+		 */
+		@Nonnull IntToDoubleFunction weights(@Nonnull int[] detectives);
+	}
+
+	/**
+	 * @return a model where MrX picks any of his moves with equal probability
+	 */
+	@Nonnull public static MovementModel uniform() { return detectives -> station -> 1; }
+
+	/**
+	 * @param graph the game graph
+	 * @param exponent how strongly MrX prefers stations far from the detectives, 0 is
+	 * {@link #uniform()}
+	 * @return a model where MrX prefers stations far from the nearest detective, weighted by
+	 * {@code (1 + distance) ^ exponent}. Distances are found by a breadth first search from all
+	 * the detectives at once on each update, linear in the size of the graph; stations no
+	 * detective can reach count as further than any other.
+	 */
+	@Nonnull public static MovementModel distanceWeighted(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph, double exponent) {
+		if (!(exponent >= 0)) throw new IllegalArgumentException("Bad exponent: " + exponent);
+		CompactGraph compact = CompactGraph.of(graph);
+		return detectives -> {
+			int[] distances = nearestDistances(compact, detectives);
+			return station -> {
+				int distance = station >= 0 && station < distances.length ?
+						distances[station] : DistanceOracle.UNREACHABLE;
+				if (distance == DistanceOracle.UNREACHABLE) distance = distances.length;
+				return Math.pow(1 + distance, exponent);
+			};
+		};
+	}
+
+	/**
+	 * @return the hop distance of every station to the nearest source, indexed by station up to
+	 * {@link CompactGraph#nodeBound()}; {@link DistanceOracle#UNREACHABLE} where there is none
+	 */
+	private static int[] nearestDistances(CompactGraph graph, int[] sources) {
+		int[] distances = new int[graph.nodeBound()];
+		Arrays.fill(distances, DistanceOracle.UNREACHABLE);
+		int[] queue = new int[distances.length];
+		int head = 0;
+		int tail = 0;
+		for (int source : sources) {
+			if (!graph.contains(source) || distances[source] == 0) continue;
+			distances[source] = 0;
+			queue[tail++] = source;
+		}
+		while (head < tail) {
+			int node = queue[head++];
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+				int target = graph.target(e);
+				if (distances[target] != DistanceOracle.UNREACHABLE) continue;
+				distances[target] = distances[node] + 1;
+				queue[tail++] = target;
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * The number of stations from which updates run in parallel
+	 */
+	public static final int PARALLEL_THRESHOLD = 2048;
+
+	private final CompactGraph graph;
+	private final MovementModel model;
+	private final StationSet starts;
+	private final int parallelThreshold;
+	private double[] probabilities;
+	private double[] next;
+	private final double[] weights;
+	private final double[] outgoing;
+	private int entries;
+
+	/**
+	 * @param graph the game graph
+	 * @param starts the stations MrX may start at, all equally likely
+	 * @param model the movement model
+	 * @throws IllegalArgumentException if a start is not part of the graph or there are none
+	 */
+	public MrXLocationDistribution(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+			@Nonnull Iterable<Integer> starts,
+			@Nonnull MovementModel model) {
+		this(graph, starts, model, PARALLEL_THRESHOLD);
+	}
+
+	MrXLocationDistribution(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                        Iterable<Integer> starts,
+	                        MovementModel model,
+	                        int parallelThreshold) {
+		this.graph = CompactGraph.of(graph);
+		this.model = Objects.requireNonNull(model);
+		this.parallelThreshold = parallelThreshold;
+		int bound = this.graph.nodeBound();
+		this.starts = new StationSet(bound);
+		for (int start : starts) {
+			if (!this.graph.contains(start))
+				throw new IllegalArgumentException("Start is not on the map: " + start);
+			this.starts.add(start);
+		}
+		if (this.starts.isEmpty()) throw new IllegalArgumentException("No starts");
+		this.probabilities = new double[bound];
+		this.next = new double[bound];
+		this.weights = new double[bound];
+		this.outgoing = new double[bound];
+		reset();
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		update(board);
+	}
+
+	/**
+	 * Catches up with the board, reading only the log entries not seen before. A board with a
+	 * shorter log than the last one is taken to be a new game and the log is read from the start.
+	 *
+	 * @param board the current board
+	 */
+	public void update(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		if (log.size() < entries) reset();
+		int[] detectives = detectiveLocations(board);
+		IntToDoubleFunction weighting = null;
+		for (; entries < log.size(); entries++) {
+			LogEntry entry = log.get(entries);
+			if (entry.location().isPresent()) reveal(entry.location().get());
+			else {
+				if (weighting == null) weighting = model.weights(detectives);
+				travel(entry.ticket(), weighting, detectives);
+			}
+		}
+		// MrX would have been caught at a detective's station
+		if (board.getWinner().isEmpty()) {
+			for (int detective : detectives)
+				if (detective >= 0 && detective < probabilities.length) probabilities[detective] = 0;
+			normalise(probabilities);
+		}
+	}
+
+	/**
+	 * Forgets the log, MrX is equally likely to be at any of the starts again
+	 */
+	public void reset() {
+		double p = 1.0 / starts.size();
+		Arrays.fill(probabilities, 0);
+		starts.forEach(s -> probabilities[s] = p);
+		entries = 0;
+	}
+
+	private static int[] detectiveLocations(Board board) {
+		return board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(piece -> board.getDetectiveLocation((Piece.Detective) piece))
+				.flatMap(Optional::stream)
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+
+	private void forEachStation(IntConsumer action) {
+		var stations = IntStream.range(0, probabilities.length);
+		(probabilities.length >= parallelThreshold ? stations.parallel() : stations).forEach(action);
+	}
+
+	private void reveal(int location) {
+		Arrays.fill(probabilities, 0);
+		if (graph.contains(location)) probabilities[location] = 1;
+	}
+
+	private boolean usable(Ticket ticket, int edge) {
+		return ticket == Ticket.SECRET
+				|| (CompactGraph.requiredTickets(graph.transports(edge)) & 1 << ticket.ordinal()) != 0;
+	}
+
+	private void travel(Ticket ticket, IntToDoubleFunction weighting, int[] detectives) {
+		double[] current = probabilities;
+		double[] updated = next;
+		// the weight of moving to each station, 0 where MrX cannot go
+		forEachStation(s -> weights[s] = graph.contains(s) ? weighting.applyAsDouble(s) : 0);
+		for (int detective : detectives)
+			if (detective >= 0 && detective < weights.length) weights[detective] = 0;
+		// the probability each station sends along a unit of weight; lost if MrX was stuck there
+		forEachStation(from -> {
+			double total = 0;
+			if (current[from] != 0)
+				for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++)
+					if (usable(ticket, e)) total += weights[graph.target(e)];
+			outgoing[from] = total == 0 ? 0 : current[from] / total;
+		});
+		// the graph is undirected, so the edges of a station are also the edges into it
+		forEachStation(to -> {
+			double sum = 0;
+			if (weights[to] != 0)
+				for (int e = graph.edgeStart(to); e < graph.edgeEnd(to); e++)
+					if (usable(ticket, e)) sum += outgoing[graph.target(e)];
+			updated[to] = weights[to] * sum;
+		});
+		normalise(updated);
+		probabilities = updated;
+		next = current;
+	}
+
+	private static void normalise(double[] probabilities) {
+		double total = 0;
+		for (double p : probabilities) total += p;
+		if (total == 0 || total == 1) return;
+		for (int i = 0; i < probabilities.length; i++) probabilities[i] /= total;
+	}
+
+	/**
+	 * @return the number of log entries read so far
+	 */
+	public int entries() { return entries; }
+
+	/**
+	 * @param station the station
+	 * @return the probability of MrX being at the station
+	 */
+	public double probability(int station) {
+		return station >= 0 && station < probabilities.length ? probabilities[station] : 0;
+	}
+
+	/**
+	 * @return a copy of the probabilities, indexed by station up to
+	 * {@link CompactGraph#nodeBound()}; all zero if the log contradicts the starts or the model
+	 */
+	@Nonnull public double[] probabilities() { return probabilities.clone(); }
+
+	/**
+	 * @return the most likely station; -1 if no station is possible
+	 */
+	public int mostLikely() {
+		int best = -1;
+		for (int s = 0; s < probabilities.length; s++)
+			if (probabilities[s] > 0 && (best == -1 || probabilities[s] > probabilities[best])) best = s;
+		return best;
+	}
+
+	/**
+	 * @return the stations with a non zero probability
+	 */
+	@Nonnull public StationSet support() {
+		var support = new StationSet(probabilities.length);
+		for (int s = 0; s < probabilities.length; s++) if (probabilities[s] > 0) support.add(s);
+		return support;
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * The stations MrX could be at as far as the detectives know, i.e from his travel log and the
+ * detectives' locations alone.
+ * <br>
+ * The tracker is incremental: each update only reads the log entries added since the last one. A
+ * reveal narrows the candidates down to the revealed station; a hidden entry moves every
+ * candidate along the routes the logged ticket can be used on ({@link Ticket#SECRET} on any
+ * route). Stations taken by a detective are removed after every update while the game is still
+ * running, as MrX would have been caught there; updating after every move also rules out the
+ * stations detectives have since left. The candidates are a {@link StationSet}, so an update
+ * costs one pass over the edges of the candidates.
+ * <br>
+ * Register the tracker with {@link Model#registerObserver(Model.Observer)}, or call
+ * {@link #update(Board)} with the board of each turn.
+ */
+public final class MrXLocationTracker implements Model.Observer {
+
+	private final CompactGraph graph;
+	private final StationSet starts;
+	private StationSet candidates;
+	private StationSet next;
+	private int entries;
+
+	/**
+	 * @param graph the game graph
+	 * @param starts the stations MrX may start at, e.g {@link ScotlandYard#MRX_LOCATIONS}
+	 * @throws IllegalArgumentException if a start is not part of the graph
+	 */
+	public MrXLocationTracker(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                          @Nonnull Iterable<Integer> starts) {
+		this.graph = CompactGraph.of(graph);
+		this.starts = new StationSet(this.graph.nodeBound());
+		for (int start : starts) {
+			if (!this.graph.contains(start))
+				throw new IllegalArgumentException("Start is not on the map: " + start);
+			this.starts.add(start);
+		}
+		this.candidates = this.starts.copy();
+		this.next = new StationSet(this.graph.nodeBound());
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return a tracker where MrX may start at any station
+	 */
+	@Nonnull public static MrXLocationTracker anywhere(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return new MrXLocationTracker(graph, graph.nodes());
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		update(board);
+	}
+
+	/**
+	 * Catches up with the board, reading only the log entries not seen before. A board with a
+	 * shorter log than the last one is taken to be a new game and the log is read from the start.
+	 *
+	 * @param board the current board
+	 */
+	public void update(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		if (log.size() < entries) reset();
+		for (; entries < log.size(); entries++) {
+			LogEntry entry = log.get(entries);
+			if (entry.location().isPresent()) reveal(entry.location().get());
+			else travel(entry.ticket());
+		}
+		// MrX would have been caught at a detective's station
+		if (board.getWinner().isEmpty()) removeDetectives(board);
+	}
+
+	/**
+	 * Forgets the log, MrX may be at any of the starts again
+	 */
+	public void reset() {
+		candidates = starts.copy();
+		entries = 0;
+	}
+
+	private void reveal(int location) {
+		candidates.clear();
+		if (graph.contains(location)) candidates.add(location);
+	}
+
+	private void travel(Ticket ticket) {
+		int ticketBit = 1 << ticket.ordinal();
+		boolean secret = ticket == Ticket.SECRET;
+		next.clear();
+		for (int node = candidates.next(0); node >= 0; node = candidates.next(node + 1)) {
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++)
+				if (secret || (CompactGraph.requiredTickets(graph.transports(e)) & ticketBit) != 0)
+					next.add(graph.target(e));
+		}
+		StationSet previous = candidates;
+		candidates = next;
+		next = previous;
+	}
+
+	private void removeDetectives(Board board) {
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective())
+				board.getDetectiveLocation((Piece.Detective) piece).ifPresent(candidates::remove);
+	}
+
+	/**
+	 * @return the number of log entries read so far
+	 */
+	public int entries() { return entries; }
+
+	/**
+	 * @param station the station
+	 * @return whether MrX could be at the station
+	 */
+	public boolean contains(int station) { return candidates.contains(station); }
+
+	/**
+	 * @return the number of stations MrX could be at
+	 */
+	public int size() { return candidates.size(); }
+
+	/**
+	 * @return a copy of the stations MrX could be at
+	 */
+	@Nonnull public StationSet candidates() { return candidates.copy(); }
+
+	/**
+	 * @return the stations MrX could be at, in ascending order
+	 */
+	@Nonnull public ImmutableSet<Integer> locations() {
+		var builder = ImmutableSet.<Integer>builderWithExpectedSize(candidates.size());
+		candidates.forEach(builder::add);
+		return builder.build();
+	}
+
+	@Override public String toString() {
+		return "MrXLocationTracker{entries=" + entries + ", candidates=" + candidates + '}';
+	}
+}
@@ -0,0 +1,518 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.MAX_TICKETS;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.adjust;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.canMove;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.count;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.generateDoubleMoves;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.generateSingleMoves;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.packLog;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.playerKey;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.toMoveKey;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.unpackLog;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.usable;
+
+/**
+ * A mutable game state for tree search: moves are applied in place with {@link #make(Move)} and
+ * reverted with {@link #unmake()}, so walking a search tree does not copy the state per node.
+ * <br>
+ * The rules are the same as {@link MyGameStateFactory}'s: tickets used by detectives are given to
+ * MrX, MrX's moves are logged and revealed according to {@link GameSetup#moves}, detectives that
+ * cannot move are skipped and the winner is decided with the same precedence. The state uses the
+ * packed layout of {@link PackedGameStateFactory}.
+ * <br>
+ * This class implements {@link Board} as a live view: every query reflects the current position
+ * and nothing is cached. It is not thread safe, use {@link #copy()} to hand a position to
+ * another thread.
+ */
+public final class MutableGameState implements Board {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int MRX = 0;
+	private static final int NO_WINNER = 0;
+	private static final int MRX_WINS = 1;
+	private static final int DETECTIVES_WIN = 2;
+	// undo frame: player, source, ticket1, ticket2 or -1, remaining before the move; the key
+	// before the move is kept in a parallel array
+	private static final int FRAME = 5;
+
+	private final GameSetup setup;
+	private final CompactGraph graph;
+	private final Piece[] pieces;
+	private final int[] locations;
+	private final long[] tickets;
+	private final int[] log;
+	private final StationSet occupied;
+	private final ImmutableSet<Piece> players;
+	private int remaining;
+	private int logSize;
+	private int[] history;
+	private long[] keys;
+	private int depth;
+	private long key;
+
+	private MutableGameState(GameSetup setup, CompactGraph graph, Piece[] pieces,
+	                         int[] locations, long[] tickets, int remaining,
+	                         int[] log, int logSize, StationSet occupied,
+	                         int[] history, long[] keys, int depth, long key) {
+		this.setup = setup;
+		this.graph = graph;
+		this.pieces = pieces;
+		this.locations = locations;
+		this.tickets = tickets;
+		this.remaining = remaining;
+		this.log = log;
+		this.logSize = logSize;
+		this.occupied = occupied;
+		this.history = history;
+		this.keys = keys;
+		this.depth = depth;
+		this.key = key;
+		this.players = ImmutableSet.copyOf(pieces);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return a mutable game state at the start of the game
+	 * @throws NullPointerException if MrX or any of the detectives are null
+	 * @throws IllegalArgumentException if passed arguments are not valid
+	 */
+	@Nonnull public static MutableGameState of(GameSetup setup,
+	                                           Player mrX,
+	                                           ImmutableList<Player> detectives) {
+		// the packed factory does the validation, the initial position is then copied over
+		Board board = new PackedGameStateFactory().build(setup, mrX, detectives);
+		MutableGameState state = copyOf(board, mrX.location(), 1 << MRX);
+		state.key = state.computeKey();
+		return state;
+	}
+
+	/**
+	 * Copies the position of a board into a new mutable game state. Boards do not reveal where
+	 * MrX is, so his location has to be given; detectives searching the game can pass any
+	 * location consistent with the travel log.
+	 *
+	 * @param board the board to copy
+	 * @param mrXLocation the location of MrX
+	 * @return a mutable game state with the position of the board and nothing to unmake
+	 * @throws IllegalArgumentException if the game is over, a location is not part of the graph or
+	 * MrX is to move but not from the given location
+	 */
+	@Nonnull public static MutableGameState of(@Nonnull Board board, int mrXLocation) {
+		Objects.requireNonNull(board);
+		if (!board.getWinner().isEmpty())
+			throw new IllegalArgumentException("Game is over: " + board.getWinner());
+		MutableGameState state = copyOf(board, mrXLocation, 0);
+		// whoever has a move is still to move this round
+		board.forEachAvailableMove(new MoveConsumer() {
+			@Override public void acceptSingle(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket, int destination) {
+				accept(piece, source);
+			}
+			@Override public void acceptDouble(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket1, int destination1,
+			                                   @Nonnull Ticket ticket2, int destination2) {
+				accept(piece, source);
+			}
+			private void accept(Piece piece, int source) {
+				int player = state.indexOf(piece);
+				if (player < 0 || state.locations[player] != source)
+					throw new IllegalArgumentException(piece + " moves from " + source
+							+ " but is at " + (player < 0 ? "none" : state.locations[player]));
+				state.remaining |= 1 << player;
+			}
+		});
+		state.key = state.computeKey();
+		return state;
+	}
+
+	private static MutableGameState copyOf(Board board, int mrXLocation, int remaining) {
+		GameSetup setup = board.getSetup();
+		CompactGraph graph = CompactGraph.of(setup.graph);
+		Piece[] pieces = new Piece[board.getPlayers().size()];
+		pieces[MRX] = Piece.MrX.MRX;
+		int n = 1;
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective()) pieces[n++] = piece;
+		if (n != pieces.length || !board.getPlayers().contains(Piece.MrX.MRX))
+			throw new IllegalArgumentException("Board must have MrX and detectives only");
+
+		int[] locations = new int[pieces.length];
+		long[] tickets = new long[pieces.length];
+		StationSet occupied = new StationSet(graph.nodeBound());
+		for (int i = 0; i < pieces.length; i++) {
+			int location = i == MRX ? mrXLocation :
+					board.getDetectiveLocation((Detective) pieces[i]).orElseThrow();
+			if (!graph.contains(location))
+				throw new IllegalArgumentException(pieces[i] + " is not on the map: " + location);
+			locations[i] = location;
+			if (i != MRX) occupied.add(location);
+			tickets[i] = pack(board.getPlayerTickets(pieces[i]).orElseThrow());
+		}
+
+		var travelLog = board.getMrXTravelLog();
+		if (travelLog.size() > setup.moves.size())
+			throw new IllegalArgumentException("Travel log is longer than the game");
+		int[] log = new int[setup.moves.size()];
+		for (int i = 0; i < travelLog.size(); i++)
+			log[i] = packLog(travelLog.get(i).ticket(), travelLog.get(i).location().orElse(-1));
+		return new MutableGameState(setup, graph, pieces, locations, tickets, remaining,
+				log, travelLog.size(), occupied, new int[FRAME * 16], new long[16], 0, 0);
+	}
+
+	private static long pack(TicketBoard board) {
+		long word = 0;
+		for (Ticket ticket : TICKETS) {
+			int n = board.getCount(ticket);
+			if (n < 0 || n > MAX_TICKETS)
+				throw new IllegalArgumentException("Bad " + ticket + " ticket count: " + n);
+			word = adjust(word, ticket, n);
+		}
+		return word;
+	}
+
+	/**
+	 * @return an independent copy of this state, including the moves that can be unmade
+	 */
+	@Nonnull public MutableGameState copy() {
+		return new MutableGameState(setup, graph, pieces, locations.clone(), tickets.clone(),
+				remaining, log.clone(), logSize, occupied.copy(), history.clone(), keys.clone(),
+				depth, key);
+	}
+
+	private long computeKey() {
+		long key = toMoveKey(pieces, remaining);
+		for (int i = 0; i < pieces.length; i++) key ^= playerKey(pieces[i], locations[i], tickets[i]);
+		for (int i = 0; i < logSize; i++) key ^= Zobrist.log(i, TICKETS[log[i] & 7], (log[i] >>> 3) - 1);
+		return key;
+	}
+
+	/**
+	 * @return the {@link Zobrist} key of the current position, equal to
+	 * {@link GameState#zobristKey()} of the same position
+	 */
+	public long zobristKey() { return key; }
+
+	/**
+	 * @return the location of MrX
+	 */
+	public int mrXLocation() { return locations[MRX]; }
+
+	/**
+	 * @return the number of players, MrX and the detectives
+	 */
+	public int playerCount() { return pieces.length; }
+
+	/**
+	 * @param player the index of a player in {@link #getPlayers()}, 0 for MrX
+	 * @return the location of the player
+	 */
+	public int location(int player) { return locations[player]; }
+
+	/**
+	 * @return whether it is MrX's turn
+	 */
+	public boolean isMrXTurn() { return (remaining & 1 << MRX) != 0; }
+
+	/**
+	 * @return the number of moves that can be unmade
+	 */
+	public int depth() { return depth; }
+
+	private int indexOf(Piece piece) {
+		for (int i = 0; i < pieces.length; i++)
+			if (pieces[i] == piece) return i;
+		return -1;
+	}
+
+	@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+	@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return players; }
+
+	@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+		int index = indexOf(detective);
+		return index <= MRX ? Optional.empty() : Optional.of(locations[index]);
+	}
+
+	@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+		int index = indexOf(piece);
+		if (index < 0) return Optional.empty();
+		long word = tickets[index];
+		return Optional.of(ticket -> count(word, ticket));
+	}
+
+	@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+		var builder = ImmutableList.<LogEntry>builderWithExpectedSize(logSize);
+		for (int i = 0; i < logSize; i++) builder.add(unpackLog(log[i]));
+		return builder.build();
+	}
+
+	/**
+	 * Same rules and precedence as {@code MyGameState#checkWinner()}
+	 */
+	private int winner() {
+		if (isMrXTurn()) {
+			// MrX is cornered by detectives
+			if (!canMove(graph, occupied, locations[MRX], tickets[MRX])) return DETECTIVES_WIN;
+			// MrX filled the log and subsequently all detectives failed to catch him
+			if (logSize == setup.moves.size()) return MRX_WINS;
+		}
+		boolean stuck = true;
+		for (int i = 1; i < pieces.length; i++) {
+			// detective catches MrX
+			if (locations[i] == locations[MRX]) return DETECTIVES_WIN;
+			// detectives can only hold taxi, bus and underground tickets
+			if (tickets[i] != 0) stuck = false;
+		}
+		// all detectives are out of tickets, or none of them has a legal move after MrX moved;
+		// a round nobody can play would otherwise never end
+		return stuck || remaining == 0 ? MRX_WINS : NO_WINNER;
+	}
+
+	@Override public boolean isGameOver() { return winner() != NO_WINNER; }
+
+	@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+		switch (winner()) {
+			case MRX_WINS: return ImmutableSet.of(pieces[MRX]);
+			case DETECTIVES_WIN:
+				return ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+			default: return ImmutableSet.of();
+		}
+	}
+
+	@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+		var builder = ImmutableSet.<Move>builder();
+		forEachAvailableMove(MoveTable.of(graph).materialising(builder::add));
+		return builder.build();
+	}
+
+	@Override public void forEachAvailableMove(@Nonnull MoveConsumer consumer) {
+		Objects.requireNonNull(consumer);
+		if (isGameOver()) return;
+		if (isMrXTurn()) {
+			generateSingleMoves(graph, occupied, pieces[MRX], locations[MRX], tickets[MRX],
+					consumer);
+			if (setup.moves.size() - logSize > 1)
+				generateDoubleMoves(graph, occupied, locations[MRX], tickets[MRX], consumer);
+		} else {
+			for (int i = 1; i < pieces.length; i++)
+				if ((remaining & 1 << i) != 0)
+					generateSingleMoves(graph, occupied, pieces[i], locations[i], tickets[i],
+							consumer);
+		}
+	}
+
+	/**
+	 * @return whether a player holding the tickets can travel from source to destination
+	 */
+	private boolean canTravel(int source, Ticket ticket, int destination, long word) {
+		if (occupied.contains(destination)) return false;
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (graph.target(e) == destination && (usable(graph, word, e) & 1 << ticket.ordinal()) != 0)
+				return true;
+		return false;
+	}
+
+	private int checkTurn(Piece piece, int source) {
+		int player = indexOf(piece);
+		if (player < 0 || (remaining & 1 << player) == 0)
+			throw new IllegalArgumentException("Not " + piece + "'s turn");
+		if (locations[player] != source)
+			throw new IllegalArgumentException(piece + " is not at " + source);
+		return player;
+	}
+
+	private void push(int player, int source, Ticket ticket1, Ticket ticket2) {
+		if (depth == keys.length) {
+			history = Arrays.copyOf(history, history.length * 2);
+			keys = Arrays.copyOf(keys, keys.length * 2);
+		}
+		keys[depth] = key;
+		int i = depth++ * FRAME;
+		history[i] = player;
+		history[i + 1] = source;
+		history[i + 2] = ticket1.ordinal();
+		history[i + 3] = ticket2 == null ? -1 : ticket2.ordinal();
+		history[i + 4] = remaining;
+	}
+
+	/**
+	 * Adjusts a ticket count of the player and its feature in the key
+	 */
+	private void spend(int player, Ticket ticket, int delta) {
+		int n = count(tickets[player], ticket);
+		key ^= Zobrist.tickets(pieces[player], ticket, n)
+				^ Zobrist.tickets(pieces[player], ticket, n + delta);
+		tickets[player] = adjust(tickets[player], ticket, delta);
+	}
+
+	private void moveTo(int player, int destination) {
+		key ^= Zobrist.location(pieces[player], locations[player])
+				^ Zobrist.location(pieces[player], destination);
+		locations[player] = destination;
+	}
+
+	private void logMove(Ticket ticket, int destination) {
+		int location = setup.moves.get(logSize) ? destination : -1;
+		log[logSize] = packLog(ticket, location);
+		key ^= Zobrist.log(logSize, ticket, location);
+		logSize++;
+	}
+
+	/**
+	 * Makes a single move. Only the move itself is checked: the caller is expected to check
+	 * {@link #isGameOver()} before making moves, as search code does anyway.
+	 *
+	 * @param piece the player making the move
+	 * @param source the source
+	 * @param ticket the ticket
+	 * @param destination the destination
+	 * @throws IllegalArgumentException if the move is not legal in this position
+	 */
+	public void makeSingle(@Nonnull Piece piece, int source,
+	                       @Nonnull Ticket ticket, int destination) {
+		int player = checkTurn(piece, source);
+		if (!canTravel(source, ticket, destination, tickets[player]))
+			throw new IllegalArgumentException("Illegal move: " + piece + " " + source
+					+ " " + ticket + " " + destination);
+		push(player, source, ticket, null);
+		int before = remaining;
+		spend(player, ticket, -1);
+		moveTo(player, destination);
+		if (player == MRX) {
+			logMove(ticket, destination);
+			remaining = detectivesToMove();
+			key ^= toMoveKey(pieces, before ^ remaining);
+			return;
+		}
+		// detectives only ever make single moves, the used ticket is given to MrX
+		spend(MRX, ticket, 1);
+		occupied.remove(source);
+		occupied.add(destination);
+		// detectives that have not moved yet this round but can no longer move are skipped
+		remaining &= ~(1 << player);
+		for (int i = 1; i < pieces.length; i++)
+			if ((remaining & 1 << i) != 0 && !canMove(graph, occupied, locations[i], tickets[i]))
+				remaining &= ~(1 << i);
+		if (remaining == 0) remaining = 1 << MRX;
+		key ^= toMoveKey(pieces, before ^ remaining);
+	}
+
+	/**
+	 * Makes a double move for MrX, see {@link #makeSingle(Piece, int, Ticket, int)}
+	 *
+	 * @param source the source
+	 * @param ticket1 the first ticket
+	 * @param destination1 the first destination
+	 * @param ticket2 the second ticket
+	 * @param destination2 the second destination
+	 * @throws IllegalArgumentException if the move is not legal in this position
+	 */
+	public void makeDouble(int source, @Nonnull Ticket ticket1, int destination1,
+	                       @Nonnull Ticket ticket2, int destination2) {
+		checkTurn(Piece.MrX.MRX, source);
+		long word = tickets[MRX];
+		if (count(word, Ticket.DOUBLE) == 0 || setup.moves.size() - logSize <= 1
+				|| !canTravel(source, ticket1, destination1, word)
+				|| !canTravel(destination1, ticket2, destination2, adjust(word, ticket1, -1)))
+			throw new IllegalArgumentException("Illegal double move: " + source + " " + ticket1
+					+ " " + destination1 + " " + ticket2 + " " + destination2);
+		push(MRX, source, ticket1, ticket2);
+		int before = remaining;
+		spend(MRX, ticket1, -1);
+		spend(MRX, ticket2, -1);
+		spend(MRX, Ticket.DOUBLE, -1);
+		moveTo(MRX, destination2);
+		logMove(ticket1, destination1);
+		logMove(ticket2, destination2);
+		remaining = detectivesToMove();
+		key ^= toMoveKey(pieces, before ^ remaining);
+	}
+
+	/**
+	 * @return the detectives that can move in the round following MrX's move
+	 */
+	private int detectivesToMove() {
+		int mask = 0;
+		for (int i = 1; i < pieces.length; i++)
+			if (canMove(graph, occupied, locations[i], tickets[i])) mask |= 1 << i;
+		return mask;
+	}
+
+	/**
+	 * @param move the move to make, see {@link #makeSingle(Piece, int, Ticket, int)}
+	 * @throws IllegalArgumentException if the move is not legal in this position
+	 */
+	public void make(@Nonnull Move move) {
+		if (move instanceof SingleMove) {
+			SingleMove m = (SingleMove) move;
+			makeSingle(m.commencedBy(), m.source(), m.ticket, m.destination);
+		} else {
+			DoubleMove m = (DoubleMove) move;
+			if (m.commencedBy() != Piece.MrX.MRX)
+				throw new IllegalArgumentException("Only MrX makes double moves: " + m);
+			makeDouble(m.source(), m.ticket1, m.destination1, m.ticket2, m.destination2);
+		}
+	}
+
+	/**
+	 * @param code the move to make, see {@link MoveEncoding} and
+	 * {@link #makeSingle(Piece, int, Ticket, int)}
+	 * @throws IllegalArgumentException if the move is not legal in this position
+	 */
+	public void make(int code) {
+		if (MoveEncoding.isDouble(code))
+			makeDouble(MoveEncoding.source(code),
+					MoveEncoding.ticket1(code), MoveEncoding.destination1(code),
+					MoveEncoding.ticket2(code), MoveEncoding.destination2(code));
+		else makeSingle(MoveEncoding.piece(code), MoveEncoding.source(code),
+				MoveEncoding.ticket1(code), MoveEncoding.destination1(code));
+	}
+
+	/**
+	 * Reverts the last move made
+	 *
+	 * @throws IllegalStateException if there is no move to unmake
+	 */
+	public void unmake() {
+		if (depth == 0) throw new IllegalStateException("No move to unmake");
+		int i = --depth * FRAME;
+		int player = history[i];
+		int source = history[i + 1];
+		Ticket ticket1 = TICKETS[history[i + 2]];
+		remaining = history[i + 4];
+		key = keys[depth];
+		if (player == MRX) {
+			long word = adjust(tickets[MRX], ticket1, 1);
+			logSize--;
+			if (history[i + 3] >= 0) {
+				word = adjust(adjust(word, TICKETS[history[i + 3]], 1), Ticket.DOUBLE, 1);
+				logSize--;
+			}
+			tickets[MRX] = word;
+		} else {
+			tickets[MRX] = adjust(tickets[MRX], ticket1, -1);
+			tickets[player] = adjust(tickets[player], ticket1, 1);
+			occupied.remove(locations[player]);
+			occupied.add(source);
+		}
+		locations[player] = source;
+	}
+
+}
@@ -1,10 +1,13 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
 import uk.ac.bris.cs.scotlandyard.model.Move.*;
 import uk.ac.bris.cs.scotlandyard.model.Piece.*;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
@@ -19,32 +22,41 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.*;
 public final class MyGameStateFactory implements Factory<GameState> {
 	private final class MyGameState implements GameState {
 		private final GameSetup setup;
-		private ImmutableSet<Piece> remaining;
+		private final CompactGraph graph;
+		private final ImmutableSet<Piece> remaining;
 		private final ImmutableList<LogEntry> log;
 		private final Player mrX;
 		private final List<Player> detectives;
-		private ImmutableSet<Move> moves;
-		private final ImmutableSet<Piece> winner;
+		private final StationSet occupied;
+		private final long key;
+		// the state is immutable, so both are computed at most once and shared between threads
+		private final Supplier<ImmutableSet<Piece>> winner = Suppliers.memoize(this::checkWinner);
+		private final Supplier<ImmutableSet<Move>> moves = Suppliers.memoize(this::computeAvailableMoves);
 
 		private MyGameState(
 				final GameSetup setup,
+				final CompactGraph graph,
 				final ImmutableSet<Piece> remaining,
 				final ImmutableList<LogEntry> log,
 				final Player mrX,
-				final List<Player> detectives){
+				final List<Player> detectives,
+				final long key){
 
 			this.setup = setup;
+			this.graph = graph;
 			this.remaining = remaining;
 			this.log = log;
 			this.mrX = mrX;
 			this.detectives = detectives;
-			this.winner = checkWinner();
+			this.occupied = occupancy(graph, detectives);
+			this.key = key;
 			if(setup.moves.isEmpty()) throw new IllegalArgumentException("Moves is empty!");
 		}
 
 
 		/**
-		 * Computes whether game is over or not; If game is over, set remaining to null
+		 * Computes whether game is over or not; whether MrX is cornered is found by scanning for a
+		 * single move rather than generating all of his moves
 		 *
 		 * @return the winner of this game; empty if the game is not over
 		 */
@@ -52,13 +64,11 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 			if (remaining.contains(mrX.piece())) {
 				// MrX is cornered by detectives
-				if (getAvailableMoves().isEmpty()) {
-					remaining = null;
+				if (!hasSingleMove(graph, occupied, mrX, mrX.location())) {
 					return ImmutableSet.copyOf(getDetectivePieceArrayList());
 				}
 				// MrX filled the log and subsequently all detectives failed to catch him
 				if (log.size() == setup.moves.size()){
-					remaining = null;
 					return ImmutableSet.of(mrX.piece());
 				}
 			}
@@ -67,7 +77,6 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			for (Player p : detectives) {
 				// detective catches mrx
 				if (p.location() == mrX.location()){
-					remaining = null;
 					return ImmutableSet.copyOf(getDetectivePieceArrayList());
 				}
 				// all detectives used given ticket, so they cannot move anymore
@@ -80,8 +89,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					state = false;
 				}
 			}
-			if(state) {
-				remaining = null;
+			// all detectives are out of tickets, or none of them has a legal move after MrX moved;
+			// a round nobody can play would otherwise never end
+			if(state || remaining.isEmpty()) {
 				return ImmutableSet.of(mrX.piece());
 			}
 
@@ -138,9 +148,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		 */
 		@Nonnull @Override
 		public GameState advance(Move move) throws IllegalArgumentException{
-			this.moves = getAvailableMoves();
-			if(!moves.contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
+			if(!getAvailableMoves().contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
 
+			ImmutableSet<Piece> newRemaining = remaining;
 			Player newMrx = this.mrX;
 			List<Player> newDetectives = new LinkedList<>(detectives);
 			List<LogEntry> advanceLog = new ArrayList<>(log);
@@ -148,14 +158,14 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			// when mrx moves
 			if(move.commencedBy() == mrX.piece()){
 
-				// set remaining with detectives who have tickets
+				// set remaining with detectives who can move, i.e have tickets for a free route
 				List<Piece> r = getDetectivePieceArrayList();
 				for (Player p : detectives) {
-					if (p.tickets().equals(ImmutableMap.of( TAXI, 0, BUS, 0, UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0))){
+					if (!hasSingleMove(graph, occupied, p, p.location())){
 						r.remove(p.piece());
 					}
 				}
-				remaining = ImmutableSet.copyOf(r);
+				newRemaining = ImmutableSet.copyOf(r);
 
 				// add log according to given move
 				// use tickets and decrement used ticket count
@@ -193,18 +203,16 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			}
 
 
+			// only the features changed by the move are updated
+			long newKey = key;
+			for (int i = log.size(); i < advanceLog.size(); i++) {
+				LogEntry entry = advanceLog.get(i);
+				newKey ^= Zobrist.log(i, entry.ticket(), entry.location().orElse(-1));
+			}
+
 			// when detective moves
 			if(move.commencedBy() != mrX.piece()) {
 
-				// set remaining with detectives who haven't moved current round
-				// if there is no remaining detectives for current round, set remaining with MrX
-				List<Piece> remainingL = new ArrayList<>(remaining);
-				remainingL.remove(move.commencedBy());
-				if (remainingL.isEmpty()) {
-					remaining = ImmutableSet.of(MrX.MRX);
-				} else remaining = ImmutableSet.copyOf(remainingL);
-
-
 				// use ticket
 				// give used ticket to MrX
 				Map<Ticket, Integer> addMrxTickets = new HashMap<>(mrX.tickets());
@@ -215,6 +223,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				Map<Ticket, Integer> detTickets = new HashMap<>();
 				for (Player p : detectives) {
 					if (p.piece() == move.commencedBy()) {
+						newKey ^= playerKey(p);
 						detTickets.putAll(p.tickets());
 						newDetectives.remove(p);
 						detTickets.put(((SingleMove) move).ticket, detTickets.get(((SingleMove) move).ticket) - 1);
@@ -223,10 +232,34 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 				Player newDet = new Player(move.commencedBy(), ImmutableMap.copyOf(detTickets), ((SingleMove) move).destination);
 				newDetectives.add(newDet);
+				newKey ^= playerKey(newDet);
+
+				// set remaining with detectives who haven't moved current round and can still move
+				// if there is no remaining detectives for current round, set remaining with MrX
+				StationSet newOccupied = occupancy(graph, newDetectives);
+				List<Piece> remainingL = new ArrayList<>(remaining);
+				remainingL.remove(move.commencedBy());
+				for (Player p : newDetectives) {
+					if (!hasSingleMove(graph, newOccupied, p, p.location())) remainingL.remove(p.piece());
+				}
+				if (remainingL.isEmpty()) {
+					newRemaining = ImmutableSet.of(MrX.MRX);
+				} else newRemaining = ImmutableSet.copyOf(remainingL);
 			}
-				return new MyGameState(setup, remaining, ImmutableList.copyOf(advanceLog), newMrx, newDetectives);
+			newKey ^= playerKey(mrX) ^ playerKey(newMrx) ^ toMoveKey(remaining) ^ toMoveKey(newRemaining);
+				return new MyGameState(setup, graph, newRemaining, ImmutableList.copyOf(advanceLog), newMrx, newDetectives, newKey);
 		}
 
+		@Override
+		public boolean hasZobristKey() {return true;}
+
+		/**
+		 * @return the Zobrist key of this state, updated by {@link #advance(Move)} rather than
+		 * recomputed
+		 */
+		@Override
+		public long zobristKey() {return key;}
+
 		/**
 		 * @param piece the piece of detective
 		 * @return the specific detective in detectives list
@@ -286,97 +319,177 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		 * This is mutually exclusive with {@link #getAvailableMoves()}
 		 */
 		@Nonnull @Override
-		public ImmutableSet<Piece> getWinner() {return winner;}
+		public ImmutableSet<Piece> getWinner() {return winner.get();}
 
 
 
 		/**
-		 * Computes the available single move for player(MrX or detectives)
-		 *
-		 * @param setup the game setup
+		 * @return whether the game is over; never generates MrX's double moves
+		 */
+		@Override
+		public boolean isGameOver() {return !winner.get().isEmpty();}
+
+
+
+		/**
+		 * @param player a game player
+		 * @return the Zobrist key of the player's location and tickets
+		 */
+		private static long playerKey(Player player){
+			long key = Zobrist.location(player.piece(), player.location());
+			for (Ticket t : Ticket.values()) {
+				key ^= Zobrist.tickets(player.piece(), t, player.tickets().getOrDefault(t, 0));
+			}
+			return key;
+		}
+
+
+
+		/**
+		 * @param pieces the players to move
+		 * @return the Zobrist key of the players to move
+		 */
+		private static long toMoveKey(ImmutableSet<Piece> pieces){
+			long key = 0;
+			for (Piece piece : pieces) key ^= Zobrist.toMove(piece);
+			return key;
+		}
+
+
+
+		/**
+		 * @param player a game player
+		 * @param count the required count
+		 * @return a bit mask (bit {@link Ticket#ordinal()}) of tickets the player has at least
+		 * count of
+		 */
+		private static int heldTickets(Player player, int count){
+			int held = 0;
+			for (Ticket t : Ticket.values()) {
+				if (player.hasAtLeast(t, count)) held |= 1 << t.ordinal();
+			}
+			return held;
+		}
+
+
+
+		/**
+		 * @param graph the compiled game graph
+		 * @param edge the edge to travel along
+		 * @param held tickets held, see {@link #heldTickets(Player, int)}
+		 * @return a bit mask of tickets that can be used to travel along the edge; a secret ticket
+		 * can be used on any edge
+		 */
+		private static int usableTickets(CompactGraph graph, int edge, int held){
+			return (CompactGraph.requiredTickets(graph.transports(edge)) | 1 << SECRET.ordinal()) & held;
+		}
+
+
+
+		/**
+		 * @param graph the compiled game graph
 		 * @param detectives detective players
+		 * @return the stations occupied by detectives
+		 */
+		private static StationSet occupancy(CompactGraph graph, List<Player> detectives){
+			StationSet occupied = new StationSet(graph.nodeBound());
+			for (Player detective : detectives) {
+				// a detective off the graph can never block a destination
+				if (graph.contains(detective.location())) occupied.add(detective.location());
+			}
+			return occupied;
+		}
+
+
+
+		/**
+		 * Checks whether the player has at least one single move without generating all of them
+		 *
+		 * @param graph the compiled game graph
+		 * @param occupied stations occupied by detectives
 		 * @param player a game player
 		 * @param source player's current location
-		 * @return all available single moves of player as a set of {@link SingleMove}s
+		 * @return whether the player has any available single move
 		 */
-		private static Set<SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source){
-            HashSet<SingleMove> singleMoveS = new HashSet<>();
-            for(int destination : setup.graph.adjacentNodes(source)) {
-                // if destination is occupied by a detective, don't add to the collection of moves to return
-				boolean state = true;
-				for (Player detective : detectives) {
-					if (destination == detective.location()) { state = false; break; }
-				}
+		private static boolean hasSingleMove(CompactGraph graph, StationSet occupied, Player player, int source){
+			int held = heldTickets(player, 1);
+			for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+				if (!occupied.contains(graph.target(e)) && usableTickets(graph, e, held) != 0)
+					return true;
+			}
+			return false;
+		}
 
-				if (state) {
-						for (Transport t : setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of())) {
-							// if the player has the required tickets, construct a SingleMove and add it the collection of moves to return
-							if (player.has(t.requiredTicket()))
-								singleMoveS.add(new SingleMove(player.piece(), source, t.requiredTicket(), destination));}
 
-						if (player.has(Ticket.SECRET)) {
-							// add moves to the destination via a secret ticket if there are any left with the player
-							singleMoveS.add(new SingleMove(player.piece(), source, Ticket.SECRET, destination));
-						}
+
+		/**
+		 * Computes the available single move for player(MrX or detectives)
+		 *
+		 * @param graph the compiled game graph
+		 * @param occupied stations occupied by detectives
+		 * @param player a game player
+		 * @param source player's current location
+		 * @param moves receives the single moves
+		 */
+		private static void makeSingleMoves(CompactGraph graph, StationSet occupied, Player player, int source,
+				MoveConsumer moves){
+			int held = heldTickets(player, 1);
+			for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+				int destination = graph.target(e);
+				// if destination is occupied by a detective, don't add to the collection of moves to return
+				if (occupied.contains(destination)) continue;
+
+				// one move per ticket the player has and the route accepts, secret tickets included
+				int usable = usableTickets(graph, e, held);
+				for (Ticket t : Ticket.values()) {
+					if ((usable & 1 << t.ordinal()) != 0)
+						moves.acceptSingle(player.piece(), source, t, destination);
 				}
 			}
-			return singleMoveS;
 		}
 
 
 
 		/**
-		 * Computes the available single move for MrX player
+		 * Computes the available double move for MrX player
 		 *
+		 * @param graph the compiled game graph
 		 * @param setup the game setup
-		 * @param detectives detective players
+		 * @param occupied stations occupied by detectives
 		 * @param mrX MrX player
 		 * @param source player's current location
 		 * @param log  MrX's travel log
-		 * @return all available double moves of MrX as a set of {@link DoubleMove}s
+		 * @param moves receives the double moves
 		 */
-        private static Set<DoubleMove> makeDoubleMoves(
-				GameSetup setup, List<Player> detectives, Player mrX, int source, ImmutableList<LogEntry> log){
-			HashSet<DoubleMove> doubleMoveS = new HashSet<>();
-			// check whether mrx has double ticket
-			if (mrX.has(Ticket.DOUBLE) && setup.moves.size() - log.size() > 1){
-
-				// get information of first move from makeSingleMove
-			Set<SingleMove> firstMoves = makeSingleMoves(setup, detectives, mrX, source);
-			Iterator<SingleMove> firstMoveE = firstMoves.iterator();
-			for (int i = 0; i<firstMoves.size(); i++) {
-				SingleMove firstMove = firstMoveE.next();
-				Ticket ticket1 = firstMove.ticket;
-				Ticket ticket2;
-				int destination1 = firstMove.destination;
-
-				for (int destination2 : setup.graph.adjacentNodes(destination1)) {
-					boolean state = true;
-					for (Player detective : detectives) {
-						if (destination2 == detective.location()) { state = false; break; }
+		private static void makeDoubleMoves(CompactGraph graph, GameSetup setup, StationSet occupied, Player mrX,
+				int source, ImmutableList<LogEntry> log, MoveConsumer moves){
+			// check whether mrx has double ticket and there are enough rounds left for both moves
+			if (!mrX.has(Ticket.DOUBLE) || setup.moves.size() - log.size() <= 1) return;
+
+			int held = heldTickets(mrX, 1);
+			int heldTwice = heldTickets(mrX, 2);
+			for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+				int destination1 = graph.target(e1);
+				if (occupied.contains(destination1)) continue;
+				int usable1 = usableTickets(graph, e1, held);
+				for (Ticket ticket1 : Ticket.values()) {
+					if ((usable1 & 1 << ticket1.ordinal()) == 0) continue;
+					// the first ticket can only be used again if MrX has at least two of it
+					int bit1 = 1 << ticket1.ordinal();
+					int remaining = (held & ~bit1) | (heldTwice & bit1);
+					for (int e2 = graph.edgeStart(destination1); e2 < graph.edgeEnd(destination1); e2++) {
+						int destination2 = graph.target(e2);
 						// if second destination is occupied by a detective, don't add to the collection of moves to return
+						if (occupied.contains(destination2)) continue;
+						int usable2 = usableTickets(graph, e2, remaining);
+						for (Ticket ticket2 : Ticket.values()) {
+							if ((usable2 & 1 << ticket2.ordinal()) != 0)
+								moves.acceptDouble(mrX.piece(), source, ticket1, destination1, ticket2, destination2);
+						}
 					}
-
-					if (state) {
-						for (Transport t : setup.graph.edgeValueOrDefault(destination1, destination2, ImmutableSet.of())) {
-							// if the player has the required tickets, construct a DoubleMove and add it the collection of moves to return
-							ticket2 = t.requiredTicket();
-							if (mrX.has(ticket2)) {
-								if (ticket1 != ticket2)
-									doubleMoveS.add(new DoubleMove(mrX.piece(), source, ticket1, destination1, ticket2, destination2));
-								else if ( mrX.hasAtLeast(ticket1, 2))
-									doubleMoveS.add(new DoubleMove(mrX.piece(), source, ticket1, destination1, ticket1, destination2));
-
-								if (mrX.has(Ticket.SECRET)) {
-									// add moves to the destination via a secret ticket if there are any left with the player
-									doubleMoveS.add(new DoubleMove(mrX.piece(), source, Ticket.SECRET, destination1, ticket2, destination2));
-									doubleMoveS.add(new DoubleMove(mrX.piece(), source, ticket1, destination1, Ticket.SECRET, destination2));
-
-									if (mrX.hasAtLeast(Ticket.SECRET, 2))
-										doubleMoveS.add(new DoubleMove(mrX.piece(), source, Ticket.SECRET, destination1, Ticket.SECRET, destination2));}}}}}}}
-
-            return doubleMoveS;
-        }
+				}
+			}
+		}
 
 		/**
 		 * @return the current available moves of the game; empty if the game is over
@@ -384,28 +497,49 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		 */
 		@Nonnull @Override
 		public ImmutableSet<Move> getAvailableMoves() {
-			// when game is over, the remaining is set to null and return empty set
-			if (remaining == null) { return ImmutableSet.of(); }
+			// when game is over, return empty set
+			if (isGameOver()) { return ImmutableSet.of(); }
+			return moves.get();
+		}
+
+		/**
+		 * Enumerates the current available moves without constructing any {@link Move}s;
+		 * nothing if the game is over
+		 *
+		 * @param consumer receives every available move
+		 */
+		@Override
+		public void forEachAvailableMove(@Nonnull MoveConsumer consumer) {
+			if (!isGameOver()) generateMoves(Objects.requireNonNull(consumer));
+		}
+
+		/**
+		 * @return the available moves of the game ignoring whether the game is over
+		 */
+		private ImmutableSet<Move> computeAvailableMoves() {
+			ImmutableSet.Builder<Move> moves = ImmutableSet.builder();
+			generateMoves(MoveTable.of(graph).materialising(moves::add));
+			return moves.build();
+		}
+
+		/**
+		 * @param moves receives the available moves of the game ignoring whether the game is over
+		 */
+		private void generateMoves(MoveConsumer moves) {
 
 			// get available move for MrX
 			if (remaining.contains(mrX.piece())) {
-				Set<Move> mrxMove = new HashSet<>();
-				mrxMove.addAll(makeSingleMoves(setup, detectives, mrX, mrX.location()));
-				mrxMove.addAll(makeDoubleMoves(setup, detectives, mrX, mrX.location(), this.log));
-				return ImmutableSet.copyOf(mrxMove);
+				makeSingleMoves(graph, occupied, mrX, mrX.location(), moves);
+				makeDoubleMoves(graph, setup, occupied, mrX, mrX.location(), this.log, moves);
 			}
 
 			// get available move for detective
 			else {
-				List<SingleMove> detMove = new ArrayList<>();
-
 				// get moves only from remaining detective players
 				for (Player d : detectives) {
 					if (remaining.contains(d.piece()))
-						detMove.addAll(makeSingleMoves(setup, detectives, d, d.location()));
+						makeSingleMoves(graph, occupied, d, d.location(), moves);
 				}
-
-				return ImmutableSet.copyOf(detMove);
 			}
 		}
 	}
@@ -454,7 +588,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		}
 
-		return new MyGameState(setup, ImmutableSet.of(MrX.MRX), ImmutableList.of(), mrX, detectives);
+		long key = MyGameState.playerKey(mrX) ^ MyGameState.toMoveKey(ImmutableSet.of(MrX.MRX));
+		for (Player d : detectives) key ^= MyGameState.playerKey(d);
+		return new MyGameState(setup, CompactGraph.of(setup.graph), ImmutableSet.of(MrX.MRX), ImmutableList.of(), mrX, detectives, key);
 	}
 
 }
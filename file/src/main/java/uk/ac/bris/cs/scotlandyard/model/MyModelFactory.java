@@ -11,6 +11,21 @@ import javax.annotation.Nonnull;
 
 
 public final class MyModelFactory implements Factory<Model> {
+	private final Factory<GameState> gameStateFactory;
+
+	/**
+	 * Creates a model factory backed by {@link MyGameStateFactory}
+	 */
+	public MyModelFactory() { this(new MyGameStateFactory()); }
+
+	/**
+	 * @param gameStateFactory the factory used to create the underlying
+	 * {@link uk.ac.bris.cs.scotlandyard.model.Board.GameState}
+	 */
+	public MyModelFactory(Factory<GameState> gameStateFactory) {
+		this.gameStateFactory = Objects.requireNonNull(gameStateFactory);
+	}
+
 	private final class MyModel implements Model{
 		private GameState game;
 		private List<Observer> observers;
@@ -21,7 +36,7 @@ public final class MyModelFactory implements Factory<Model> {
 				final List<Player> detectives){
 
 			this.observers = new ArrayList<>();
-			this.game = new MyGameStateFactory().build(setup, mrX, ImmutableList.copyOf(detectives));
+			this.game = gameStateFactory.build(setup, mrX, ImmutableList.copyOf(detectives));
 
 		}
 
@@ -79,7 +94,7 @@ public final class MyModelFactory implements Factory<Model> {
 		@Override public void chooseMove(@Nonnull Move move){
 			game = game.advance(move);
 			Observer.Event e = Observer.Event.GAME_OVER;
-			if (game.getWinner().isEmpty()) { e = Observer.Event.MOVE_MADE;}
+			if (!game.isGameOver()) { e = Observer.Event.MOVE_MADE;}
 
 			for (Observer o : observers){
 				o.onModelChanged(getCurrentBoard(), e);
@@ -0,0 +1,477 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A {@link GameState} factory with the same rules as {@link MyGameStateFactory} but backed by a
+ * packed primitive representation, intended for AIs that call
+ * {@link GameState#advance(Move)} in a tight loop.
+ * <br>
+ * Each leg of a double move needs a ticket of its own: a secret leg needs only a secret ticket,
+ * whatever the transport of the route, and two legs with the same ticket need two of it. Every
+ * model test runs against both factories, and {@code GameStateReferenceMovesTest} checks that
+ * they generate exactly the same moves.
+ * <br>
+ * Players are addressed by index, MrX is always index 0 followed by the detectives in the order
+ * they were supplied. Per state, locations are stored as a {@code short[]}, the ticket board of
+ * each player as a single {@code long} word of {@link #TICKET_BITS}-bit counters, the
+ * players that still have to move in the current round as an {@code int} bit mask, and MrX's
+ * travel log as an {@code int[]} that is shared between states until MrX moves again.
+ * The boxed views required by {@link Board} are only materialised on request.
+ */
+public final class PackedGameStateFactory implements Factory<GameState> {
+
+	/**
+	 * Bits used by each ticket counter in a packed ticket word
+	 */
+	static final int TICKET_BITS = 12;
+	/**
+	 * Largest ticket count, per ticket type, that fits in a packed ticket word
+	 */
+	static final int MAX_TICKETS = (1 << TICKET_BITS) - 1;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int MRX = 0;
+	private static final int HIDDEN = 0;
+	private static final int SECRET_BIT = 1 << Ticket.SECRET.ordinal();
+
+	/**
+	 * @param word the packed ticket word
+	 * @param ticket the ticket
+	 * @return the amount of the given ticket in the word
+	 */
+	static int count(long word, Ticket ticket) {
+		return (int) (word >>> (ticket.ordinal() * TICKET_BITS)) & MAX_TICKETS;
+	}
+
+	/**
+	 * @param word the packed ticket word
+	 * @param ticket the ticket
+	 * @param delta the amount to add, may be negative
+	 * @return a new packed ticket word with the given ticket adjusted
+	 */
+	static long adjust(long word, Ticket ticket, int delta) {
+		return word + ((long) delta << (ticket.ordinal() * TICKET_BITS));
+	}
+
+	/**
+	 * @param tickets the ticket map, as given by {@link Player#tickets()}
+	 * @return the packed ticket word
+	 * @throws IllegalArgumentException if any count is negative or exceeds {@link #MAX_TICKETS}
+	 */
+	static long pack(ImmutableMap<Ticket, Integer> tickets) {
+		long word = 0;
+		for (Ticket ticket : TICKETS) {
+			int n = tickets.getOrDefault(ticket, 0);
+			if (n < 0 || n > MAX_TICKETS)
+				throw new IllegalArgumentException("Bad " + ticket + " ticket count: " + n);
+			word = adjust(word, ticket, n);
+		}
+		return word;
+	}
+
+	/**
+	 * A log entry packed as {@code (location + 1) << 3 | ticket}; a location of
+	 * {@link #HIDDEN} means the round was hidden
+	 */
+	static int packLog(Ticket ticket, int location) {
+		return (location + 1) << 3 | ticket.ordinal();
+	}
+
+	static LogEntry unpackLog(int entry) {
+		Ticket ticket = TICKETS[entry & 7];
+		int location = entry >>> 3;
+		return location == HIDDEN ? LogEntry.hidden(ticket) : LogEntry.reveal(ticket, location - 1);
+	}
+
+	/**
+	 * @return a bit mask over {@link Ticket#ordinal()} of the tickets that can be used to travel
+	 * along the edge given the ticket word
+	 */
+	static int usable(CompactGraph graph, long word, int edge) {
+		int mask = CompactGraph.requiredTickets(graph.transports(edge)) | SECRET_BIT;
+		for (Ticket ticket : TICKETS)
+			if ((mask & 1 << ticket.ordinal()) != 0 && count(word, ticket) == 0)
+				mask &= ~(1 << ticket.ordinal());
+		return mask;
+	}
+
+	/**
+	 * @return whether a player at source holding the given tickets has any single move
+	 */
+	static boolean canMove(CompactGraph graph, StationSet occupied, int source, long word) {
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (!occupied.contains(graph.target(e)) && usable(graph, word, e) != 0) return true;
+		return false;
+	}
+
+	/**
+	 * @return the {@link Zobrist} key of a player's location and tickets
+	 */
+	static long playerKey(Piece piece, int location, long word) {
+		long key = Zobrist.location(piece, location);
+		for (Ticket ticket : TICKETS) key ^= Zobrist.tickets(piece, ticket, count(word, ticket));
+		return key;
+	}
+
+	/**
+	 * @return the {@link Zobrist} key of the players to move, given as a bit mask over pieces
+	 */
+	static long toMoveKey(Piece[] pieces, int remaining) {
+		long key = 0;
+		for (int i = 0; i < pieces.length; i++)
+			if ((remaining & 1 << i) != 0) key ^= Zobrist.toMove(pieces[i]);
+		return key;
+	}
+
+	/**
+	 * Generates the single moves of a player at source holding the given tickets
+	 */
+	static void generateSingleMoves(CompactGraph graph, StationSet occupied, Piece piece,
+	                                int source, long word, MoveConsumer consumer) {
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+			int destination = graph.target(e);
+			if (occupied.contains(destination)) continue;
+			int mask = usable(graph, word, e);
+			for (Ticket ticket : TICKETS)
+				if ((mask & 1 << ticket.ordinal()) != 0)
+					consumer.acceptSingle(piece, source, ticket, destination);
+		}
+	}
+
+	/**
+	 * Generates the double moves of MrX at source holding the given tickets; the caller checks
+	 * that there are at least two rounds left
+	 */
+	static void generateDoubleMoves(CompactGraph graph, StationSet occupied,
+	                                int source, long word, MoveConsumer consumer) {
+		if (count(word, Ticket.DOUBLE) == 0) return;
+		for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+			int destination1 = graph.target(e1);
+			if (occupied.contains(destination1)) continue;
+			int mask1 = usable(graph, word, e1);
+			for (Ticket ticket1 : TICKETS) {
+				if ((mask1 & 1 << ticket1.ordinal()) == 0) continue;
+				long after = adjust(word, ticket1, -1);
+				for (int e2 = graph.edgeStart(destination1); e2 < graph.edgeEnd(destination1); e2++) {
+					int destination2 = graph.target(e2);
+					if (occupied.contains(destination2)) continue;
+					int mask2 = usable(graph, after, e2);
+					for (Ticket ticket2 : TICKETS)
+						if ((mask2 & 1 << ticket2.ordinal()) != 0)
+							consumer.acceptDouble(MrX.MRX, source,
+									ticket1, destination1, ticket2, destination2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the stations occupied by detectives, i.e all players but MrX
+	 */
+	private static StationSet occupancy(CompactGraph graph, short[] locations) {
+		StationSet occupied = new StationSet(graph.nodeBound());
+		for (int i = 1; i < locations.length; i++)
+			if (graph.contains(locations[i])) occupied.add(locations[i]);
+		return occupied;
+	}
+
+	private static final class PackedGameState implements GameState {
+		private final GameSetup setup;
+		private final CompactGraph graph;
+		private final Piece[] pieces;
+		private final short[] locations;
+		private final long[] tickets;
+		private final int remaining;
+		private final int[] log;
+		private final int logSize;
+		private final StationSet occupied;
+		private final long key;
+
+		// lazily materialised, all of these are immutable so a racy single check is safe
+		private ImmutableSet<Piece> players;
+		private ImmutableList<LogEntry> travelLog;
+		private ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+
+		private PackedGameState(GameSetup setup,
+		                        CompactGraph graph,
+		                        Piece[] pieces,
+		                        short[] locations,
+		                        long[] tickets,
+		                        int remaining,
+		                        int[] log,
+		                        int logSize,
+		                        StationSet occupied,
+		                        long key) {
+			this.setup = setup;
+			this.graph = graph;
+			this.pieces = pieces;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.remaining = remaining;
+			this.log = log;
+			this.logSize = logSize;
+			this.occupied = occupied;
+			this.key = key;
+		}
+
+		@Override public boolean hasZobristKey() { return true; }
+
+		@Override public long zobristKey() { return key; }
+
+		private boolean mrXTurn() { return (remaining & 1 << MRX) != 0; }
+
+		private int indexOf(Piece piece) {
+			for (int i = 0; i < pieces.length; i++)
+				if (pieces[i] == piece) return i;
+			return -1;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+			if (players == null) players = ImmutableSet.copyOf(pieces);
+			return players;
+		}
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int index = indexOf(detective);
+			return index <= MRX ? Optional.empty() : Optional.of((int) locations[index]);
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int index = indexOf(piece);
+			if (index < 0) return Optional.empty();
+			long word = tickets[index];
+			return Optional.of(ticket -> count(word, ticket));
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+			if (travelLog == null) {
+				var builder = ImmutableList.<LogEntry>builderWithExpectedSize(logSize);
+				for (int i = 0; i < logSize; i++) builder.add(unpackLog(log[i]));
+				travelLog = builder.build();
+			}
+			return travelLog;
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			if (winner == null) winner = computeWinner();
+			return winner;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			if (moves == null) moves = getWinner().isEmpty() ? computeMoves() : ImmutableSet.of();
+			return moves;
+		}
+
+		private ImmutableSet<Piece> detectivePieces() {
+			return ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+		}
+
+		/**
+		 * Same rules and precedence as {@code MyGameState#checkWinner()}
+		 */
+		private ImmutableSet<Piece> computeWinner() {
+			if (mrXTurn()) {
+				// MrX is cornered by detectives
+				if (!canMove(graph, occupied, locations[MRX], tickets[MRX])) return detectivePieces();
+				// MrX filled the log and subsequently all detectives failed to catch him
+				if (logSize == setup.moves.size()) return ImmutableSet.of(pieces[MRX]);
+			}
+			boolean stuck = true;
+			for (int i = 1; i < pieces.length; i++) {
+				// detective catches MrX
+				if (locations[i] == locations[MRX]) return detectivePieces();
+				// detectives can only hold taxi, bus and underground tickets
+				if (tickets[i] != 0) stuck = false;
+			}
+			// all detectives are out of tickets, or none of them has a legal move after MrX moved;
+			// a round nobody can play would otherwise never end
+			return stuck || remaining == 0 ? ImmutableSet.of(pieces[MRX]) : ImmutableSet.of();
+		}
+
+		private void generateMoves(MoveConsumer consumer) {
+			if (mrXTurn()) {
+				generateSingleMoves(graph, occupied, pieces[MRX], locations[MRX], tickets[MRX],
+						consumer);
+				if (setup.moves.size() - logSize > 1)
+					generateDoubleMoves(graph, occupied, locations[MRX], tickets[MRX], consumer);
+			} else {
+				for (int i = 1; i < pieces.length; i++)
+					if ((remaining & 1 << i) != 0)
+						generateSingleMoves(graph, occupied, pieces[i], locations[i], tickets[i],
+								consumer);
+			}
+		}
+
+		private ImmutableSet<Move> computeMoves() {
+			var builder = ImmutableSet.<Move>builder();
+			generateMoves(MoveTable.of(graph).materialising(builder::add));
+			return builder.build();
+		}
+
+		@Override public void forEachAvailableMove(@Nonnull MoveConsumer consumer) {
+			Objects.requireNonNull(consumer);
+			if (getWinner().isEmpty()) generateMoves(consumer);
+		}
+
+		private int appendLog(int[] newLog, int size, Ticket ticket, int destination) {
+			newLog[size] = setup.moves.get(size) ? packLog(ticket, destination) : packLog(ticket, -1);
+			return size + 1;
+		}
+
+		/**
+		 * @return the key of the state after the given changes, with only those features updated
+		 */
+		private long keyAfter(int player, short[] newLocations, long[] newTickets,
+		                      int newRemaining, int[] newLog, int newLogSize) {
+			long newKey = key
+					^ playerKey(pieces[MRX], locations[MRX], tickets[MRX])
+					^ playerKey(pieces[MRX], newLocations[MRX], newTickets[MRX])
+					^ toMoveKey(pieces, remaining) ^ toMoveKey(pieces, newRemaining);
+			if (player != MRX) newKey ^= playerKey(pieces[player], locations[player], tickets[player])
+					^ playerKey(pieces[player], newLocations[player], newTickets[player]);
+			// a packed entry holds location + 1, so hidden rounds come out as -1
+			for (int i = logSize; i < newLogSize; i++)
+				newKey ^= Zobrist.log(i, TICKETS[newLog[i] & 7], (newLog[i] >>> 3) - 1);
+			return newKey;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!getAvailableMoves().contains(move))
+				throw new IllegalArgumentException("Illegal move: " + move);
+
+			int player = indexOf(move.commencedBy());
+			short[] newLocations = locations.clone();
+			long[] newTickets = tickets.clone();
+
+			if (player == MRX) {
+				// only detectives that can move get to move this round
+				int newRemaining = 0;
+				for (int i = 1; i < pieces.length; i++)
+					if (canMove(graph, occupied, locations[i], tickets[i])) newRemaining |= 1 << i;
+
+				int[] newLog = log.clone();
+				int newLogSize = logSize;
+				if (move instanceof SingleMove) {
+					SingleMove m = (SingleMove) move;
+					newLogSize = appendLog(newLog, newLogSize, m.ticket, m.destination);
+					newTickets[MRX] = adjust(newTickets[MRX], m.ticket, -1);
+					newLocations[MRX] = (short) m.destination;
+				} else {
+					DoubleMove m = (DoubleMove) move;
+					newLogSize = appendLog(newLog, newLogSize, m.ticket1, m.destination1);
+					newLogSize = appendLog(newLog, newLogSize, m.ticket2, m.destination2);
+					newTickets[MRX] = adjust(adjust(adjust(newTickets[MRX],
+							m.ticket1, -1), m.ticket2, -1), Ticket.DOUBLE, -1);
+					newLocations[MRX] = (short) m.destination2;
+				}
+				return new PackedGameState(setup, graph, pieces, newLocations, newTickets,
+						newRemaining, newLog, newLogSize, occupied,
+						keyAfter(MRX, newLocations, newTickets, newRemaining, newLog, newLogSize));
+			}
+
+			// detectives only ever make single moves, the used ticket is given to MrX
+			SingleMove m = (SingleMove) move;
+			newTickets[player] = adjust(newTickets[player], m.ticket, -1);
+			newTickets[MRX] = adjust(newTickets[MRX], m.ticket, 1);
+			newLocations[player] = (short) m.destination;
+			StationSet newOccupied = occupancy(graph, newLocations);
+			// detectives that have not moved yet this round but can no longer move are skipped
+			int newRemaining = remaining & ~(1 << player);
+			for (int i = 1; i < pieces.length; i++)
+				if ((newRemaining & 1 << i) != 0
+						&& !canMove(graph, newOccupied, newLocations[i], newTickets[i]))
+					newRemaining &= ~(1 << i);
+			if (newRemaining == 0) newRemaining = 1 << MRX;
+			return new PackedGameState(setup, graph, pieces, newLocations, newTickets,
+					newRemaining, log, logSize, newOccupied,
+					keyAfter(player, newLocations, newTickets, newRemaining, log, logSize));
+		}
+	}
+
+	private static short checkLocation(Player player) {
+		if (player.location() < 0 || player.location() > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Location out of range: " + player);
+		return (short) player.location();
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return a packed game state at the start of the game
+	 * @throws NullPointerException if MrX or any of the detectives are null
+	 * @throws IllegalArgumentException if passed arguments are not valid
+	 */
+	@Nonnull @Override public GameState build(GameSetup setup,
+	                                          Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		Objects.requireNonNull(setup);
+		Objects.requireNonNull(mrX);
+		Objects.requireNonNull(detectives);
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves is empty!");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
+		CompactGraph graph = CompactGraph.of(setup.graph);
+		if (graph.nodeBound() > Short.MAX_VALUE + 1)
+			throw new IllegalArgumentException("Too many stations for a packed state");
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is not MrX: " + mrX);
+		if (detectives.size() > Integer.SIZE - 1)
+			throw new IllegalArgumentException("Too many detectives: " + detectives.size());
+
+		int n = detectives.size() + 1;
+		Piece[] pieces = new Piece[n];
+		short[] locations = new short[n];
+		long[] tickets = new long[n];
+		pieces[MRX] = mrX.piece();
+		locations[MRX] = checkLocation(mrX);
+		tickets[MRX] = pack(mrX.tickets());
+		for (int i = 1; i < n; i++) {
+			Player d = detectives.get(i - 1);
+			if (!d.isDetective()) throw new IllegalArgumentException("Not a detective: " + d);
+			// detectives cannot hold SECRET or DOUBLE ticket which are for MrX
+			if (d.has(Ticket.SECRET) || d.has(Ticket.DOUBLE))
+				throw new IllegalArgumentException("Detective with MrX tickets: " + d);
+			for (int j = 1; j < i; j++) {
+				if (pieces[j] == d.piece())
+					throw new IllegalArgumentException("Duplicate detective: " + d);
+				if (locations[j] == d.location())
+					throw new IllegalArgumentException("Overlapping detectives: " + d);
+			}
+			pieces[i] = d.piece();
+			locations[i] = checkLocation(d);
+			tickets[i] = pack(d.tickets());
+		}
+		// tickets only ever flow from detectives to MrX, so the per-ticket total bounds MrX's count
+		for (Ticket ticket : TICKETS) {
+			int total = 0;
+			for (long word : tickets) total += count(word, ticket);
+			if (total > MAX_TICKETS)
+				throw new IllegalArgumentException("Too many " + ticket + " tickets: " + total);
+		}
+		long key = toMoveKey(pieces, 1 << MRX);
+		for (int i = 0; i < n; i++) key ^= playerKey(pieces[i], locations[i], tickets[i]);
+		return new PackedGameState(setup, graph, pieces, locations, tickets, 1 << MRX,
+				new int[setup.moves.size()], 0, occupancy(graph, locations), key);
+	}
+
+}
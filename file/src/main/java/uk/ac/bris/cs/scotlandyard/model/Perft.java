@@ -0,0 +1,198 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Perft for the game model: counts the positions reachable in exactly n moves, where every move
+ * is one call to {@link GameState#advance(Move)} (a detective's move or one of MrX's single or
+ * double moves). Games that end early contribute nothing to deeper counts.
+ * <br>
+ * The counts only depend on the rules, so they catch move generation regressions across engine
+ * rewrites, and the time taken measures the throughput of move generation and advancing. See
+ * {@link #REFERENCES} for known counts of seeded start positions on the standard map.
+ * <br>
+ * Run with {@code [--depth N] [--seed S] [--detectives D] [--engine my|packed] [--verify]};
+ * {@code --verify} checks the engine against the references up to the given depth.
+ */
+public final class Perft {
+
+	private Perft() {}
+
+	/**
+	 * A seeded start position with its known counts
+	 */
+	public static final class Reference {
+		/**
+		 * the seed of {@link ScotlandYard#generateMrXLocation(int)} and
+		 * {@link ScotlandYard#generateDetectiveLocations(int, int)}
+		 */
+		public final int seed;
+		/**
+		 * the number of detectives
+		 */
+		public final int detectives;
+		private final long[] counts;
+
+		private Reference(int seed, int detectives, long... counts) {
+			this.seed = seed;
+			this.detectives = detectives;
+			this.counts = counts;
+		}
+
+		/**
+		 * @return the deepest depth with a known count
+		 */
+		public int depth() { return counts.length; }
+
+		/**
+		 * @param depth the depth, from 1 to {@link #depth()}
+		 * @return the known count of positions at that depth
+		 */
+		public long count(int depth) { return counts[depth - 1]; }
+
+		@Override public String toString() {
+			return "Reference{seed=" + seed + ", detectives=" + detectives
+					+ ", counts=" + Arrays.toString(counts) + '}';
+		}
+	}
+
+	/**
+	 * Known counts on the standard map with {@link ScotlandYard#STANDARD24MOVES} and default
+	 * tickets, see {@link #start(Factory, GameSetup, int, int)}
+	 */
+	public static final ImmutableList<Reference> REFERENCES = ImmutableList.of(
+			new Reference(1, 5, 106, 2014, 29682, 321732, 2287764),
+			new Reference(2, 5, 187, 3740, 57892, 656748, 4865184),
+			new Reference(42, 5, 142, 3266, 55424, 664848, 5081040),
+			new Reference(7, 2, 193, 1158, 3474, 582000));
+
+	/**
+	 * @param factory the game state factory
+	 * @param setup the game setup
+	 * @param seed the seed of the start locations
+	 * @param detectives the number of detectives, taken in the order of
+	 * {@link ScotlandYard#DETECTIVES}
+	 * @return a start position with default tickets for every player
+	 */
+	@Nonnull public static GameState start(@Nonnull Factory<GameState> factory,
+	                                       @Nonnull GameSetup setup,
+	                                       int seed,
+	                                       int detectives) {
+		var locations = ScotlandYard.generateDetectiveLocations(seed, detectives);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < detectives; i++)
+			players.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		return factory.build(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed)), players.build());
+	}
+
+	/**
+	 * @param state the state to start from
+	 * @param depth the number of moves
+	 * @return the number of positions reachable in exactly depth moves
+	 */
+	public static long perft(@Nonnull GameState state, int depth) {
+		if (depth < 0) throw new IllegalArgumentException("Negative depth: " + depth);
+		if (depth == 0) return 1;
+		long nodes = 0;
+		for (Move move : state.getAvailableMoves()) nodes += perft(state.advance(move), depth - 1);
+		return nodes;
+	}
+
+	/**
+	 * @param state the state to start from
+	 * @param depth the number of moves, at least 1
+	 * @return the {@link #perft(GameState, int)} count below each available move, for narrowing a
+	 * mismatch down to a move
+	 */
+	@Nonnull public static ImmutableMap<Move, Long> divide(@Nonnull GameState state, int depth) {
+		if (depth < 1) throw new IllegalArgumentException("Depth must be positive: " + depth);
+		var counts = ImmutableMap.<Move, Long>builder();
+		for (Move move : state.getAvailableMoves())
+			counts.put(move, perft(state.advance(move), depth - 1));
+		return counts.build();
+	}
+
+	/**
+	 * @param factory the game state factory
+	 * @param setup the standard game setup
+	 * @param maxDepth the deepest depth to check, deeper references take seconds per engine
+	 * @return the references that do not match, each with the first depth that differs
+	 */
+	@Nonnull public static ImmutableMap<Reference, Integer> verify(
+			@Nonnull Factory<GameState> factory, @Nonnull GameSetup setup, int maxDepth) {
+		Objects.requireNonNull(factory);
+		var mismatches = ImmutableMap.<Reference, Integer>builder();
+		for (Reference reference : REFERENCES) {
+			GameState state = start(factory, setup, reference.seed, reference.detectives);
+			for (int depth = 1; depth <= Math.min(maxDepth, reference.depth()); depth++) {
+				if (perft(state, depth) != reference.count(depth)) {
+					mismatches.put(reference, depth);
+					break;
+				}
+			}
+		}
+		return mismatches.build();
+	}
+
+	private static Factory<GameState> engine(String name) {
+		switch (name) {
+			case "my": return new MyGameStateFactory();
+			case "packed": return new PackedGameStateFactory();
+			default: throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int depth = -1;
+		int seed = 1;
+		int detectives = 5;
+		String engine = "my";
+		boolean verify = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--depth": depth = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--engine": engine = args[++i]; break;
+				case "--verify": verify = true; break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+		// --verify checks every known depth unless a depth is given
+		if (depth < 0) depth = verify ? Integer.MAX_VALUE : 4;
+		Factory<GameState> factory = engine(engine);
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(),
+				ScotlandYard.STANDARD24MOVES);
+		if (verify) {
+			var mismatches = verify(factory, setup, depth);
+			mismatches.forEach((reference, at) ->
+					System.out.println("Mismatch at depth " + at + ": " + reference));
+			System.out.println(mismatches.isEmpty() ? "All references match" : "FAILED");
+			if (!mismatches.isEmpty()) System.exit(1);
+			return;
+		}
+		GameState state = start(factory, setup, seed, detectives);
+		System.out.printf("engine=%s seed=%d detectives=%d%n", engine, seed, detectives);
+		for (int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			long nodes = perft(state, d);
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("depth %d: %d nodes in %d ms, %.0f nodes/s%n", d, nodes,
+					TimeUnit.NANOSECONDS.toMillis(elapsed), nodes * 1e9 / Math.max(elapsed, 1));
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.primitives.ImmutableIntArray;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.adjust;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.count;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.pack;
+import static uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory.usable;
+
+/**
+ * Ticket constrained reachability: the least number of turns a player needs to reach every
+ * station with the tickets they hold, e.g a detective with no underground tickets cannot take the
+ * underground no matter how close it is. Unlike {@link DistanceOracle} this depends on the
+ * tickets, so it is searched per query.
+ * <br>
+ * The search is a breadth first search over {@code (station, tickets left)} states, one layer per
+ * turn. A state is dropped if the same station was already reached, in the same or an earlier
+ * turn, with at least as many of every ticket left, counting spare secret tickets as any ticket;
+ * only the Pareto front of ticket counts is kept per station. Every turn uses a ticket, so the
+ * search is bounded by the tickets held. The {@link DistanceOracle} distance over the transports
+ * the tickets allow is a lower bound, so on maps of up to {@link #BOUNDED_STATIONS} stations the
+ * search also stops once every station has been reached in that many turns. A turn is a single
+ * move, {@link Ticket#DOUBLE} tickets are not used; {@link Ticket#SECRET} tickets are, on any
+ * route. Detectives are not treated as obstacles.
+ * <br>
+ * Results are memoized per graph, so asking again for a player who has not moved and still holds
+ * the same tickets is a cache lookup.
+ */
+public final class Reachability {
+
+	/**
+	 * Turns to a station that cannot be reached
+	 */
+	public static final int UNREACHABLE = -1;
+	/**
+	 * The largest map, by {@link CompactGraph#nodeBound()}, searched with {@link DistanceOracle}
+	 * bounds; the tables of larger maps take too much memory
+	 */
+	public static final int BOUNDED_STATIONS = 4096;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Transport[] TRANSPORTS = Transport.values();
+	// the top bit of every packed ticket counter
+	private static final long GUARDS;
+	static {
+		long guards = 0;
+		for (Ticket ticket : TICKETS)
+			guards |= 1L << (ticket.ordinal() + 1) * PackedGameStateFactory.TICKET_BITS - 1;
+		GUARDS = guards;
+	}
+
+	private static final LoadingCache<CompactGraph, Reachability> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(Reachability::new));
+
+	private static final class Query {
+		final int source;
+		final long tickets;
+		final int maxTurns;
+
+		Query(int source, long tickets, int maxTurns) {
+			this.source = source;
+			this.tickets = tickets;
+			this.maxTurns = maxTurns;
+		}
+
+		@Override public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Query that = (Query) o;
+			return source == that.source && tickets == that.tickets && maxTurns == that.maxTurns;
+		}
+		@Override public int hashCode() { return Objects.hash(source, tickets, maxTurns); }
+	}
+
+	private final CompactGraph graph;
+	private final LoadingCache<Query, ImmutableIntArray> results = CacheBuilder.newBuilder()
+			.maximumSize(4096)
+			.build(CacheLoader.from(this::search));
+
+	private Reachability(CompactGraph graph) { this.graph = graph; }
+
+	/**
+	 * @param graph the game graph
+	 * @return the reachability engine of the graph, created at most once per graph instance
+	 */
+	@Nonnull public static Reachability of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.getUnchecked(CompactGraph.of(graph));
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param player the player, from their current location with their current tickets
+	 * @return the least number of turns to each station, indexed by station number; see
+	 * {@link #turns(int, ImmutableMap, int)}
+	 */
+	@Nonnull public static ImmutableIntArray turns(@Nonnull GameSetup setup, @Nonnull Player player) {
+		return of(setup.graph).turns(player.location(), player.tickets(), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param source the station to start from
+	 * @param tickets the tickets held, as given by {@link Player#tickets()}
+	 * @param maxTurns the most turns to search, turns beyond are {@link #UNREACHABLE}
+	 * @return the least number of turns to each station, indexed by station number up to
+	 * {@link CompactGraph#nodeBound()}; 0 for the source and {@link #UNREACHABLE} for stations
+	 * that cannot be reached
+	 * @throws IllegalArgumentException if the source is not part of the graph or a ticket count is
+	 * out of range
+	 */
+	@Nonnull public ImmutableIntArray turns(int source,
+	                                        @Nonnull ImmutableMap<Ticket, Integer> tickets,
+	                                        int maxTurns) {
+		return results.getUnchecked(query(source, tickets, maxTurns));
+	}
+
+	/**
+	 * Same as {@link #turns(int, ImmutableMap, int)} but always searches, for benchmarks
+	 */
+	@Nonnull ImmutableIntArray searchTurns(int source,
+	                                       @Nonnull ImmutableMap<Ticket, Integer> tickets,
+	                                       int maxTurns) {
+		return search(query(source, tickets, maxTurns));
+	}
+
+	private Query query(int source, ImmutableMap<Ticket, Integer> tickets, int maxTurns) {
+		if (!graph.contains(source))
+			throw new IllegalArgumentException("Source is not on the map: " + source);
+		if (maxTurns < 0) throw new IllegalArgumentException("Negative turns: " + maxTurns);
+		// DOUBLE tickets are never used, dropping them shares results between MrX's states
+		long word = pack(tickets);
+		return new Query(source, adjust(word, Ticket.DOUBLE, -count(word, Ticket.DOUBLE)), maxTurns);
+	}
+
+	/**
+	 * @return whether a can make every journey b can: a has at least as many of every ticket as b,
+	 * or enough spare secret tickets to stand in for the ones it lacks
+	 */
+	private static boolean covers(long a, long b) {
+		int spare = count(a, Ticket.SECRET) - count(b, Ticket.SECRET);
+		for (Ticket ticket : TICKETS) {
+			if (ticket == Ticket.SECRET) continue;
+			spare -= Math.max(0, count(b, ticket) - count(a, ticket));
+		}
+		return spare >= 0;
+	}
+
+	/**
+	 * Same as {@link #covers(long, long)} for words with every count below the guard bit: setting
+	 * the guard bit of each counter of a stops borrows between counters, so it stays set exactly
+	 * when the counter of a is at least that of b; secret tickets only matter when that fails
+	 */
+	private static boolean coversNarrow(long a, long b) {
+		return (((a | GUARDS) - b) & GUARDS) == GUARDS
+				|| count(a, Ticket.SECRET) > count(b, Ticket.SECRET) && covers(a, b);
+	}
+
+	private static int transports(long word) {
+		int mask = 0;
+		for (Transport t : TRANSPORTS)
+			if (count(word, t.requiredTicket()) > 0 || count(word, Ticket.SECRET) > 0)
+				mask |= 1 << t.ordinal();
+		return mask;
+	}
+
+	private ImmutableIntArray search(Query query) {
+		int bound = graph.nodeBound();
+		int[] turns = new int[bound];
+		Arrays.fill(turns, UNREACHABLE);
+		// stations reached in as few turns as the unconstrained distance cannot improve
+		DistanceOracle oracle = bound <= BOUNDED_STATIONS ?
+				DistanceOracle.of(graph, transports(query.tickets)) : null;
+		int unsettled = oracle == null ? Integer.MAX_VALUE : -1;
+		for (int node = 0; oracle != null && node < bound; node++) {
+			int distance = oracle.distance(query.source, node);
+			if (distance != DistanceOracle.UNREACHABLE && distance <= query.maxTurns) unsettled++;
+		}
+		// the Pareto front of tickets left per station
+		long[][] fronts = new long[bound][];
+		int[] frontSizes = new int[bound];
+
+		int[] nodes = {query.source};
+		long[] words = {query.tickets};
+		int size = 1;
+		turns[query.source] = 0;
+		fronts[query.source] = new long[]{query.tickets};
+		frontSizes[query.source] = 1;
+		// counts only go down, so the narrow comparison holds for the whole search
+		boolean narrow = (query.tickets & GUARDS) == 0;
+
+		for (int turn = 1; turn <= query.maxTurns && size > 0 && unsettled > 0; turn++) {
+			int[] nextNodes = new int[Math.max(16, size * 2)];
+			long[] nextWords = new long[nextNodes.length];
+			int nextSize = 0;
+			for (int i = 0; i < size; i++) {
+				int node = nodes[i];
+				long word = words[i];
+				for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+					int mask = usable(graph, word, e);
+					if (mask == 0) continue;
+					int target = graph.target(e);
+					for (Ticket ticket : TICKETS) {
+						if ((mask & 1 << ticket.ordinal()) == 0) continue;
+						long left = adjust(word, ticket, -1);
+						if (!addToFront(fronts, frontSizes, target, left, narrow)) continue;
+						if (turns[target] == UNREACHABLE) {
+							turns[target] = turn;
+							if (oracle != null && oracle.distance(query.source, target) == turn)
+								unsettled--;
+						}
+						if (nextSize == nextNodes.length) {
+							nextNodes = Arrays.copyOf(nextNodes, nextSize * 2);
+							nextWords = Arrays.copyOf(nextWords, nextSize * 2);
+						}
+						nextNodes[nextSize] = target;
+						nextWords[nextSize] = left;
+						nextSize++;
+					}
+				}
+			}
+			nodes = nextNodes;
+			words = nextWords;
+			size = nextSize;
+		}
+		return ImmutableIntArray.copyOf(turns);
+	}
+
+	/**
+	 * @return whether the tickets were added to the front of the station, i.e no state at the
+	 * station had at least as many of every ticket
+	 */
+	private static boolean addToFront(long[][] fronts, int[] sizes, int station, long word,
+	                                  boolean narrow) {
+		long[] front = fronts[station];
+		int size = sizes[station];
+		if (front == null) {
+			fronts[station] = new long[]{word};
+			sizes[station] = 1;
+			return true;
+		}
+		if (narrow) {
+			for (int i = 0; i < size; i++)
+				if (coversNarrow(front[i], word)) return false;
+		} else {
+			for (int i = 0; i < size; i++)
+				if (covers(front[i], word)) return false;
+		}
+		// drop the states the new one covers
+		int kept = 0;
+		for (int i = 0; i < size; i++)
+			if (!(narrow ? coversNarrow(word, front[i]) : covers(word, front[i])))
+				front[kept++] = front[i];
+		if (kept == front.length) fronts[station] = front = Arrays.copyOf(front, kept * 2);
+		front[kept++] = word;
+		sizes[station] = kept;
+		return true;
+	}
+
+}
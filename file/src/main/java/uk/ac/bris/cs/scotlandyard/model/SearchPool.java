@@ -0,0 +1,327 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * A fork/join pool shared by every {@link Ai} for the work of {@link Ai#pickMove}, so AIs do not
+ * start threads of their own and games played at the same time share the processors.
+ * <br>
+ * An Ai opens a {@link Turn} with the timeout of the request and submits search tasks to it.
+ * Tasks wait in a queue ordered by the deadline of their turn and each worker takes the task
+ * whose deadline is nearest (earliest deadline first), so a turn about to run out is not stuck
+ * behind one that has time to spare. A task whose turn has expired by the time a worker takes it
+ * is cancelled without running. Tasks run on fork/join workers and may fork subtasks of their own.
+ * <br>
+ * Cancellation is cooperative: nothing is interrupted, running tasks are expected to check
+ * {@link Turn#expired()} and return. The processor time of every task, or wall time where the JVM
+ * cannot measure thread CPU time, is added to its turn and, when the turn closes, to the
+ * {@link Usage} of the Ai.
+ */
+public final class SearchPool implements AutoCloseable {
+
+	private static final long MIN_MARGIN = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static final class Shared {
+		static final SearchPool POOL = new SearchPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	private final ForkJoinPool pool;
+	private final PriorityBlockingQueue<Task<?>> queue = new PriorityBlockingQueue<>(16,
+			Comparator.<Task<?>>comparingLong(t -> t.turn.deadline).thenComparingLong(t -> t.order));
+	private final AtomicLong order = new AtomicLong();
+	private final ConcurrentHashMap<String, Usage> usage = new ConcurrentHashMap<>();
+
+	/**
+	 * @param parallelism the number of worker threads
+	 * @throws IllegalArgumentException if parallelism is not positive
+	 */
+	public SearchPool(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		var count = new AtomicInteger();
+		this.pool = new ForkJoinPool(parallelism, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("search-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * @return the pool of the process, one worker per processor; never closed
+	 */
+	@Nonnull public static SearchPool shared() { return Shared.POOL; }
+
+	/**
+	 * @param start the {@link System#nanoTime()} the request started at
+	 * @param timeoutPair the timeout of the request
+	 * @return the {@link System#nanoTime()} to stop searching at: a tenth of the timeout, at
+	 * least 50ms and at most half the timeout, before it runs out, leaving time to return the move
+	 */
+	public static long deadline(long start, @Nonnull Pair<Long, TimeUnit> timeoutPair) {
+		long budget = timeoutPair.right().toNanos(timeoutPair.left());
+		long margin = Math.min(budget / 2, Math.max(budget / 10, MIN_MARGIN));
+		return start + budget - margin;
+	}
+
+	/**
+	 * @param ai the name of the Ai, e.g {@link Ai#name()}
+	 * @param timeoutPair the timeout of the request, see {@link #deadline(long, Pair)}
+	 * @return a new turn, to be closed when the move is picked
+	 */
+	@Nonnull public Turn startTurn(@Nonnull String ai, @Nonnull Pair<Long, TimeUnit> timeoutPair) {
+		return startTurn(ai, deadline(System.nanoTime(), timeoutPair));
+	}
+
+	/**
+	 * @param ai the name of the Ai, e.g {@link Ai#name()}
+	 * @param deadline the {@link System#nanoTime()} the turn expires at
+	 * @return a new turn, to be closed when the move is picked
+	 */
+	@Nonnull public Turn startTurn(@Nonnull String ai, long deadline) {
+		return new Turn(Objects.requireNonNull(ai), deadline);
+	}
+
+	/**
+	 * @param ai the name of the Ai
+	 * @return the usage of the Ai over its closed turns
+	 */
+	@Nonnull public Usage usage(@Nonnull String ai) {
+		return usage.getOrDefault(ai, Usage.NONE);
+	}
+
+	/**
+	 * @return the usage of every Ai with a closed turn
+	 */
+	@Nonnull public ImmutableMap<String, Usage> usage() { return ImmutableMap.copyOf(usage); }
+
+	/**
+	 * @return the number of tasks waiting for a worker
+	 */
+	public int queued() { return queue.size(); }
+
+	/**
+	 * Stops the workers; waiting tasks are cancelled
+	 */
+	@Override public void close() {
+		pool.shutdownNow();
+		for (Task<?> task; (task = queue.poll()) != null; ) task.future.cancel(false);
+	}
+
+	private void runNext() {
+		Task<?> task = queue.poll();
+		if (task != null) task.run();
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ?
+				THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	/**
+	 * The work of one {@link Ai#pickMove} call
+	 */
+	public final class Turn implements AutoCloseable {
+		private final String ai;
+		private final long deadline;
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private final AtomicLong cpuNanos = new AtomicLong();
+		private final AtomicInteger tasks = new AtomicInteger();
+		private final List<Future<?>> futures = new ArrayList<>();
+
+		private Turn(String ai, long deadline) {
+			this.ai = ai;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return the {@link System#nanoTime()} the turn expires at
+		 */
+		public long deadline() { return deadline; }
+
+		/**
+		 * @return the nanoseconds left before the deadline; 0 once expired
+		 */
+		public long remainingNanos() {
+			return expired() ? 0 : Math.max(0, deadline - System.nanoTime());
+		}
+
+		/**
+		 * @return whether the deadline has passed or the turn was cancelled; tasks should return
+		 * as soon as this is true
+		 */
+		public boolean expired() { return cancelled.get() || System.nanoTime() >= deadline; }
+
+		/**
+		 * Expires the turn early and cancels the tasks not yet started
+		 */
+		public void cancel() {
+			cancelled.set(true);
+			synchronized (futures) {
+				futures.forEach(f -> f.cancel(false));
+			}
+		}
+
+		/**
+		 * @param task the task, run on a worker of the pool
+		 * @param <T> the result type
+		 * @return the result of the task; cancelled if the turn expires before it starts
+		 * @throws IllegalStateException if the turn is closed
+		 */
+		@Nonnull public <T> Future<T> submit(@Nonnull Callable<T> task) {
+			Objects.requireNonNull(task);
+			if (closed.get()) throw new IllegalStateException("Turn is closed");
+			var submitted = new Task<>(this, task, order.getAndIncrement());
+			synchronized (futures) {
+				futures.add(submitted.future);
+			}
+			queue.add(submitted);
+			pool.execute(SearchPool.this::runNext);
+			return submitted.future;
+		}
+
+		/**
+		 * Runs a task on the calling thread, counting its processor time to the turn
+		 *
+		 * @param task the task
+		 * @param <T> the result type
+		 * @return the result of the task
+		 */
+		public <T> T call(@Nonnull Supplier<T> task) {
+			long start = cpuTime();
+			try {
+				return task.get();
+			} finally {
+				cpuNanos.addAndGet(cpuTime() - start);
+				tasks.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @return the processor time of the tasks of this turn so far, in nanoseconds
+		 */
+		public long cpuNanos() { return cpuNanos.get(); }
+
+		/**
+		 * @return the number of tasks of this turn that ran
+		 */
+		public int tasks() { return tasks.get(); }
+
+		/**
+		 * Cancels the tasks not yet started and adds the turn to the usage of its Ai. Tasks
+		 * still running are counted up to this point.
+		 */
+		@Override public void close() {
+			if (!closed.compareAndSet(false, true)) return;
+			cancel();
+			long cpu = cpuNanos.get();
+			usage.merge(ai, new Usage(1, cpu, cpu), Usage::plus);
+		}
+	}
+
+	private static final class Task<T> {
+		final Turn turn;
+		final Callable<T> callable;
+		final long order;
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		Task(Turn turn, Callable<T> callable, long order) {
+			this.turn = turn;
+			this.callable = callable;
+			this.order = order;
+		}
+
+		void run() {
+			if (future.isDone()) return;
+			if (turn.expired()) {
+				future.cancel(false);
+				return;
+			}
+			long start = cpuTime();
+			T result = null;
+			Throwable failure = null;
+			try {
+				result = callable.call();
+			} catch (Throwable e) {
+				failure = e;
+			}
+			// counted before completing, so the turn has the time once the result is seen
+			turn.cpuNanos.addAndGet(cpuTime() - start);
+			turn.tasks.incrementAndGet();
+			if (failure == null) future.complete(result);
+			else future.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * The processor time an Ai used over its turns
+	 */
+	public static final class Usage {
+		static final Usage NONE = new Usage(0, 0, 0);
+
+		private final int turns;
+		private final long cpuNanos;
+		private final long maxCpuNanos;
+
+		Usage(int turns, long cpuNanos, long maxCpuNanos) {
+			this.turns = turns;
+			this.cpuNanos = cpuNanos;
+			this.maxCpuNanos = maxCpuNanos;
+		}
+
+		Usage plus(Usage that) {
+			return new Usage(turns + that.turns, cpuNanos + that.cpuNanos,
+					Math.max(maxCpuNanos, that.maxCpuNanos));
+		}
+
+		/**
+		 * @return the number of turns
+		 */
+		public int turns() { return turns; }
+
+		/**
+		 * @return the processor time of all turns, in nanoseconds
+		 */
+		public long cpuNanos() { return cpuNanos; }
+
+		/**
+		 * @return the processor time of the longest turn, in nanoseconds
+		 */
+		public long maxCpuNanos() { return maxCpuNanos; }
+
+		/**
+		 * @return the mean processor time per turn, in nanoseconds
+		 */
+		public double meanCpuNanos() { return turns == 0 ? 0 : (double) cpuNanos / turns; }
+
+		@Override public String toString() {
+			return String.format("%d turns, %.1fms CPU per turn, %.1fms at most", turns,
+					meanCpuNanos() / 1e6, maxCpuNanos / 1e6);
+		}
+	}
+}
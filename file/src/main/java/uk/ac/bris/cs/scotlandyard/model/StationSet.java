@@ -0,0 +1,131 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A mutable, fixed-size set of station numbers backed by {@code long} words, one bit per
+ * station. The standard 199 station map fits in four words.
+ * <br>
+ * Stations outside {@code [0, bound)} are never contained in the set; adding them is an error.
+ */
+public final class StationSet {
+
+	private final int bound;
+	private final long[] words;
+
+	/**
+	 * @param bound one more than the largest station number the set can hold, see
+	 * {@link CompactGraph#nodeBound()}
+	 */
+	public StationSet(int bound) {
+		if (bound < 0) throw new IllegalArgumentException("Negative bound: " + bound);
+		this.bound = bound;
+		this.words = new long[(bound + Long.SIZE - 1) / Long.SIZE];
+	}
+
+	private StationSet(StationSet that) {
+		this.bound = that.bound;
+		this.words = that.words.clone();
+	}
+
+	/**
+	 * @return one more than the largest station number the set can hold
+	 */
+	public int bound() { return bound; }
+
+	/**
+	 * @param station the station
+	 * @return whether the station is in the set
+	 */
+	public boolean contains(int station) {
+		return station >= 0 && station < bound && (words[station >>> 6] & 1L << station) != 0;
+	}
+
+	/**
+	 * @param station the station to add
+	 * @throws IndexOutOfBoundsException if the station is outside of the bound
+	 */
+	public void add(int station) {
+		if (station < 0 || station >= bound) throw new IndexOutOfBoundsException(station);
+		words[station >>> 6] |= 1L << station;
+	}
+
+	/**
+	 * @param station the station to remove; no-op if not in the set
+	 */
+	public void remove(int station) {
+		if (station >= 0 && station < bound) words[station >>> 6] &= ~(1L << station);
+	}
+
+	/**
+	 * Removes all stations
+	 */
+	public void clear() { Arrays.fill(words, 0); }
+
+	/**
+	 * @return the number of stations in the set
+	 */
+	public int size() {
+		int n = 0;
+		for (long word : words) n += Long.bitCount(word);
+		return n;
+	}
+
+	/**
+	 * @return whether the set has no stations
+	 */
+	public boolean isEmpty() {
+		for (long word : words) if (word != 0) return false;
+		return true;
+	}
+
+	/**
+	 * @param from the station to start searching from, inclusive
+	 * @return the smallest station &gt;= from in the set; -1 if there are none
+	 */
+	public int next(int from) {
+		if (from < 0) from = 0;
+		int i = from >>> 6;
+		if (i >= words.length) return -1;
+		long word = words[i] & -1L << from;
+		while (true) {
+			if (word != 0) return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+			if (++i == words.length) return -1;
+			word = words[i];
+		}
+	}
+
+	/**
+	 * @param action called with every station in the set in ascending order
+	 */
+	public void forEach(@Nonnull IntConsumer action) {
+		for (int i = 0; i < words.length; i++) {
+			long word = words[i];
+			while (word != 0) {
+				action.accept(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of this set
+	 */
+	@Nonnull public StationSet copy() { return new StationSet(this); }
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		StationSet that = (StationSet) o;
+		return bound == that.bound && Arrays.equals(words, that.words);
+	}
+	@Override public int hashCode() { return 31 * bound + Arrays.hashCode(words); }
+	@Override public String toString() {
+		var builder = new StringBuilder("[");
+		forEach(s -> builder.append(builder.length() == 1 ? "" : ", ").append(s));
+		return builder.append(']').toString();
+	}
+}
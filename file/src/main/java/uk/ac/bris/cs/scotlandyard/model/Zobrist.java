@@ -0,0 +1,154 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * 64-bit Zobrist keys of game positions for transposition tables.
+ * <br>
+ * A key is the XOR of one feature key per player location, per player and ticket count, per
+ * player still to move this round and per travel log entry, so game states can update their key
+ * in constant time by XOR-ing out the features a move changes and XOR-ing in the new ones. Feature
+ * keys are derived with the SplitMix64 finaliser, so every station and ticket count has a key
+ * without sizing tables per graph; the stations and counts of the standard game are looked up in
+ * tables of those same values.
+ * <br>
+ * The setup is not part of the key: positions of different games should not share a table.
+ */
+public final class Zobrist {
+
+	private Zobrist() {}
+
+	private static final long SEED = 0x5C07_1A4D_7A4D_0001L;
+	private static final int LOCATION = 1;
+	private static final int TICKETS = 2;
+	private static final int TO_MOVE = 3;
+	private static final int LOG = 4;
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int TICKET_TYPES = Ticket.values().length;
+
+	// the common features are tabulated, the rest are mixed on demand to the same values
+	private static final int TABLE_STATIONS = 256;
+	private static final int TABLE_COUNTS = 32;
+	private static final long[] LOCATIONS = new long[PIECES * TABLE_STATIONS];
+	private static final long[] TICKET_COUNTS = new long[PIECES * TICKET_TYPES * TABLE_COUNTS];
+	private static final long[] TO_MOVE_KEYS = new long[PIECES];
+
+	static {
+		for (int i = 0; i < LOCATIONS.length; i++)
+			LOCATIONS[i] = feature(LOCATION, i / TABLE_STATIONS, i % TABLE_STATIONS);
+		for (int i = 0; i < TICKET_COUNTS.length; i++)
+			TICKET_COUNTS[i] = feature(TICKETS, i / TABLE_COUNTS, i % TABLE_COUNTS);
+		for (int i = 0; i < PIECES; i++)
+			TO_MOVE_KEYS[i] = feature(TO_MOVE, i, 0);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+
+	private static long feature(int kind, int a, int b) {
+		return mix(SEED + ((long) kind << 56 | (long) (a & 0xFFFF) << 32 | b & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES}, without a list search
+	 */
+	private static int index(Piece piece) {
+		if (piece instanceof Piece.MrX) return 0;
+		if (piece instanceof Piece.Detective) return 1 + ((Piece.Detective) piece).ordinal();
+		throw new IllegalArgumentException("Unknown piece: " + piece);
+	}
+
+	/**
+	 * @return the key of the piece being at the station
+	 */
+	static long location(Piece piece, int station) {
+		int index = index(piece);
+		return station >= 0 && station < TABLE_STATIONS ?
+				LOCATIONS[index * TABLE_STATIONS + station] : feature(LOCATION, index, station);
+	}
+
+	/**
+	 * @return the key of the piece holding count of the ticket
+	 */
+	static long tickets(Piece piece, Ticket ticket, int count) {
+		int index = index(piece) * TICKET_TYPES + ticket.ordinal();
+		return count >= 0 && count < TABLE_COUNTS ?
+				TICKET_COUNTS[index * TABLE_COUNTS + count] : feature(TICKETS, index, count);
+	}
+
+	/**
+	 * @return the key of the piece being still to move this round
+	 */
+	static long toMove(Piece piece) {
+		return TO_MOVE_KEYS[index(piece)];
+	}
+
+	/**
+	 * @param round the index of the entry in the travel log
+	 * @param ticket the ticket used
+	 * @param location the revealed location; -1 if hidden
+	 * @return the key of the travel log entry
+	 */
+	static long log(int round, Ticket ticket, int location) {
+		return feature(LOG, round * TICKET_TYPES + ticket.ordinal(), location);
+	}
+
+	/**
+	 * @return the key of every ticket count of the player
+	 */
+	static long tickets(Piece piece, TicketBoard board) {
+		long key = 0;
+		for (Ticket ticket : Ticket.values()) key ^= tickets(piece, ticket, board.getCount(ticket));
+		return key;
+	}
+
+	/**
+	 * Computes the key of a position from scratch. For any game state that is not over this is
+	 * equal to {@link GameState#zobristKey()}. Boards do not tell whose turn it is, so the players
+	 * to move are taken to be those with available moves; finished games have none, so their keys
+	 * can differ from the state's own key.
+	 *
+	 * @param board the board, e.g an {@link ImmutableBoard} snapshot of a game state
+	 * @param mrXLocation the location of MrX, which boards do not reveal
+	 * @return the key of the position
+	 */
+	public static long key(@Nonnull Board board, int mrXLocation) {
+		Objects.requireNonNull(board);
+		long key = 0;
+		for (Piece piece : board.getPlayers()) {
+			int location = piece.isMrX() ? mrXLocation :
+					board.getDetectiveLocation((Piece.Detective) piece).orElseThrow();
+			key ^= location(piece, location);
+			key ^= tickets(piece, board.getPlayerTickets(piece).orElseThrow());
+		}
+		var log = board.getMrXTravelLog();
+		for (int i = 0; i < log.size(); i++)
+			key ^= log(i, log.get(i).ticket(), log.get(i).location().orElse(-1));
+		int[] toMove = {0};
+		board.forEachAvailableMove(new MoveConsumer() {
+			@Override public void acceptSingle(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket, int destination) {
+				toMove[0] |= 1 << index(piece);
+			}
+			@Override public void acceptDouble(@Nonnull Piece piece, int source,
+			                                   @Nonnull Ticket ticket1, int destination1,
+			                                   @Nonnull Ticket ticket2, int destination2) {
+				toMove[0] |= 1 << index(piece);
+			}
+		});
+		for (int i = 0; i < PIECES; i++)
+			if ((toMove[0] & 1 << i) != 0) key ^= toMove(ScotlandYard.ALL_PIECES.get(i));
+		return key;
+	}
+
+}
@@ -3,7 +3,6 @@ package uk.ac.bris.cs.scotlandyard.ui.controller;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import net.kurobako.gesturefx.GesturePane;
 import net.kurobako.gesturefx.GesturePane.FitMode;
@@ -15,9 +14,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -51,7 +53,10 @@ import uk.ac.bris.cs.fxkit.interpolator.DecelerateInterpolator;
 import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.ResourceManager.ImageResource;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutors;
+import uk.ac.bris.cs.scotlandyard.model.AnytimeAi;
 import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveView;
 import uk.ac.bris.cs.scotlandyard.model.Model;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
@@ -188,10 +193,8 @@ class MapController implements Controller, GameControl {
 			detectiveAi = config.getDetectivesAi();
 			mrXAi.forEach(Ai::onStart);
 			detectiveAi.forEach(Ai::onStart);
-			return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-					.setNameFormat("ai-thread-%d")
-					.setUncaughtExceptionHandler((t, e) -> Utils.handleFatalException(new RuntimeException("An ai instance crashed on thread " + t.getName(), e)))
-					.build());
+			return AiExecutors.newExecutor(AiExecutors.defaultMode(), "ai-thread-",
+					(t, e) -> Utils.handleFatalException(new RuntimeException("An ai instance crashed on thread " + t.getName(), e)));
 		}));
 		advanceModel(model);
 	}
@@ -218,13 +221,29 @@ class MapController implements Controller, GameControl {
 
 	double maxLength() { return Math.max(root.getWidth(), root.getHeight()); }
 
-	Runnable requestAi(Model board, Ai ai) {
-		//var terminate = new AtomicBoolean(false);
+	/**
+	 * @return the action at the deadline, true if a move was played after all: the one the Ai
+	 * returned just in time or the latest one an {@link AnytimeAi} published
+	 */
+	BooleanSupplier requestAi(Model board, Ai ai) {
+		// set by whichever of the Ai and the deadline comes first, the other one backs off
+		var settled = new AtomicBoolean(false);
+		var latest = new AtomicReference<Move>();
 		var moves = board.getCurrentBoard().getAvailableMoves();
 		drawMoveHighlights(moves);
-		aiExecutor.forEach(x -> x.submit(() -> {
+		// detectives must not see where MrX is
+		boolean detectives = moves.stream().anyMatch(m -> m.commencedBy().isDetective());
+		Option<Future<?>> request = aiExecutor.map(x -> x.submit(() -> {
 			try {
-				final var move = ai.pickMove(board.getCurrentBoard(), new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS));
+				Board current = board.getCurrentBoard();
+				Board view = detectives ? DetectiveView.of(current) : current;
+				var timeoutPair = new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS);
+				final var move = ai instanceof AnytimeAi ?
+						((AnytimeAi) ai).pickMove(view, timeoutPair, m -> {
+							if (moves.contains(m)) latest.set(m);
+						}) :
+						ai.pickMove(view, timeoutPair);
+				if (!settled.compareAndSet(false, true)) return;
 				if (!moves.contains(move)) {
 					Utils.handleFatalException(
 							new Exception("Ai(" + ai.name() + ") selected an invalid move, got: " + move + ", was expecting one of " + moves));
@@ -232,22 +251,22 @@ class MapController implements Controller, GameControl {
 					Platform.runLater(() -> selectAndMove(board, move));
 				}
 			} catch (Exception e) {
+				// an Ai bailing out of a cancelled request is expected
+				if (!settled.compareAndSet(false, true)) return;
 				Utils.handleFatalException(new Exception("Ai(" + ai.name() + ") " +
 						"threw an exception while picking a move", e));
 			}
-		}, aiExecutor));
-		return () -> handleAITimeOut(ai);
-	}
-
-	private void handleAITimeOut(Ai ai) {
-		aiExecutor.forEach(x -> {
-			try {
-				x.awaitTermination(1l, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Utils.handleFatalException(
-						new Exception("Ai(" + ai.name() + ") was interrupted during the bail-out grace period.", e));
-			}
-		});
+		}));
+		// cancel at the deadline instead of waiting for the Ai
+		return () -> {
+			// the Ai answered first, its move is on the way
+			if (!settled.compareAndSet(false, true)) return true;
+			request.forEach(f -> f.cancel(true));
+			Move move = latest.get();
+			if (move == null) return false;
+			Platform.runLater(() -> selectAndMove(board, move));
+			return true;
+		};
 	}
 
 	Runnable requestHuman(ImmutableSet<Move> moves, Consumer<Move> moveCallback) {
@@ -290,14 +309,18 @@ class MapController implements Controller, GameControl {
 
 		if (mrX) counters.get(MRX).animateVisibility(true);
 
-		final Runnable terminateAction;
+		final BooleanSupplier terminateAction;
 		if (mrX && mrXAi.isDefined()) {
 			terminateAction = requestAi(board, mrXAi.get());
 		} else if (!mrX && detectiveAi.isDefined()) {
 			terminateAction = requestAi(board, detectiveAi.get());
 		} else {
-			terminateAction = requestHuman(
+			Runnable terminateHuman = requestHuman(
 					board.getCurrentBoard().getAvailableMoves(), m -> selectAndMove(model, m));
+			terminateAction = () -> {
+				terminateHuman.run();
+				return false;
+			};
 		}
 
 		notifications.show("notify_timeout",
@@ -305,9 +328,9 @@ class MapController implements Controller, GameControl {
 						"Waiting for " + pieces + " to make a move").create(
 						Duration.millis(config.timeoutProperty().get().toMillis()),
 						() -> {
-							terminateAction.run();
+							boolean played = terminateAction.getAsBoolean();
 							notifications.dismissAll();
-							timeout.accept(pieces.stream().anyMatch(Piece::isMrX) ?
+							if (!played) timeout.accept(pieces.stream().anyMatch(Piece::isMrX) ?
 									board.getCurrentBoard().getPlayers().stream()
 											.filter(Piece::isDetective)
 											.collect(ImmutableSet.toImmutableSet()) :
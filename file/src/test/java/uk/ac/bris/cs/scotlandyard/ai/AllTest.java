@@ -0,0 +1,16 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all test for the shipped AIs
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		MonteCarloAiTest.class,
+		TranspositionTableTest.class,
+		AlphaBetaMrXAiTest.class,
+		InformationSetMctsAiTest.class
+})
+public class AllTest {}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveView;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link AlphaBetaMrXAi}
+ */
+public class AlphaBetaMrXAiTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static GameState standardStart() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(BLUE, defaultDetectiveTickets(), 13),
+						new Player(GREEN, defaultDetectiveTickets(), 29)));
+	}
+
+	private static boolean adjacent(int a, int b) {
+		return setup.graph.hasEdgeConnecting(a, b);
+	}
+
+	private static boolean taxi(int a, int b) {
+		return adjacent(a, b) && setup.graph.edgeValue(a, b).orElseThrow().contains(Transport.TAXI);
+	}
+
+	@Test public void testPlaysWithinTimeout() {
+		var ai = new AlphaBetaMrXAi(16);
+		GameState state = standardStart();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, new Pair<>(200L, TimeUnit.MILLISECONDS));
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(200));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.lastDepth()).isPositive();
+		assertThat(ai.lastNodes()).isPositive();
+		assertThat(ai.nodesPerSecond()).isPositive();
+	}
+
+	@Test public void testPublishesBestMoveOfEachIteration() {
+		var ai = new AlphaBetaMrXAi(16);
+		GameState state = standardStart();
+		List<Move> published = new ArrayList<>();
+		Move move = ai.search(state, Long.MAX_VALUE, 4, published::add);
+		assertThat(published).hasSize(ai.lastDepth());
+		assertThat(state.getAvailableMoves()).containsAll(published);
+		assertThat(published.get(published.size() - 1)).isEqualTo(move);
+	}
+
+	@Test public void testAvoidsCapture() {
+		// MrX can go to one of two taxi neighbours, a detective guards the first of them
+		int mrX = 1;
+		var neighbours = setup.graph.adjacentNodes(mrX).stream()
+				.filter(n -> taxi(mrX, n)).sorted().toArray(Integer[]::new);
+		int guarded = neighbours[0];
+		int safe = neighbours[1];
+		int red = setup.graph.nodes().stream()
+				.filter(n -> n != mrX && n != safe && taxi(n, guarded) && !adjacent(n, safe))
+				.findFirst().orElseThrow();
+		var mrXTickets = ImmutableMap.of(Ticket.TAXI, 2, Ticket.BUS, 0,
+				Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+		var redTickets = ImmutableMap.of(Ticket.TAXI, 5, Ticket.BUS, 0,
+				Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+		GameState state = new MyGameStateFactory().build(setup, new Player(MRX, mrXTickets, mrX),
+				ImmutableList.of(new Player(RED, redTickets, red)));
+		assertThat(state.getAvailableMoves()).hasSize(neighbours.length);
+		Move move = new AlphaBetaMrXAi(16).search(state, Long.MAX_VALUE, 2);
+		assertThat(move).isNotEqualTo(new SingleMove(MRX, mrX, Ticket.TAXI, guarded));
+	}
+
+	@Test public void testFixedDepthIsDeterministicAndTableSavesNodes() {
+		GameState state = standardStart();
+		var first = new AlphaBetaMrXAi(16);
+		Move a = first.search(state, Long.MAX_VALUE, 4);
+		long fresh = first.lastNodes();
+		Move b = new AlphaBetaMrXAi(16).search(state, Long.MAX_VALUE, 4);
+		assertThat(a).isEqualTo(b);
+		// the second search of the same position finds the results of the first
+		Move c = first.search(state, Long.MAX_VALUE, 4);
+		assertThat(c).isEqualTo(a);
+		assertThat(first.lastNodes()).isLessThan(fresh);
+		assertThat(first.lastDepth()).isEqualTo(4);
+	}
+
+	@Test public void testStopsWhenInterrupted() {
+		var ai = new AlphaBetaMrXAi(16);
+		GameState state = standardStart();
+		Thread.currentThread().interrupt();
+		try {
+			long start = System.nanoTime();
+			Move move = ai.search(state, Long.MAX_VALUE, AlphaBetaMrXAi.MAX_PLY);
+			assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+			assertThat(state.getAvailableMoves()).contains(move);
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test public void testPlaysDetectivesOnTheirView() {
+		GameState state = standardStart();
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+		Move move = new AlphaBetaMrXAi(16).search(DetectiveView.of(state), deadline, 1);
+		assertThat(state.getAvailableMoves()).contains(move);
+	}
+}
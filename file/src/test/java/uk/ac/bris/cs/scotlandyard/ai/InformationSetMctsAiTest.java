@@ -0,0 +1,138 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MapGenerator;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link InformationSetMctsAi}
+ */
+public class InformationSetMctsAiTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static ImmutableList<Player> detectives() {
+		return ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 13),
+				new Player(GREEN, defaultDetectiveTickets(), 29));
+	}
+
+	private static int taxiNeighbour(int station, int except) {
+		return setup.graph.adjacentNodes(station).stream()
+				.filter(n -> n != except)
+				.filter(n -> setup.graph.edgeValue(station, n).orElseThrow()
+						.contains(Transport.TAXI))
+				.findFirst().orElseThrow();
+	}
+
+	// MrX starts at the station and takes a taxi to its first taxi neighbour
+	private static GameState afterMrXTaxi(GameSetup setup, int mrX,
+	                                      ImmutableMap<Ticket, Integer> tickets,
+	                                      ImmutableList<Player> detectives) {
+		GameState state = new MyGameStateFactory().build(setup, new Player(MRX, tickets, mrX),
+				detectives);
+		return state.advance(new SingleMove(MRX, mrX, Ticket.TAXI, taxiNeighbour(mrX, -1)));
+	}
+
+	@Test public void testPicksDetectiveMoveWithinTimeout() {
+		var ai = new InformationSetMctsAi(2, 1);
+		GameState state = afterMrXTaxi(setup, 45, defaultMrXTickets(), detectives());
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.lastIterations()).isPositive();
+		assertThat(ai.lastCandidates()).isGreaterThan(1);
+		assertThat(ai.iterationsPerSecond()).isPositive();
+		ai.onTerminate();
+	}
+
+	@Test public void testPlansEveryDetectiveOfTheRound() {
+		var ai = new InformationSetMctsAi(1, 3);
+		GameState state = afterMrXTaxi(setup, 45, defaultMrXTickets(), detectives());
+		state = state.advance(ai.search(state, Long.MAX_VALUE, 2000));
+		assertThat(ai.lastIterations()).isEqualTo(2000);
+		for (int i = 1; i < detectives().size(); i++) {
+			state = state.advance(ai.search(state, Long.MAX_VALUE, 2000));
+			// the rest of the round comes from the plan
+			assertThat(ai.lastIterations()).isZero();
+		}
+		assertThat(state.getAvailableMoves().iterator().next().commencedBy()).isEqualTo(MRX);
+	}
+
+	@Test public void testMovesDoNotDependOnMrXsRealLocation() {
+		// two games the detectives cannot tell apart: MrX took a hidden taxi from different stations
+		GameState a = afterMrXTaxi(setup, 45, defaultMrXTickets(), detectives());
+		GameState b = afterMrXTaxi(setup, 51, defaultMrXTickets(), detectives());
+		assertThat(a.getMrXTravelLog()).isEqualTo(b.getMrXTravelLog());
+		Move moveA = new InformationSetMctsAi(1, 5).search(a, Long.MAX_VALUE, 1500);
+		Move moveB = new InformationSetMctsAi(1, 5).search(b, Long.MAX_VALUE, 1500);
+		assertThat(moveA).isEqualTo(moveB);
+	}
+
+	@Test public void testCatchesRevealedMrX() {
+		var revealFirst = new GameSetup(setup.graph, ImmutableList.<Boolean>builder()
+				.add(true).addAll(Collections.nCopies(23, false)).build());
+		int mrX = 1;
+		int after = taxiNeighbour(mrX, -1);
+		int red = taxiNeighbour(after, mrX);
+		var tickets = ImmutableMap.of(Ticket.TAXI, 1, Ticket.BUS, 0,
+				Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+		GameState state = afterMrXTaxi(revealFirst, mrX, tickets,
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), red)));
+		Move move = new InformationSetMctsAi(1, 1).search(state, Long.MAX_VALUE, 1000);
+		assertThat(move).isEqualTo(new SingleMove(RED, red, Ticket.TAXI, after));
+	}
+
+	@Test public void testRejectsMapsTooLargeToEncode() {
+		var large = new GameSetup(MapGenerator.generate(50_000, 3).graph(),
+				ScotlandYard.STANDARD24MOVES);
+		GameState state = new MyGameStateFactory().build(large,
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 40_000)));
+		GameState detectivesTurn = state.advance(state.getAvailableMoves().iterator().next());
+		assertThatThrownBy(() -> new InformationSetMctsAi(1, 1)
+				.search(detectivesTurn, Long.MAX_VALUE, 200))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("cannot be encoded");
+	}
+
+	@Test public void testPlaysMrXByAlphaBeta() {
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45), detectives());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+		Move move = new InformationSetMctsAi(1, 1).search(state, deadline, 10);
+		assertThat(state.getAvailableMoves()).contains(move);
+	}
+}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveView;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ImmutableBoard;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchPool;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link MonteCarloAi}
+ */
+public class MonteCarloAiTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static GameState standardStart() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(BLUE, defaultDetectiveTickets(), 13)));
+	}
+
+	private static int taxiNeighbour(int station, int except) {
+		return setup.graph.adjacentNodes(station).stream()
+				.filter(n -> n != except)
+				.filter(n -> setup.graph.edgeValue(station, n).orElseThrow()
+						.contains(Transport.TAXI))
+				.findFirst().orElseThrow();
+	}
+
+	@Test public void testPicksAvailableMoveWithinTimeout() {
+		var ai = new MonteCarloAi(2, 1);
+		GameState state = standardStart();
+		for (int i = 0; i < 3; i++) {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+			assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+			assertThat(state.getAvailableMoves()).contains(move);
+			assertThat(ai.lastIterations()).isPositive();
+			state = state.advance(move);
+		}
+		assertThat(ai.iterationsPerSecond()).isPositive();
+		assertThat(SearchPool.shared().usage(ai.name()).turns()).isGreaterThanOrEqualTo(3);
+		ai.onTerminate();
+	}
+
+	@Test public void testDetectivesTakeTheCapture() {
+		int mrX = 1;
+		int after = taxiNeighbour(mrX, -1);
+		int red = taxiNeighbour(after, mrX);
+		var tickets = ImmutableMap.of(Ticket.TAXI, 1, Ticket.BUS, 0,
+				Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, tickets, mrX),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), red)));
+		state = state.advance(state.getAvailableMoves().stream()
+				.filter(m -> m.accept(new Move.FunctionalVisitor<>(s -> s.destination, d -> -1)) == after)
+				.findFirst().orElseThrow());
+		Move move = new MonteCarloAi(1, 1).search(state, Long.MAX_VALUE, 2000);
+		assertThat(move).isEqualTo(new SingleMove(RED, red, Ticket.TAXI, after));
+	}
+
+	@Test public void testSingleThreadedSearchIsDeterministic() {
+		GameState state = standardStart();
+		Move a = new MonteCarloAi(1, 42).search(state, Long.MAX_VALUE, 300);
+		Move b = new MonteCarloAi(1, 42).search(state, Long.MAX_VALUE, 300);
+		assertThat(a).isEqualTo(b);
+	}
+
+	@Test public void testPublishesMostVisitedMove() {
+		GameState state = standardStart();
+		List<Move> published = new ArrayList<>();
+		Move move = new MonteCarloAi(1, 42).search(state, Long.MAX_VALUE, 1024, published::add);
+		assertThat(published).hasSize(4);
+		assertThat(state.getAvailableMoves()).containsAll(published);
+		assertThat(published.get(published.size() - 1)).isEqualTo(move);
+	}
+
+	@Test public void testReusesSubtreeOfNextPosition() {
+		var ai = new MonteCarloAi(1, 7);
+		GameState state = new PackedGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 91)));
+		Move mrX = ai.search(state, Long.MAX_VALUE, 3000);
+		assertThat(ai.lastReusedVisits()).isZero();
+		state = state.advance(mrX);
+		// the detective's most likely reply has been explored below MrX's move
+		Move red = new MonteCarloAi(1, 3).search(state, Long.MAX_VALUE, 3000);
+		state = state.advance(red);
+		ai.search(state, Long.MAX_VALUE, 100);
+		assertThat(ai.lastReusedVisits()).isPositive();
+	}
+
+	@Test public void testPlaysDetectivesOnTheirView() {
+		GameState state = standardStart();
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		Move move = new MonteCarloAi(1, 1).search(DetectiveView.of(state), Long.MAX_VALUE, 500);
+		assertThat(state.getAvailableMoves()).contains(move);
+	}
+
+	@Test public void testRejectsBoardsThatAreNotGameStates() {
+		var ai = new MonteCarloAi(1, 1);
+		GameState state = standardStart();
+		assertThatThrownBy(() -> ai.search(new ImmutableBoard(state), Long.MAX_VALUE, 10))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
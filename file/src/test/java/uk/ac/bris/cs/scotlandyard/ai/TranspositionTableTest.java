@@ -0,0 +1,56 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link TranspositionTable}
+ */
+public class TranspositionTableTest {
+
+	@Test public void testStoredEntryRoundTrips() {
+		var table = new TranspositionTable(4);
+		table.store(0x1234_5678_9ABC_DEF0L, 0x8301_0203, -123_456, 7, TranspositionTable.LOWER);
+		long entry = table.probe(0x1234_5678_9ABC_DEF0L);
+		assertThat(TranspositionTable.move(entry)).isEqualTo(0x8301_0203);
+		assertThat(TranspositionTable.score(entry)).isEqualTo(-123_456);
+		assertThat(TranspositionTable.depth(entry)).isEqualTo(7);
+		assertThat(TranspositionTable.bound(entry)).isEqualTo(TranspositionTable.LOWER);
+	}
+
+	@Test public void testOtherKeyInSameSlotMisses() {
+		var table = new TranspositionTable(4);
+		table.store(1, 5, 10, 3, TranspositionTable.EXACT);
+		assertThat(table.probe(1 + (1L << 40))).isZero();
+		assertThat(table.probe(2)).isZero();
+	}
+
+	@Test public void testShallowerResultDoesNotReplaceDeeper() {
+		var table = new TranspositionTable(4);
+		table.store(1, 5, 10, 6, TranspositionTable.EXACT);
+		table.store(1, 6, 20, 2, TranspositionTable.EXACT);
+		assertThat(TranspositionTable.move(table.probe(1))).isEqualTo(5);
+		table.store(1, 7, 30, 6, TranspositionTable.UPPER);
+		assertThat(TranspositionTable.score(table.probe(1))).isEqualTo(30);
+		// another position always replaces
+		table.store(1 + (1L << 40), 8, 40, 1, TranspositionTable.EXACT);
+		assertThat(table.probe(1)).isZero();
+	}
+
+	@Test public void testClearForgets() {
+		var table = new TranspositionTable(4);
+		table.store(1, 5, 10, 6, TranspositionTable.EXACT);
+		table.clear();
+		assertThat(table.probe(1)).isZero();
+	}
+
+	@Test public void testScoreOutOfRangeThrows() {
+		var table = new TranspositionTable(4);
+		assertThatThrownBy(() -> table.store(1, 0, TranspositionTable.MAX_SCORE + 1, 1,
+				TranspositionTable.EXACT)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TranspositionTable(0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
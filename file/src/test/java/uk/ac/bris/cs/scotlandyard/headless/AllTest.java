@@ -0,0 +1,14 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all test for the headless game runner
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		SimulatorTest.class,
+		GameServerTest.class
+})
+public class AllTest {}
@@ -0,0 +1,216 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.MoveEncoding;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link GameServer}, {@link GameClient} and {@link ServerLoad}
+ */
+public class GameServerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static GameSetup setup;
+	private GameServer server;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Before public void startServer() throws IOException {
+		server = GameServer.builder().setup(setup).window(2).build();
+	}
+
+	@After public void stopServer() { server.close(); }
+
+	private static final class Recorder implements GameClient.Listener {
+		final List<Integer> moves = new ArrayList<>();
+		Side winner;
+
+		@Override public synchronized void onMoveMade(int session, int move) { moves.add(move); }
+
+		@Override public synchronized void onGameOver(int session, int move, @Nonnull Side winner) {
+			moves.add(move);
+			this.winner = winner;
+		}
+	}
+
+	// plays random moves through the client and the same moves on a local model
+	private static void playAgainstLocalModel(GameClient client, int seed) throws IOException {
+		var recorder = new Recorder();
+		client.addListener(recorder);
+		int session = client.newSession(seed);
+		Model local = new MyModelFactory().build(setup, Simulator.mrX(seed),
+				Simulator.detectives(seed, ScotlandYard.DETECTIVES.size()));
+		var random = new SplittableRandom(seed);
+		List<Integer> made = new ArrayList<>();
+		while (true) {
+			var moves = client.moves(session);
+			assertThat(moves.stream().mapToObj(MoveEncoding::decode))
+					.containsExactlyInAnyOrderElementsOf(
+							local.getCurrentBoard().getWinner().isEmpty() ?
+									local.getCurrentBoard().getAvailableMoves() : List.of());
+			if (moves.isEmpty()) break;
+			int move = moves.get(random.nextInt(moves.length()));
+			client.move(session, move);
+			local.chooseMove(MoveEncoding.decode(move));
+			made.add(move);
+		}
+		synchronized (recorder) {
+			assertThat(recorder.moves).isEqualTo(made);
+			assertThat(recorder.winner).isEqualTo(
+					local.getCurrentBoard().getWinner().contains(Piece.MrX.MRX) ?
+							Side.MRX : Side.DETECTIVES);
+		}
+		client.endSession(session);
+	}
+
+	@Test public void testInProcessGameMatchesLocalModel() throws IOException {
+		try (GameClient client = server.connect()) {
+			playAgainstLocalModel(client, 7);
+		}
+		assertThat(server.sessionsStarted()).isEqualTo(1);
+		assertThat(server.sessionsFinished()).isEqualTo(1);
+		assertThat(server.movesMade()).isPositive();
+	}
+
+	@Test public void testTcpGame() throws IOException {
+		SocketAddress address = server.listen(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		try (GameClient client = GameClient.connect(address)) {
+			playAgainstLocalModel(client, 3);
+		}
+	}
+
+	@Test public void testUnixDomainSocketGame() throws IOException {
+		SocketAddress address = server.listen(
+				UnixDomainSocketAddress.of(folder.getRoot().toPath().resolve("server.sock")));
+		try (GameClient client = GameClient.connect(address)) {
+			playAgainstLocalModel(client, 5);
+		}
+	}
+
+	@Test public void testRejectedRequests() throws IOException {
+		try (GameClient client = server.connect(); GameClient other = server.connect()) {
+			int session = client.newSession(1);
+			assertThatThrownBy(() -> client.moves(session + 1))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageContaining("No session");
+			// sessions belong to their connection
+			assertThatThrownBy(() -> other.moves(session))
+					.isInstanceOf(IllegalArgumentException.class);
+			int detectiveMove = MoveEncoding.single(Piece.Detective.RED, 1, Ticket.TAXI, 8);
+			assertThatThrownBy(() -> client.move(session, detectiveMove))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageContaining("Illegal move");
+			client.endSession(session);
+			assertThatThrownBy(() -> client.moves(session))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test public void testMalformedRequests() throws IOException {
+		Lines[] pipe = Lines.pipe(8);
+		server.serve(pipe[0]);
+		Lines client = pipe[1];
+		client.writeLine("1 JUMP 3");
+		assertThat(client.readLine()).startsWith("1 ERROR Unknown command");
+		client.writeLine("2 NEW");
+		assertThat(client.readLine()).startsWith("2 ERROR Missing argument");
+		client.writeLine("3 NEW x");
+		assertThat(client.readLine()).startsWith("3 ERROR");
+		client.writeLine("garbage");
+		assertThat(client.readLine()).startsWith("? ERROR Malformed");
+		client.writeLine("4 NEW 1");
+		assertThat(client.readLine()).matches("4 OK \\d+");
+		client.close();
+	}
+
+	@Test public void testSlowClientIsHeldBack() throws Exception {
+		Lines[] pipe = Lines.pipe(4);
+		server.serve(pipe[0]);
+		var client = (Lines.QueueLines) pipe[1];
+		client.writeLine("0 NEW 1");
+		String session = client.readLine().split(" ")[2];
+		int requests = 200;
+		var written = new AtomicInteger();
+		Thread writer = new Thread(() -> {
+			try {
+				for (int i = 1; i <= requests; i++) {
+					client.writeLine(i + " MOVES " + session);
+					written.incrementAndGet();
+				}
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		});
+		writer.setDaemon(true);
+		writer.start();
+		// wait until the server stops taking requests
+		int last;
+		do {
+			last = written.get();
+			Thread.sleep(200);
+		} while (written.get() != last);
+		assertThat(writer.isAlive()).isTrue();
+		// both pipe directions, the window and the request being read
+		assertThat(last).isLessThanOrEqualTo(4 + 4 + 2 + 2);
+		for (int i = 1; i <= requests; i++)
+			assertThat(client.readLine()).startsWith(i + " OK ");
+		writer.join(10_000);
+		assertThat(written.get()).isEqualTo(requests);
+	}
+
+	@Test public void testClosedConnectionFailsRequests() throws IOException {
+		GameClient client = server.connect();
+		int session = client.newSession(1);
+		server.close();
+		assertThatThrownBy(() -> client.moves(session)).isInstanceOf(IOException.class);
+		client.close();
+	}
+
+	@Test public void testLoadPlaysEverySession() throws Exception {
+		ServerLoad load = ServerLoad.run(server::connect, 3, 4, 0);
+		assertThat(load.sessions()).isEqualTo(12);
+		assertThat(server.sessionsFinished()).isEqualTo(12);
+		assertThat(load.moves()).isEqualTo(server.movesMade());
+		assertThat(load.latencyNanos(99)).isBetween(load.latencyNanos(50), load.latencyNanos(100));
+		assertThat(load.sessionsPerSecond()).isPositive();
+	}
+
+	@Test public void testBadSetupThrows() {
+		assertThatThrownBy(() -> GameServer.builder().window(0))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> GameServer.builder().detectiveCount(6))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
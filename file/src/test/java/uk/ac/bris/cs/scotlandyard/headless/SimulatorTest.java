@@ -0,0 +1,208 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Forfeit;
+import uk.ac.bris.cs.scotlandyard.headless.GameResult.Side;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AnytimeAi;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.PackedGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link Simulator}
+ */
+public class SimulatorTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	public static final class FirstMoveAi implements Ai {
+		@Nonnull @Override public String name() { return "First move"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			return board.getAvailableMoves().asList().get(0);
+		}
+	}
+
+	public static final class SlowAi implements Ai {
+		@Nonnull @Override public String name() { return "Slow"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			try {
+				Thread.sleep(timeoutPair.right().toMillis(timeoutPair.left()) * 10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return board.getAvailableMoves().asList().get(0);
+		}
+	}
+
+	// publishes a move, then never returns in time
+	public static final class SlowAnytimeAi implements AnytimeAi {
+		@Nonnull @Override public String name() { return "Slow anytime"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair,
+		                                        @Nonnull Consumer<Move> bestSoFar) {
+			bestSoFar.accept(board.getAvailableMoves().asList().get(0));
+			return new SlowAi().pickMove(board, timeoutPair);
+		}
+	}
+
+	// publishes only a move that is not available
+	public static final class SlowIllegalAnytimeAi implements AnytimeAi {
+		@Nonnull @Override public String name() { return "Slow illegal anytime"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair,
+		                                        @Nonnull Consumer<Move> bestSoFar) {
+			bestSoFar.accept(new IllegalMoveAi().pickMove(board, timeoutPair));
+			return new SlowAi().pickMove(board, timeoutPair);
+		}
+	}
+
+	public static final class IllegalMoveAi implements Ai {
+		@Nonnull @Override public String name() { return "Illegal"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			Move move = board.getAvailableMoves().asList().get(0);
+			return new SingleMove(move.commencedBy(), move.source(),
+					ScotlandYard.Ticket.TAXI, move.source());
+		}
+	}
+
+	public static final class ThrowingAi implements Ai {
+		@Nonnull @Override public String name() { return "Throwing"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			throw new IllegalStateException("No moves for you");
+		}
+	}
+
+	// counts the boards a detective could have advanced to look for MrX
+	public static final class PeekingAi implements Ai {
+		static final AtomicInteger peeks = new AtomicInteger();
+		@Nonnull @Override public String name() { return "Peeking"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			if (board instanceof GameState) peeks.incrementAndGet();
+			return board.getAvailableMoves().asList().get(0);
+		}
+	}
+
+	private static Simulator.Builder builder(Class<? extends Ai> mrX,
+	                                         Class<? extends Ai> detectives) {
+		return Simulator.builder(Simulator.ai(mrX.getName()), Simulator.ai(detectives.getName()))
+				.setup(setup);
+	}
+
+	@Test public void testParallelBatchMatchesSequentialGames() throws Exception {
+		Report parallel;
+		Report sequential;
+		try (Simulator simulator = builder(FirstMoveAi.class, FirstMoveAi.class)
+				.threads(4).build()) {
+			parallel = simulator.run(0, 12);
+		}
+		try (Simulator simulator = builder(FirstMoveAi.class, FirstMoveAi.class)
+				.engine(new PackedGameStateFactory()).threads(1).build()) {
+			sequential = simulator.run(0, 12);
+		}
+		assertThat(parallel.games()).isEqualTo(12);
+		assertThat(parallel.wins(Side.MRX) + parallel.wins(Side.DETECTIVES)).isEqualTo(12);
+		assertThat(parallel.forfeits()).isEmpty();
+		for (int i = 0; i < 12; i++) {
+			assertThat(parallel.results().get(i).seed).isEqualTo(i);
+			assertThat(parallel.results().get(i).samePlay(sequential.results().get(i)))
+					.as("%s and %s", parallel.results().get(i), sequential.results().get(i))
+					.isTrue();
+		}
+		assertThat(parallel.averageMoves()).isPositive();
+		assertThat(parallel.averageRounds()).isBetween(1.0, 24.0);
+		assertThat(parallel.movesPerSecond()).isPositive();
+	}
+
+	@Test public void testSlowAiLosesByTimeout() throws Exception {
+		try (Simulator simulator = builder(SlowAi.class, FirstMoveAi.class)
+				.timeout(Duration.ofMillis(20)).threads(2).build()) {
+			Report report = simulator.run(0, 2);
+			assertThat(report.wins(Side.DETECTIVES)).isEqualTo(2);
+			assertThat(report.forfeits().count(Forfeit.TIMEOUT)).isEqualTo(2);
+			assertThat(report.totalMoves()).isZero();
+		}
+	}
+
+	@Test public void testSlowAnytimeAiPlaysPublishedMove() throws Exception {
+		try (Simulator simulator = builder(SlowAnytimeAi.class, FirstMoveAi.class)
+				.timeout(Duration.ofMillis(20)).build()) {
+			GameResult result = simulator.play(0);
+			assertThat(result.forfeit()).isEmpty();
+			assertThat(result.moves).isPositive();
+		}
+		try (Simulator simulator = builder(SlowIllegalAnytimeAi.class, FirstMoveAi.class)
+				.timeout(Duration.ofMillis(20)).build()) {
+			GameResult result = simulator.play(0);
+			assertThat(result.forfeit()).contains(Forfeit.TIMEOUT);
+			assertThat(result.moves).isZero();
+		}
+	}
+
+	@Test public void testIllegalMoveAndExceptionForfeit() throws Exception {
+		try (Simulator simulator = builder(FirstMoveAi.class, IllegalMoveAi.class).build()) {
+			GameResult result = simulator.play(3);
+			assertThat(result.winner).isEqualTo(Side.MRX);
+			assertThat(result.forfeit()).contains(Forfeit.ILLEGAL_MOVE);
+			assertThat(result.moves).isEqualTo(1);
+		}
+		try (Simulator simulator = builder(ThrowingAi.class, FirstMoveAi.class).build()) {
+			GameResult result = simulator.play(3);
+			assertThat(result.winner).isEqualTo(Side.DETECTIVES);
+			assertThat(result.forfeit()).contains(Forfeit.ERROR);
+			assertThat(result.error()).get()
+					.isInstanceOf(IllegalStateException.class)
+					.extracting(Throwable::getMessage).isEqualTo("No moves for you");
+		}
+	}
+
+	@Test public void testDetectivesOnlySeeTheirView() throws Exception {
+		PeekingAi.peeks.set(0);
+		try (Simulator simulator = builder(FirstMoveAi.class, PeekingAi.class).build()) {
+			GameResult result = simulator.play(1);
+			assertThat(result.forfeit()).isEmpty();
+			assertThat(result.moves).isPositive();
+		}
+		assertThat(PeekingAi.peeks.get()).isZero();
+	}
+
+	@Test public void testBadArgumentsThrow() {
+		assertThatThrownBy(() -> Simulator.ai(String.class.getName()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> builder(FirstMoveAi.class, FirstMoveAi.class).threads(0))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> builder(FirstMoveAi.class, FirstMoveAi.class).detectiveCount(6))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> builder(FirstMoveAi.class, FirstMoveAi.class)
+				.timeout(Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import uk.ac.bris.cs.scotlandyard.model.AiExecutors.Mode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link AiExecutors}
+ */
+public class AiExecutorsTest {
+
+	private ExecutorService executor;
+
+	@After public void tearDown() {
+		if (executor != null) executor.shutdownNow();
+		System.clearProperty(AiExecutors.PROPERTY);
+	}
+
+	@Test public void testPlatformThreadsAreNamedDaemons() throws Exception {
+		executor = AiExecutors.newExecutor(Mode.PLATFORM, "ai-test-", (t, e) -> {});
+		Thread thread = AiExecutors.call(executor, Thread::currentThread, Duration.ofSeconds(10));
+		assertThat(thread.getName()).startsWith("ai-test-");
+		assertThat(thread.isDaemon()).isTrue();
+	}
+
+	@Test public void testVirtualFallsBackWhenUnavailable() throws Exception {
+		executor = AiExecutors.newExecutor(Mode.VIRTUAL, "ai-test-", (t, e) -> {});
+		Thread thread = AiExecutors.call(executor, Thread::currentThread, Duration.ofSeconds(10));
+		assertThat(thread.getName()).startsWith("ai-test-");
+		assertThat(thread.isDaemon()).isTrue();
+		assertThat(AiExecutors.effectiveMode(Mode.VIRTUAL))
+				.isEqualTo(AiExecutors.virtualThreadsAvailable() ? Mode.VIRTUAL : Mode.PLATFORM);
+		assertThat(AiExecutors.effectiveMode(Mode.PLATFORM)).isEqualTo(Mode.PLATFORM);
+	}
+
+	@Test public void testDefaultModeFromProperty() {
+		assertThat(AiExecutors.defaultMode()).isEqualTo(Mode.PLATFORM);
+		System.setProperty(AiExecutors.PROPERTY, "Virtual");
+		assertThat(AiExecutors.defaultMode()).isEqualTo(Mode.VIRTUAL);
+		System.setProperty(AiExecutors.PROPERTY, "green");
+		assertThatThrownBy(AiExecutors::defaultMode).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testCallReturnsResult() throws Exception {
+		executor = AiExecutors.newExecutor(Mode.PLATFORM, "ai-test-", (t, e) -> {});
+		assertThat(AiExecutors.call(executor, () -> 42, Duration.ofSeconds(10))).isEqualTo(42);
+	}
+
+	@Test public void testCallPropagatesFailure() {
+		executor = AiExecutors.newExecutor(Mode.PLATFORM, "ai-test-", (t, e) -> {});
+		assertThatThrownBy(() -> AiExecutors.call(executor, () -> {
+			throw new IllegalStateException("bad");
+		}, Duration.ofSeconds(10)))
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testCallInterruptsRequestAtDeadline() throws Exception {
+		executor = AiExecutors.newExecutor(Mode.PLATFORM, "ai-test-", (t, e) -> {});
+		var started = new CountDownLatch(1);
+		var interrupted = new CountDownLatch(1);
+		assertThatThrownBy(() -> AiExecutors.call(executor, () -> {
+			started.countDown();
+			try {
+				Thread.sleep(Long.MAX_VALUE);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return null;
+		}, Duration.ofMillis(50))).isInstanceOf(TimeoutException.class);
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+}
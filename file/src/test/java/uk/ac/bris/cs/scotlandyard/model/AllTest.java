@@ -15,6 +15,25 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		GameStateMoveIterationTest.class,
+		GameStateStalledDetectiveTest.class,
+		GameStateDoubleMoveRuleTest.class,
+		GameStateReferenceMovesTest.class,
+		GameStateZobristTest.class,
+		PerftTest.class,
+		DistanceOracleTest.class,
+		ReachabilityTest.class,
+		MrXLocationTrackerTest.class,
+		MrXLocationDistributionTest.class,
+		BinaryGraphTest.class,
+		MapGeneratorTest.class,
+		MoveEncodingTest.class,
+		StationSetTest.class,
+		CompactGraphTest.class,
+		MutableGameStateTest.class,
+		ModelObserverTest.class,
+		AiExecutorsTest.class,
+		DetectiveViewTest.class,
+		SearchPoolTest.class
 })
 public class AllTest {}
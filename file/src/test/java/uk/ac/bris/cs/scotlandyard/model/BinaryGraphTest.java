@@ -0,0 +1,187 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.io.Resources;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link BinaryGraph}
+ */
+public class BinaryGraphTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static String positionText;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		positionText = Resources.toString(Resources.getResource("pos.txt"), StandardCharsets.UTF_8);
+	}
+
+	@Test public void testRoundTripWithPositions() throws IOException {
+		Path file = folder.newFile().toPath();
+		var positions = BinaryGraph.readPositions(positionText);
+		BinaryGraph.write(graph, positions, file);
+		BinaryGraph read = BinaryGraph.read(file);
+		assertThat(read.graph()).isEqualTo(graph);
+		assertThat(read.positions()).isEqualTo(positions);
+		assertThat(read.positions()).hasSize(199);
+	}
+
+	@Test public void testReadArraysAreTheCompactGraph() throws IOException {
+		Path file = folder.newFile().toPath();
+		BinaryGraph.write(graph, ImmutableMap.of(), file);
+		var read = CompactGraph.of(BinaryGraph.read(file).graph());
+		var compact = CompactGraph.of(graph);
+		assertThat(read.nodeCount()).isEqualTo(compact.nodeCount());
+		assertThat(read.nodeBound()).isEqualTo(compact.nodeBound());
+		assertThat(read.edgeCount()).isEqualTo(compact.edgeCount());
+		// in the order of the file rather than of the rebuilt graph, so not compiled again
+		for (int node = 0; node <= compact.nodeBound(); node++) {
+			assertThat(read.contains(node)).isEqualTo(compact.contains(node));
+			assertThat(read.edgeStart(node)).isEqualTo(compact.edgeStart(node));
+		}
+		for (int e = 0; e < compact.edgeCount(); e++) {
+			assertThat(read.target(e)).isEqualTo(compact.target(e));
+			assertThat(read.transports(e)).isEqualTo(compact.transports(e));
+		}
+	}
+
+	@Test public void testRoundTripWithoutPositions() throws IOException {
+		Path file = folder.newFile().toPath();
+		BinaryGraph.write(graph, ImmutableMap.of(), file);
+		BinaryGraph read = BinaryGraph.read(file);
+		assertThat(read.graph()).isEqualTo(graph);
+		assertThat(read.positions()).isEmpty();
+		new GameSetup(read.graph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testConverter() throws IOException {
+		Path text = folder.newFile("graph.txt").toPath();
+		Path pos = folder.newFile("pos.txt").toPath();
+		Path out = folder.getRoot().toPath().resolve("graph.bin");
+		Files.writeString(text, Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		Files.writeString(pos, positionText);
+		assertThat(BinaryGraph.convert(text, pos, out)).isEqualTo(graph);
+		BinaryGraph read = BinaryGraph.read(out);
+		assertThat(read.graph()).isEqualTo(graph);
+		assertThat(read.positions()).isEqualTo(BinaryGraph.readPositions(positionText));
+		// without positions
+		assertThat(BinaryGraph.convert(text, null, out)).isEqualTo(graph);
+		assertThat(BinaryGraph.read(out).positions()).isEmpty();
+	}
+
+	@Test public void testMissingPositionThrows() {
+		assertThatThrownBy(() -> BinaryGraph.write(graph, ImmutableMap.of(1,
+				Map.entry(1, 1)), folder.newFile().toPath()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testBadPositionLinesThrow() {
+		assertThat(BinaryGraph.readPositions("2\n\n1 10 20\n  2 30 40  \n"))
+				.containsOnlyKeys(1, 2);
+		assertThatThrownBy(() -> BinaryGraph.readPositions("2\n1 10 20\n2 30\n"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad position line: 2 30");
+		assertThatThrownBy(() -> BinaryGraph.readPositions("2\n1 10 20 5\n"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad position line: 1 10 20 5");
+		assertThatThrownBy(() -> BinaryGraph.readPositions("2\n1 x 20\n"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad position line: 1 x 20");
+		assertThatThrownBy(() -> BinaryGraph.readPositions("1 10 20\n"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad count line: 1 10 20");
+	}
+
+	@Test public void testCorruptFilesThrow() throws IOException {
+		Path file = folder.newFile().toPath();
+		BinaryGraph.write(graph, ImmutableMap.of(), file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		Path truncated = folder.newFile().toPath();
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+		assertThatThrownBy(() -> BinaryGraph.read(truncated))
+				.isInstanceOf(IllegalArgumentException.class);
+
+		Path text = folder.newFile().toPath();
+		Files.writeString(text, "199 467\n1\n2\n3\n4\n5\n6\n");
+		assertThatThrownBy(() -> BinaryGraph.read(text))
+				.isInstanceOf(IllegalArgumentException.class);
+
+		Path empty = folder.newFile().toPath();
+		assertThatThrownBy(() -> BinaryGraph.read(empty))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	// the standard graph with the first edge of its last station changed
+	private Path withLastEdge(int target, int transports) throws IOException {
+		Path file = folder.newFile().toPath();
+		BinaryGraph.write(graph, ImmutableMap.of(), file);
+		var compact = CompactGraph.of(graph);
+		int bound = compact.nodeBound();
+		int edges = compact.edgeCount();
+		int e = compact.edgeStart(bound - 1);
+		int targets = 6 * Integer.BYTES + Integer.BYTES * (compact.nodeCount() + bound + 1);
+		var buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(targets + e * Integer.BYTES, target);
+		buffer.put(targets + edges * Integer.BYTES + e, (byte) transports);
+		Files.write(file, buffer.array());
+		return file;
+	}
+
+	@Test public void testBadEdgesThrow() throws IOException {
+		var compact = CompactGraph.of(graph);
+		int last = compact.nodeBound() - 1;
+		int target = compact.target(compact.edgeStart(last));
+		int transports = compact.transports(compact.edgeStart(last));
+		// an unchanged edge reads back
+		assertThat(BinaryGraph.read(withLastEdge(target, transports)).graph()).isEqualTo(graph);
+		Path negative = withLastEdge(-1, transports);
+		assertThatThrownBy(() -> BinaryGraph.read(negative))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad target: -1");
+		Path beyond = withLastEdge(last + 1, transports);
+		assertThatThrownBy(() -> BinaryGraph.read(beyond))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad target: " + (last + 1));
+		int stranger = graph.nodes().stream()
+				.filter(n -> n != last && !graph.adjacentNodes(last).contains(n))
+				.findFirst().orElseThrow();
+		Path oneWay = withLastEdge(stranger, transports);
+		assertThatThrownBy(() -> BinaryGraph.read(oneWay))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageStartingWith("Asymmetric edges of station ");
+		Path otherTransport = withLastEdge(target, transports ^ 1);
+		assertThatThrownBy(() -> BinaryGraph.read(otherTransport))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageStartingWith("Asymmetric edges of station ");
+		Path unknownTransport = withLastEdge(target, 0x80);
+		assertThatThrownBy(() -> BinaryGraph.read(unknownTransport))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Bad transports: 128");
+	}
+
+}
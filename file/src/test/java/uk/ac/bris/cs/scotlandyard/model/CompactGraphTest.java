@@ -0,0 +1,111 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests that {@link CompactGraph} has the same adjacency and transports as the Guava graph it
+ * was compiled from
+ */
+public class CompactGraphTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> standard;
+
+	@BeforeClass public static void setUp() throws IOException {
+		standard = ScotlandYard.standardGraph();
+	}
+
+	private static int mask(ImmutableSet<Transport> transports) {
+		int mask = 0;
+		for (Transport t : transports) mask |= 1 << t.ordinal();
+		return mask;
+	}
+
+	private static void assertSameGraph(
+			ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		CompactGraph compact = CompactGraph.of(graph);
+		assertThat(compact.nodeCount()).isEqualTo(graph.nodes().size());
+		assertThat(compact.edgeCount()).isEqualTo(2 * graph.edges().size());
+		int bound = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+		assertThat(compact.nodeBound()).isEqualTo(bound);
+		for (int node = 0; node < bound; node++) {
+			assertThat(compact.contains(node)).isEqualTo(graph.nodes().contains(node));
+			if (!graph.nodes().contains(node)) {
+				assertThat(compact.edgeEnd(node)).isEqualTo(compact.edgeStart(node));
+				continue;
+			}
+			List<Integer> targets = new ArrayList<>();
+			for (int e = compact.edgeStart(node); e < compact.edgeEnd(node); e++) {
+				int target = compact.target(e);
+				targets.add(target);
+				assertThat(compact.transports(e))
+						.as("transports of %d-%d", node, target)
+						.isEqualTo(mask(graph.edgeValue(node, target).orElseThrow()));
+			}
+			assertThat(targets).as("neighbours of %d", node)
+					.containsExactlyElementsOf(graph.adjacentNodes(node));
+		}
+	}
+
+	@Test public void testStandardGraphMatchesGuavaGraph() {
+		assertSameGraph(standard);
+	}
+
+	@Test public void testSparseGraphMatchesGuavaGraph() {
+		// gaps in the station numbers and stations either side of a 64 station boundary
+		assertSameGraph(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(3, 63, ImmutableSet.of(Transport.TAXI, Transport.BUS))
+				.putEdgeValue(63, 64, ImmutableSet.of(Transport.UNDERGROUND))
+				.putEdgeValue(64, 130, ImmutableSet.of(Transport.FERRY))
+				.addNode(0)
+				.build());
+	}
+
+	@Test public void testStationsOutsideGraphHaveNoEdges() {
+		CompactGraph compact = CompactGraph.of(standard);
+		assertThat(compact.contains(0)).isFalse();
+		for (int node : new int[]{-1, 0, compact.nodeBound(), Integer.MAX_VALUE}) {
+			assertThat(compact.contains(node)).isFalse();
+			assertThat(compact.edgeEnd(node)).isEqualTo(compact.edgeStart(node));
+		}
+	}
+
+	@Test public void testCompiledOncePerGraph() {
+		assertThat(CompactGraph.of(standard)).isSameAs(CompactGraph.of(standard));
+	}
+
+	@Test public void testRequiredTickets() {
+		for (Transport t : Transport.values())
+			assertThat(CompactGraph.requiredTickets(1 << t.ordinal()))
+					.isEqualTo(1 << t.requiredTicket().ordinal());
+		assertThat(CompactGraph.requiredTickets(
+				mask(ImmutableSet.of(Transport.TAXI, Transport.BUS))))
+				.isEqualTo(1 << Ticket.TAXI.ordinal() | 1 << Ticket.BUS.ordinal());
+		assertThat(CompactGraph.requiredTickets(mask(ImmutableSet.of(Transport.FERRY))))
+				.isEqualTo(1 << Ticket.SECRET.ordinal());
+		assertThat(CompactGraph.requiredTickets(0)).isZero();
+	}
+
+	@Test public void testNegativeStationThrows() {
+		assertThatThrownBy(() -> CompactGraph.of(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(-1, 1, ImmutableSet.of(Transport.TAXI))
+				.build())).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,104 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link DetectiveView}
+ */
+public class DetectiveViewTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static GameState start(int mrX) {
+		return new MyGameStateFactory().build(setup, new Player(MRX, defaultMrXTickets(), mrX),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(BLUE, defaultDetectiveTickets(), 13)));
+	}
+
+	// everything a detective Ai can ask the view
+	private static List<Object> answers(Board view) {
+		var answers = new ArrayList<Object>();
+		answers.add(view.getSetup());
+		answers.add(view.getPlayers());
+		for (Piece piece : view.getPlayers()) {
+			if (piece.isDetective()) answers.add(view.getDetectiveLocation((Piece.Detective) piece));
+			var tickets = view.getPlayerTickets(piece).orElseThrow();
+			for (Ticket ticket : Ticket.values()) answers.add(tickets.getCount(ticket));
+		}
+		answers.add(view.getMrXTravelLog());
+		answers.add(view.getWinner());
+		answers.add(view.isGameOver());
+		answers.add(view.getAvailableMoves());
+		var moves = new ArrayList<Move>();
+		view.forEachAvailableMove(Board.MoveConsumer.materialising(moves::add));
+		answers.add(moves);
+		answers.add(view.toString());
+		return answers;
+	}
+
+	@Test public void testViewIsNotAGameState() {
+		Board view = DetectiveView.of(start(45));
+		assertThat(view).isNotInstanceOf(GameState.class);
+		assertThat(DetectiveView.of(view)).isSameAs(view);
+	}
+
+	@Test public void testGamesDifferingOnlyInMrXsLocationLookTheSame() {
+		// MrX takes a hidden taxi in both games, from and to different stations
+		GameState a = start(45);
+		a = a.advance(new SingleMove(MRX, 45, Ticket.TAXI, 46));
+		GameState b = start(51);
+		b = b.advance(new SingleMove(MRX, 51, Ticket.TAXI, 52));
+		assertThat(answers(DetectiveView.of(a))).isEqualTo(answers(DetectiveView.of(b)));
+		assertThat(DetectiveView.of(a).getAvailableMoves())
+				.isEqualTo(a.getAvailableMoves()).isNotEmpty();
+	}
+
+	@Test public void testMrXsMovesAreHidden() {
+		GameState state = start(45);
+		Board view = DetectiveView.of(state);
+		assertThat(state.getAvailableMoves()).isNotEmpty();
+		assertThat(view.getAvailableMoves()).isEmpty();
+		var moves = new ArrayList<Move>();
+		view.forEachAvailableMove(Board.MoveConsumer.materialising(moves::add));
+		assertThat(moves).isEmpty();
+		assertThat(answers(view)).isEqualTo(answers(DetectiveView.of(start(51))));
+	}
+
+	@Test public void testViewDoesNotReadTheBoardUntilAsked() {
+		var calls = new ArrayList<String>();
+		GameState state = start(45);
+		Board board = (Board) Proxy.newProxyInstance(Board.class.getClassLoader(),
+				new Class<?>[]{Board.class}, (proxy, method, args) -> {
+					calls.add(method.getName());
+					return method.invoke(state, args);
+				});
+		Board view = DetectiveView.of(board);
+		assertThat(calls).isEmpty();
+		view.getAvailableMoves();
+		view.getAvailableMoves();
+		assertThat(calls).containsExactly("getAvailableMoves");
+	}
+}
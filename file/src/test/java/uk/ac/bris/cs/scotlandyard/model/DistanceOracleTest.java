@@ -0,0 +1,94 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link DistanceOracle}
+ */
+public class DistanceOracleTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static Map<Integer, Integer> bfs(int source, Set<Transport> transports) {
+		Map<Integer, Integer> distances = new HashMap<>();
+		distances.put(source, 0);
+		var queue = new ArrayDeque<Integer>();
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int adjacent : graph.adjacentNodes(node)) {
+				//noinspection ConstantConditions
+				boolean usable = graph.edgeValueOrDefault(node, adjacent, ImmutableSet.of())
+						.stream().anyMatch(transports::contains);
+				if (usable && !distances.containsKey(adjacent)) {
+					distances.put(adjacent, distances.get(node) + 1);
+					queue.add(adjacent);
+				}
+			}
+		}
+		return distances;
+	}
+
+	private static void assertMatchesSearch(Set<Transport> transports) {
+		DistanceOracle oracle = DistanceOracle.of(graph, transports);
+		for (int source : graph.nodes()) {
+			var expected = bfs(source, transports);
+			for (int target : graph.nodes())
+				assertThat(oracle.distance(source, target))
+						.isEqualTo(expected.getOrDefault(target, DistanceOracle.UNREACHABLE));
+		}
+	}
+
+	@Test public void testMatchesBreadthFirstSearch() {
+		assertMatchesSearch(EnumSet.allOf(Transport.class));
+		assertMatchesSearch(EnumSet.of(Transport.TAXI));
+		assertMatchesSearch(EnumSet.complementOf(EnumSet.of(Transport.UNDERGROUND)));
+	}
+
+	@Test public void testOraclesAreCachedPerGraphAndTransports() {
+		assertThat(DistanceOracle.of(graph)).isSameAs(DistanceOracle.of(graph));
+		assertThat(DistanceOracle.of(graph)).isSameAs(
+				DistanceOracle.of(graph, EnumSet.allOf(Transport.class)));
+		assertThat(DistanceOracle.of(graph, EnumSet.of(Transport.TAXI)))
+				.isSameAs(DistanceOracle.of(graph, ImmutableSet.of(Transport.TAXI)))
+				.isNotSameAs(DistanceOracle.of(graph));
+		assertThat(DistanceOracle.of(graph, EnumSet.of(Transport.BUS)).transports())
+				.containsExactly(Transport.BUS);
+	}
+
+	@Test public void testUnknownAndUnconnectedStations() {
+		DistanceOracle oracle = DistanceOracle.of(graph, EnumSet.of(Transport.UNDERGROUND));
+		assertThat(oracle.distance(1, 1)).isZero();
+		// station 2 has no underground
+		assertThat(oracle.distance(1, 2)).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.distance(0, 1)).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.distance(1, 1000)).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+
+	@Test public void testMinDistance() {
+		DistanceOracle oracle = DistanceOracle.of(graph);
+		assertThat(oracle.minDistance(1, 8, 100)).isEqualTo(1);
+		assertThat(oracle.minDistance(1, 1, 8)).isZero();
+		assertThat(oracle.minDistance(1)).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+
+}
@@ -0,0 +1,89 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+
+/**
+ * Tests the exact double moves MrX is offered for the ticket edge cases: each leg of a double
+ * move uses its own ticket, so a leg may be secret whatever the transport of its edge, and two
+ * secret legs, including two ferry legs, need two secret tickets
+ * <br>
+ * MrX starts at 1 on the map 1 - 2 by taxi, 2 - 3 by bus and 2 - 4 by ferry. The detective
+ * waits on 5 - 6, out of the way.
+ */
+public class GameStateDoubleMoveRuleTest extends ParameterisedModelTestBase {
+
+	private static GameSetup setup() {
+		return new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(2, 4, ImmutableSet.of(Transport.FERRY))
+				.putEdgeValue(5, 6, ImmutableSet.of(Transport.TAXI))
+				.build(), STANDARD24MOVES);
+	}
+
+	private ImmutableSet<DoubleMove> doubleMoves(ImmutableMap<Ticket, Integer> tickets) {
+		GameState state = gameStateFactory.build(setup(), new Player(MRX, tickets, 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 5)));
+		return state.getAvailableMoves().stream()
+				.filter(DoubleMove.class::isInstance)
+				.map(DoubleMove.class::cast)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	private static DoubleMove via2(Ticket ticket1, Ticket ticket2, int destination2) {
+		return new DoubleMove(MRX, 1, ticket1, 2, ticket2, destination2);
+	}
+
+	@Test public void testSecretLegWithoutTicketForItsEdge() {
+		// one taxi and one secret ticket, no bus ticket for 2 - 3
+		assertThat(doubleMoves(makeTickets(1, 0, 0, 1, 1))).containsExactlyInAnyOrder(
+				via2(TAXI, SECRET, 1),
+				via2(TAXI, SECRET, 3),
+				via2(TAXI, SECRET, 4),
+				via2(SECRET, TAXI, 1));
+	}
+
+	@Test public void testTwoSecretLegsNeedTwoSecretTickets() {
+		assertThat(doubleMoves(makeTickets(1, 1, 0, 1, 2))).containsExactlyInAnyOrder(
+				via2(TAXI, SECRET, 1),
+				via2(TAXI, BUS, 3),
+				via2(TAXI, SECRET, 3),
+				via2(TAXI, SECRET, 4),
+				via2(SECRET, TAXI, 1),
+				via2(SECRET, SECRET, 1),
+				via2(SECRET, BUS, 3),
+				via2(SECRET, SECRET, 3),
+				via2(SECRET, SECRET, 4));
+	}
+
+	@Test public void testTwoLegsOfTheSameTransportNeedTwoTickets() {
+		assertThat(doubleMoves(makeTickets(1, 0, 0, 1, 0))).isEmpty();
+		assertThat(doubleMoves(makeTickets(2, 0, 0, 1, 0)))
+				.containsExactlyInAnyOrder(via2(TAXI, TAXI, 1));
+	}
+
+	@Test public void testNoDoubleMovesWithoutDoubleTicket() {
+		assertThat(doubleMoves(makeTickets(2, 2, 0, 0, 2))).isEmpty();
+	}
+
+}
@@ -0,0 +1,77 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Board.MoveConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that {@link Board#forEachAvailableMove(MoveConsumer)} enumerates exactly the moves of
+ * {@link Board#getAvailableMoves()}
+ */
+public class GameStateMoveIterationTest extends ParameterisedModelTestBase {
+
+	private static ImmutableList<Move> enumerate(Board board) {
+		List<Move> moves = new ArrayList<>();
+		board.forEachAvailableMove(MoveConsumer.materialising(moves::add));
+		return ImmutableList.copyOf(moves);
+	}
+
+	private static void assertSameMoves(Board board) {
+		var moves = enumerate(board);
+		assertThat(moves).doesNotHaveDuplicates();
+		assertThat(moves).containsExactlyInAnyOrderElementsOf(board.getAvailableMoves());
+	}
+
+	@Test public void testEnumeratedMovesMatchAvailableMovesThroughoutRandomGames() {
+		var random = new Random(42);
+		for (int game = 0; game < 5; game++) {
+			GameState state = gameStateFactory.build(standard24MoveSetup(),
+					new Player(MRX, makeTickets(4, 3, 3, 2, 2), 104),
+					new Player(RED, defaultDetectiveTickets(), 91),
+					new Player(GREEN, defaultDetectiveTickets(), 29),
+					new Player(BLUE, defaultDetectiveTickets(), 94),
+					new Player(WHITE, defaultDetectiveTickets(), 50),
+					new Player(YELLOW, defaultDetectiveTickets(), 138));
+			while (!state.isGameOver()) {
+				assertSameMoves(state);
+				var moves = state.getAvailableMoves().asList();
+				state = state.advance(moves.get(random.nextInt(moves.size())));
+			}
+			assertThat(enumerate(state)).isEmpty();
+		}
+	}
+
+	@Test public void testEnumeratedMovesMatchForFerryRoutes() {
+		// 194 has a ferry to 157, 115 and 108 are ferry stations as well
+		for (int location : new int[]{194, 157, 115, 108}) {
+			GameState state = gameStateFactory.build(standard24MoveSetup(),
+					new Player(MRX, defaultMrXTickets(), location),
+					new Player(RED, defaultDetectiveTickets(), 1));
+			assertSameMoves(state);
+		}
+	}
+
+	@Test public void testDefaultAdapterEnumeratesSnapshot() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		assertSameMoves(new ImmutableBoard(state));
+	}
+
+}
@@ -0,0 +1,110 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+
+/**
+ * Tests that the moves generated from the {@link CompactGraph} are exactly those of a reference
+ * generator walking the Guava graph, throughout random games on the standard map
+ * <br>
+ * The reference states the move rules directly: a single move per ticket held for a transport of
+ * the route, plus a secret move for MrX on any route, to a station no detective is on; a double
+ * move is two such moves of MrX, given a double ticket and two rounds left, where using the same
+ * ticket twice needs two of it. See {@link GameStateDoubleMoveRuleTest} for the edge cases.
+ */
+public class GameStateReferenceMovesTest extends ParameterisedModelTestBase {
+
+	private static int destination(Move move) {
+		return move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+	}
+
+	private static int count(Board board, Piece piece, Ticket ticket) {
+		return board.getPlayerTickets(piece).orElseThrow().getCount(ticket);
+	}
+
+	// the tickets held that take the piece along a route; one spent on a first leg is needed twice
+	private static Set<Ticket> tickets(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                                   Board board, Piece piece, int from, int to,
+	                                   Ticket spent) {
+		Set<Ticket> tickets = EnumSet.noneOf(Ticket.class);
+		for (Transport t : graph.edgeValueOrDefault(from, to, ImmutableSet.of()))
+			tickets.add(t.requiredTicket());
+		if (piece.isMrX()) tickets.add(Ticket.SECRET);
+		tickets.removeIf(t -> count(board, piece, t) < (t == spent ? 2 : 1));
+		return tickets;
+	}
+
+	private static ImmutableSet<Move> reference(GameState state, int mrX) {
+		var graph = state.getSetup().graph;
+		Set<Integer> occupied = state.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(p -> state.getDetectiveLocation((Piece.Detective) p).orElseThrow())
+				.collect(ImmutableSet.toImmutableSet());
+		var movers = state.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+		var moves = ImmutableSet.<Move>builder();
+		for (Piece piece : movers) {
+			int source = piece.isMrX() ? mrX :
+					state.getDetectiveLocation((Piece.Detective) piece).orElseThrow();
+			boolean doubles = piece.isMrX() && count(state, piece, Ticket.DOUBLE) > 0
+					&& state.getSetup().moves.size() - state.getMrXTravelLog().size() >= 2;
+			for (int d1 : graph.adjacentNodes(source)) {
+				if (occupied.contains(d1)) continue;
+				for (Ticket t1 : tickets(graph, state, piece, source, d1, null)) {
+					moves.add(new SingleMove(piece, source, t1, d1));
+					if (!doubles) continue;
+					for (int d2 : graph.adjacentNodes(d1)) {
+						if (occupied.contains(d2)) continue;
+						for (Ticket t2 : tickets(graph, state, piece, d1, d2, t1))
+							moves.add(new DoubleMove(MRX, source, t1, d1, t2, d2));
+					}
+				}
+			}
+		}
+		return moves.build();
+	}
+
+	@Test public void testMovesMatchReferenceThroughoutRandomGames() {
+		var random = new Random(3);
+		for (int game = 0; game < 10; game++) {
+			int mrX = 104;
+			GameState state = gameStateFactory.build(standard24MoveSetup(),
+					new Player(MRX, makeTickets(4, 3, 3, 2, 3), mrX),
+					new Player(RED, defaultDetectiveTickets(), 91),
+					new Player(GREEN, defaultDetectiveTickets(), 29),
+					new Player(BLUE, defaultDetectiveTickets(), 94),
+					new Player(WHITE, defaultDetectiveTickets(), 50),
+					new Player(YELLOW, defaultDetectiveTickets(), 138));
+			while (!state.isGameOver()) {
+				assertThat(state.getAvailableMoves()).isEqualTo(reference(state, mrX));
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = destination(move);
+				state = state.advance(move);
+			}
+		}
+	}
+
+}
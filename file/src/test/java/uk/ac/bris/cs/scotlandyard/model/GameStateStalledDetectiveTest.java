@@ -0,0 +1,102 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that detectives who hold tickets but have no legal move are skipped for the round, and
+ * that MrX wins when no detective can move after his turn, in each engine and in a
+ * {@link MutableGameState} playing the same moves
+ * <br>
+ * The map is a hub with two leaves, 1 - 2 - 3, and a tail 2 - 4 - 5, all by taxi.
+ */
+public class GameStateStalledDetectiveTest extends ParameterisedModelTestBase {
+
+	private static GameSetup hubSetup() {
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(3, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 4, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(4, 5, ImmutableSet.of(Transport.TAXI))
+				.build();
+		return new GameSetup(graph, STANDARD24MOVES);
+	}
+
+	// the pieces that have a move, i.e the remaining pieces of the round
+	@Nonnull private static ImmutableSet<Piece> movers(Board board) {
+		return board.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	// advances the state and makes the same move on its mutable copy, which must agree
+	private static GameState advance(GameState state, MutableGameState mutable, Move move) {
+		GameState next = state.advance(move);
+		mutable.make(move);
+		assertThat(mutable.getWinner()).isEqualTo(next.getWinner());
+		assertThat(movers(mutable)).isEqualTo(movers(next));
+		return next;
+	}
+
+	private static GameState mrXTaxi(GameState state, MutableGameState mutable,
+	                                 int source, int destination) {
+		return advance(state, mutable, new SingleMove(MRX, source, Ticket.TAXI, destination));
+	}
+
+	@Test public void testDetectiveWithoutMoveIsSkippedAfterMrX() {
+		// red only holds bus tickets on a taxi map
+		GameState state = gameStateFactory.build(hubSetup(),
+				new Player(MRX, defaultMrXTickets(), 5),
+				new Player(RED, makeTickets(0, 4, 0, 0, 0), 1),
+				new Player(BLUE, makeTickets(4, 0, 0, 0, 0), 3));
+		var mutable = MutableGameState.of(state, 5);
+		state = mrXTaxi(state, mutable, 5, 4);
+		assertThat(state.getWinner()).isEmpty();
+		assertThat(movers(state)).containsExactly(BLUE);
+	}
+
+	@Test public void testDetectiveBlockedDuringRoundIsSkipped() {
+		GameState state = gameStateFactory.build(hubSetup(),
+				new Player(MRX, defaultMrXTickets(), 5),
+				new Player(RED, makeTickets(4, 0, 0, 0, 0), 1),
+				new Player(BLUE, makeTickets(4, 0, 0, 0, 0), 3));
+		var mutable = MutableGameState.of(state, 5);
+		state = mrXTaxi(state, mutable, 5, 4);
+		assertThat(movers(state)).containsExactlyInAnyOrder(RED, BLUE);
+		// red takes the hub, the only way out of blue's leaf
+		state = advance(state, mutable, new SingleMove(RED, 1, Ticket.TAXI, 2));
+		assertThat(state.getWinner()).isEmpty();
+		assertThat(movers(state)).containsExactly(MRX);
+	}
+
+	@Test public void testMrXWinsWhenNoDetectiveCanMove() {
+		GameState state = gameStateFactory.build(hubSetup(),
+				new Player(MRX, defaultMrXTickets(), 5),
+				new Player(RED, makeTickets(0, 4, 0, 0, 0), 1),
+				new Player(BLUE, makeTickets(0, 0, 4, 0, 0), 3));
+		assertThat(state.getWinner()).isEmpty();
+		var mutable = MutableGameState.of(state, 5);
+		state = mrXTaxi(state, mutable, 5, 4);
+		assertThat(state.getWinner()).containsExactly(MRX);
+		assertThat(state.getAvailableMoves()).isEmpty();
+	}
+
+}
@@ -0,0 +1,81 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that {@link GameState#zobristKey()} is maintained consistently with {@link Zobrist#key}
+ */
+public class GameStateZobristTest extends ParameterisedModelTestBase {
+
+	private static int destination(Move move) {
+		return move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+	}
+
+	@Test public void testIncrementalKeyMatchesSnapshotKeyThroughoutRandomGames() {
+		var random = new Random(8);
+		for (int game = 0; game < 10; game++) {
+			int mrX = 104;
+			GameState state = gameStateFactory.build(standard24MoveSetup(),
+					new Player(MRX, makeTickets(4, 3, 3, 2, 2), mrX),
+					new Player(RED, defaultDetectiveTickets(), 91),
+					new Player(GREEN, defaultDetectiveTickets(), 29),
+					new Player(BLUE, defaultDetectiveTickets(), 94),
+					new Player(WHITE, defaultDetectiveTickets(), 50),
+					new Player(YELLOW, defaultDetectiveTickets(), 138));
+			Map<Long, ImmutableBoard> seen = new HashMap<>();
+			while (!state.isGameOver()) {
+				var snapshot = new ImmutableBoard(state);
+				assertThat(state.zobristKey()).isEqualTo(Zobrist.key(snapshot, mrX));
+				// positions with the same key are the same position
+				ImmutableBoard previous = seen.putIfAbsent(state.zobristKey(), snapshot);
+				if (previous != null) assertThat(previous).isEqualTo(snapshot);
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = destination(move);
+				state = state.advance(move);
+			}
+		}
+	}
+
+	@Test public void testKeyIsMaintained() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 104),
+				new Player(RED, defaultDetectiveTickets(), 1));
+		assertThat(state.hasZobristKey()).isTrue();
+		assertThat(state.advance(new SingleMove(MRX, 104, TAXI, 86)).hasZobristKey()).isTrue();
+	}
+
+	@Test public void testDetectiveMoveOrderTransposes() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 104),
+				new Player(RED, defaultDetectiveTickets(), 1),
+				new Player(GREEN, defaultDetectiveTickets(), 29));
+		state = state.advance(new SingleMove(MRX, 104, TAXI, 86));
+		Move red = new SingleMove(RED, 1, TAXI, 8);
+		Move green = new SingleMove(GREEN, 29, TAXI, 41);
+		GameState redFirst = state.advance(red).advance(green);
+		GameState greenFirst = state.advance(green).advance(red);
+		assertThat(redFirst.zobristKey()).isEqualTo(greenFirst.zobristKey());
+		assertThat(redFirst.zobristKey()).isNotEqualTo(state.zobristKey());
+		assertThat(state.advance(red).zobristKey()).isNotEqualTo(state.advance(green).zobristKey());
+	}
+
+}
@@ -0,0 +1,62 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link MapGenerator}
+ */
+public class MapGeneratorTest {
+
+	@Test public void testSameSeedGeneratesSameMap() {
+		assertThat(MapGenerator.generate(1000, 7).graphText())
+				.isEqualTo(MapGenerator.generate(1000, 7).graphText());
+		assertThat(MapGenerator.generate(1000, 7).positionsText())
+				.isEqualTo(MapGenerator.generate(1000, 7).positionsText());
+		assertThat(MapGenerator.generate(1000, 7).graphText())
+				.isNotEqualTo(MapGenerator.generate(1000, 8).graphText());
+	}
+
+	@Test public void testTextIsReadableAndMatchesGraph() {
+		MapGenerator map = MapGenerator.generate(2000, 1);
+		var graph = ScotlandYard.readGraph(map.graphText());
+		assertThat(graph.nodes()).hasSize(2000);
+		assertThat(graph).isEqualTo(map.graph());
+		var positions = BinaryGraph.readPositions(map.positionsText());
+		assertThat(positions.keySet()).isEqualTo(graph.nodes());
+		assertThat(positions.get(1).getKey()).isEqualTo(map.x(1));
+		assertThat(positions.get(2000).getValue()).isEqualTo(map.y(2000));
+		new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testEveryTransportIsLayered() {
+		MapGenerator map = MapGenerator.generate(5000, 3);
+		for (Transport t : Transport.values()) assertThat(map.routes(t)).as("%s", t).isPositive();
+		// taxi routes dominate like on the standard map
+		assertThat(map.routes(Transport.TAXI)).isGreaterThan(map.routes(Transport.BUS));
+		assertThat(map.routes(Transport.BUS)).isGreaterThan(map.routes(Transport.UNDERGROUND));
+		assertThat(map.routes(Transport.UNDERGROUND)).isGreaterThan(map.routes(Transport.FERRY));
+	}
+
+	@Test public void testEveryStationIsReachableByTaxi() {
+		var graph = MapGenerator.generate(1500, 11).graph();
+		var taxi = DistanceOracle.of(graph, EnumSet.of(Transport.TAXI));
+		for (int station : graph.nodes())
+			assertThat(taxi.distance(1, station)).isNotEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(taxi.transports()).isEqualTo(ImmutableSet.of(Transport.TAXI));
+	}
+
+	@Test public void testBadSizeThrows() {
+		assertThatThrownBy(() -> MapGenerator.generate(1, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link MoveEncoding} and {@link MoveTable}
+ */
+public class MoveEncodingTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static ImmutableSet<Move> movesAt(int mrX) {
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), mrX),
+				new Player(RED, defaultDetectiveTickets(), 1));
+		return state.getAvailableMoves();
+	}
+
+	@Test public void testRoundTripOfAllMrXMoves() {
+		for (int location : ScotlandYard.MRX_LOCATIONS) {
+			var moves = movesAt(location);
+			var codes = moves.stream().map(MoveEncoding::encode)
+					.collect(ImmutableSet.toImmutableSet());
+			// equal moves if and only if equal codes
+			assertThat(codes).hasSameSizeAs(moves);
+			for (Move move : moves) {
+				int code = MoveEncoding.encode(move);
+				assertThat(code).isNotNegative();
+				assertThat(MoveEncoding.decode(code)).isEqualTo(move);
+				assertThat(MoveEncoding.piece(code)).isEqualTo(move.commencedBy());
+				assertThat(MoveEncoding.source(code)).isEqualTo(move.source());
+			}
+		}
+	}
+
+	@Test public void testDetectiveSingleMoveAccessors() {
+		int code = MoveEncoding.single(BLUE, 199, TAXI, 192);
+		assertThat(MoveEncoding.isDouble(code)).isFalse();
+		assertThat(MoveEncoding.piece(code)).isEqualTo(BLUE);
+		assertThat(MoveEncoding.ticket1(code)).isEqualTo(TAXI);
+		assertThat(MoveEncoding.destination(code)).isEqualTo(192);
+		assertThatThrownBy(() -> MoveEncoding.ticket2(code))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testDoubleMoveAccessors() {
+		int code = MoveEncoding.doubleMove(194, SECRET, 157, TAXI, 133);
+		assertThat(MoveEncoding.isDouble(code)).isTrue();
+		assertThat(MoveEncoding.piece(code)).isEqualTo(MRX);
+		assertThat(MoveEncoding.ticket1(code)).isEqualTo(SECRET);
+		assertThat(MoveEncoding.destination1(code)).isEqualTo(157);
+		assertThat(MoveEncoding.ticket2(code)).isEqualTo(TAXI);
+		assertThat(MoveEncoding.destination(code)).isEqualTo(133);
+	}
+
+	@Test public void testOutOfRangeStationShouldThrow() {
+		assertThatThrownBy(() -> MoveEncoding.single(MRX, 256, TAXI, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testEncodingConsumerMatchesEncode() {
+		GameState state = new PackedGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 104),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 116)));
+		List<Integer> codes = new ArrayList<>();
+		state.forEachAvailableMove(MoveEncoding.encoding(codes::add));
+		assertThat(codes).containsExactlyInAnyOrderElementsOf(state.getAvailableMoves().stream()
+				.map(MoveEncoding::encode).collect(ImmutableList.toImmutableList()));
+	}
+
+	@Test public void testSingleMovesAreInterned() {
+		var table = MoveTable.of(CompactGraph.of(setup.graph));
+		SingleMove move = table.single(MRX, 104, TAXI, 86);
+		assertThat(table.single(MRX, 104, TAXI, 86)).isSameAs(move);
+		assertThat(table.decode(MoveEncoding.encode(move))).isSameAs(move);
+		assertThat(movesAt(104)).filteredOn(move::equals).first().isSameAs(move);
+		// not a route, still a valid move object
+		assertThat(table.single(MRX, 104, TAXI, 1)).isEqualTo(new SingleMove(MRX, 104, TAXI, 1));
+	}
+
+}
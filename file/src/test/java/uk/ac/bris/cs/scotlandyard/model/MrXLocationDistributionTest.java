@@ -0,0 +1,165 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution.MovementModel;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
+
+/**
+ * Tests for {@link MrXLocationDistribution}
+ */
+public class MrXLocationDistributionTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static Model randomGame(int seed) {
+		var random = new Random(seed);
+		int n = 1 + random.nextInt(5);
+		var locations = ScotlandYard.generateDetectiveLocations(seed, n);
+		var detectives = ImmutableList.<Player>builder();
+		for (int i = 0; i < n; i++)
+			detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					defaultDetectiveTickets(), locations.get(i)));
+		return new MyModelFactory().build(setup, new Player(MRX, defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed)), detectives.build());
+	}
+
+	private static double sum(double[] probabilities) {
+		return Arrays.stream(probabilities).sum();
+	}
+
+	@Test public void testMrXIsAlwaysPossibleWithinTrackedCandidates() {
+		for (MovementModel model : ImmutableList.of(MrXLocationDistribution.uniform(),
+				MrXLocationDistribution.distanceWeighted(setup.graph, 2))) {
+			for (int seed = 0; seed < 50; seed++) {
+				var random = new Random(seed);
+				Model game = randomGame(seed);
+				var distribution = new MrXLocationDistribution(setup.graph,
+						ScotlandYard.MRX_LOCATIONS, model);
+				var tracker = new MrXLocationTracker(setup.graph, ScotlandYard.MRX_LOCATIONS);
+				game.registerObserver(distribution);
+				game.registerObserver(tracker);
+				int mrX = ScotlandYard.generateMrXLocation(seed);
+				while (!game.getCurrentBoard().isGameOver()) {
+					var moves = game.getCurrentBoard().getAvailableMoves().asList();
+					Move move = moves.get(random.nextInt(moves.size()));
+					if (move.commencedBy().isMrX()) mrX = move.accept(new Move.FunctionalVisitor<>(
+							m -> m.destination, m -> m.destination2));
+					game.chooseMove(move);
+					if (game.getCurrentBoard().isGameOver()) break;
+					assertThat(distribution.probability(mrX)).as("seed %s", seed).isPositive();
+					assertThat(sum(distribution.probabilities())).isCloseTo(1, within(1e-9));
+					distribution.support().forEach(s -> assertThat(tracker.contains(s)).isTrue());
+				}
+			}
+		}
+	}
+
+	@Test public void testUniformSpreadsEvenlyOverMoves() {
+		Model game = new MyModelFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 46)));
+		var distribution = new MrXLocationDistribution(setup.graph, ImmutableSet.of(45),
+				MrXLocationDistribution.uniform());
+		var tracker = new MrXLocationTracker(setup.graph, ImmutableSet.of(45));
+		game.registerObserver(distribution);
+		game.registerObserver(tracker);
+		game.chooseMove(new SingleMove(MRX, 45, TAXI, 58));
+		assertThat(distribution.support()).isEqualTo(tracker.candidates());
+		tracker.candidates().forEach(s -> assertThat(distribution.probability(s))
+				.isCloseTo(1.0 / tracker.size(), within(1e-12)));
+	}
+
+	@Test public void testDistanceWeightedPrefersStationsAwayFromDetectives() {
+		Model game = new MyModelFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 46)));
+		var distribution = new MrXLocationDistribution(setup.graph, ImmutableSet.of(45),
+				MrXLocationDistribution.distanceWeighted(setup.graph, 3));
+		game.registerObserver(distribution);
+		game.chooseMove(new SingleMove(MRX, 45, TAXI, 58));
+		var oracle = DistanceOracle.of(setup.graph);
+		int best = distribution.mostLikely();
+		distribution.support().forEach(s ->
+				assertThat(oracle.distance(46, s)).isLessThanOrEqualTo(oracle.distance(46, best)));
+	}
+
+	@Test public void testDistanceWeightedMatchesDistanceOracle() {
+		var oracle = DistanceOracle.of(setup.graph);
+		int[] detectives = {46, 91, 13};
+		var weights = MrXLocationDistribution.distanceWeighted(setup.graph, 2).weights(detectives);
+		for (int station : setup.graph.nodes())
+			assertThat(weights.applyAsDouble(station))
+					.as("weight of %d", station)
+					.isEqualTo(Math.pow(1 + oracle.minDistance(station, detectives), 2));
+	}
+
+	@Test public void testDistanceWeightedNeedsNoDistanceTable() {
+		// far past the stations a distance table can hold
+		var graph = readGraph(MapGenerator.generate(50_000, 3).graphText());
+		var weights = MrXLocationDistribution.distanceWeighted(graph, 1).weights(new int[]{1});
+		assertThat(weights.applyAsDouble(1)).isEqualTo(1);
+		for (int neighbour : graph.adjacentNodes(1))
+			assertThat(weights.applyAsDouble(neighbour)).isEqualTo(2);
+	}
+
+	@Test public void testParallelUpdateMatchesSequential() {
+		var random = new Random(5);
+		Model game = randomGame(5);
+		var sequential = new MrXLocationDistribution(setup.graph, ScotlandYard.MRX_LOCATIONS,
+				MrXLocationDistribution.distanceWeighted(setup.graph, 1), Integer.MAX_VALUE);
+		var parallel = new MrXLocationDistribution(setup.graph, ScotlandYard.MRX_LOCATIONS,
+				MrXLocationDistribution.distanceWeighted(setup.graph, 1), 0);
+		game.registerObserver(sequential);
+		game.registerObserver(parallel);
+		while (!game.getCurrentBoard().isGameOver()) {
+			var moves = game.getCurrentBoard().getAvailableMoves().asList();
+			game.chooseMove(moves.get(random.nextInt(moves.size())));
+			assertThat(parallel.probabilities()).isEqualTo(sequential.probabilities());
+		}
+		assertThat(sequential.entries()).isPositive();
+	}
+
+	@Test public void testShorterLogStartsOver() {
+		Model game = randomGame(3);
+		var distribution = new MrXLocationDistribution(setup.graph, ScotlandYard.MRX_LOCATIONS,
+				MrXLocationDistribution.uniform());
+		game.registerObserver(distribution);
+		game.chooseMove(game.getCurrentBoard().getAvailableMoves().iterator().next());
+		distribution.update(randomGame(3).getCurrentBoard());
+		assertThat(distribution.entries()).isZero();
+		assertThat(sum(distribution.probabilities())).isCloseTo(1, within(1e-9));
+	}
+
+	@Test public void testBadArgumentsThrow() {
+		assertThatThrownBy(() -> new MrXLocationDistribution(setup.graph, ImmutableSet.of(),
+				MrXLocationDistribution.uniform())).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new MrXLocationDistribution(setup.graph, ImmutableSet.of(0),
+				MrXLocationDistribution.uniform())).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> MrXLocationDistribution.distanceWeighted(setup.graph, -1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
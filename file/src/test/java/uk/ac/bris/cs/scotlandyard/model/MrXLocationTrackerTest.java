@@ -0,0 +1,111 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests for {@link MrXLocationTracker}
+ */
+public class MrXLocationTrackerTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static Model randomGame(int seed) {
+		var random = new Random(seed);
+		int n = 1 + random.nextInt(5);
+		var locations = ScotlandYard.generateDetectiveLocations(seed, n);
+		var detectives = ImmutableList.<Player>builder();
+		for (int i = 0; i < n; i++)
+			detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					defaultDetectiveTickets(), locations.get(i)));
+		return new MyModelFactory().build(setup, new Player(MRX, defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed)), detectives.build());
+	}
+
+	@Test public void testMrXIsAlwaysACandidate() {
+		for (int seed = 0; seed < 100; seed++) {
+			var random = new Random(seed);
+			Model model = randomGame(seed);
+			var eager = new MrXLocationTracker(setup.graph, ScotlandYard.MRX_LOCATIONS);
+			var lazy = new MrXLocationTracker(setup.graph, ScotlandYard.MRX_LOCATIONS);
+			model.registerObserver(eager);
+			int mrX = ScotlandYard.generateMrXLocation(seed);
+			while (!model.getCurrentBoard().isGameOver()) {
+				var moves = model.getCurrentBoard().getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = move.accept(new Move.FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+				model.chooseMove(move);
+				Board board = model.getCurrentBoard();
+				boolean caughtUp = random.nextInt(4) == 0;
+				if (caughtUp) lazy.update(board);
+				if (board.isGameOver()) break;
+				assertThat(eager.contains(mrX)).as("seed %s: %s", seed, eager).isTrue();
+				assertThat(eager.entries()).isEqualTo(board.getMrXTravelLog().size());
+				// updating every move rules out more stations
+				if (caughtUp) assertThat(lazy.locations()).containsAll(eager.locations());
+				var log = board.getMrXTravelLog();
+				if (!log.isEmpty() && log.get(log.size() - 1).location().isPresent())
+					assertThat(eager.locations()).containsExactly(mrX);
+			}
+		}
+	}
+
+	@Test public void testHiddenMoveFollowsTicketAndSkipsDetectives() {
+		Model model = new MyModelFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 46),
+						new Player(BLUE, defaultDetectiveTickets(), 1)));
+		var tracker = new MrXLocationTracker(setup.graph, ImmutableSet.of(45));
+		model.registerObserver(tracker);
+		model.chooseMove(new SingleMove(MRX, 45, TAXI, 58));
+		var expected = ImmutableSet.<Integer>builder();
+		for (int adjacent : setup.graph.adjacentNodes(45))
+			//noinspection ConstantConditions
+			if (setup.graph.edgeValue(45, adjacent).get().contains(Transport.TAXI) && adjacent != 46)
+				expected.add(adjacent);
+		assertThat(tracker.locations()).isEqualTo(expected.build());
+		assertThat(tracker.candidates().size()).isEqualTo(tracker.size());
+	}
+
+	@Test public void testShorterLogStartsOver() {
+		Model model = randomGame(3);
+		var tracker = MrXLocationTracker.anywhere(setup.graph);
+		model.registerObserver(tracker);
+		model.chooseMove(model.getCurrentBoard().getAvailableMoves().iterator().next());
+		assertThat(tracker.entries()).isPositive();
+		Board fresh = randomGame(3).getCurrentBoard();
+		tracker.update(fresh);
+		assertThat(tracker.entries()).isZero();
+		assertThat(tracker.size()).isEqualTo(setup.graph.nodes().size()
+				- fresh.getPlayers().size() + 1);
+	}
+
+	@Test public void testStartsMustBeOnTheMap() {
+		assertThatThrownBy(() -> new MrXLocationTracker(setup.graph, ImmutableSet.of(0)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,155 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Differential tests of {@link MutableGameState} against {@link MyGameStateFactory}
+ */
+public class MutableGameStateTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static ImmutableMap<Ticket, Integer> randomTickets(Random random, boolean mrX) {
+		return ImmutableMap.of(
+				Ticket.TAXI, random.nextInt(12),
+				Ticket.BUS, random.nextInt(9),
+				Ticket.UNDERGROUND, random.nextInt(5),
+				Ticket.DOUBLE, mrX ? random.nextInt(3) : 0,
+				Ticket.SECRET, mrX ? random.nextInt(6) : 0);
+	}
+
+	private static Player[] randomPlayers(int seed) {
+		var random = new Random(seed);
+		int n = 1 + random.nextInt(5);
+		var locations = ScotlandYard.generateDetectiveLocations(seed, n);
+		var players = new Player[n + 1];
+		players[0] = new Player(MRX, random.nextBoolean() ?
+				defaultMrXTickets() : randomTickets(random, true),
+				ScotlandYard.generateMrXLocation(seed));
+		for (int i = 0; i < n; i++)
+			players[i + 1] = new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					random.nextBoolean() ? defaultDetectiveTickets() : randomTickets(random, false),
+					locations.get(i));
+		return players;
+	}
+
+	private static ImmutableList<Player> detectives(Player[] players) {
+		return ImmutableList.copyOf(players).subList(1, players.length);
+	}
+
+	@Test public void testRandomGamesMatchImmutableEngineWhenMadeAndUnmade() {
+		for (int seed = 0; seed < 200; seed++) {
+			var random = new Random(seed);
+			Player[] players = randomPlayers(seed);
+			GameState state = new MyGameStateFactory().build(setup, players[0], detectives(players));
+			MutableGameState mutable = MutableGameState.of(setup, players[0], detectives(players));
+
+			List<ImmutableBoard> snapshots = new ArrayList<>();
+			int mrX = players[0].location();
+			while (true) {
+				var expected = new ImmutableBoard(state);
+				assertThat(new ImmutableBoard(mutable)).isEqualTo(expected);
+				assertThat(mutable.isGameOver()).isEqualTo(state.isGameOver());
+				assertThat(mutable.mrXLocation()).isEqualTo(mrX);
+				assertThat(mutable.zobristKey()).isEqualTo(state.zobristKey());
+				if (!state.isGameOver())
+					assertThat(mutable.zobristKey()).isEqualTo(Zobrist.key(expected, mrX));
+				snapshots.add(expected);
+				if (state.isGameOver()) break;
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = move.accept(new Move.FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+				// alternate between moves and move codes
+				if (random.nextBoolean()) mutable.make(move);
+				else mutable.make(MoveEncoding.encode(move));
+			}
+			assertThat(mutable.depth()).isEqualTo(snapshots.size() - 1);
+			for (int i = snapshots.size() - 2; i >= 0; i--) {
+				mutable.unmake();
+				assertThat(new ImmutableBoard(mutable)).isEqualTo(snapshots.get(i));
+			}
+			assertThat(mutable.zobristKey()).isEqualTo(new MyGameStateFactory()
+					.build(setup, players[0], detectives(players)).zobristKey());
+			assertThat(mutable.mrXLocation()).isEqualTo(players[0].location());
+		}
+	}
+
+	@Test public void testCopyIsIndependent() {
+		Player[] players = randomPlayers(7);
+		MutableGameState mutable = MutableGameState.of(setup, players[0], detectives(players));
+		var start = new ImmutableBoard(mutable);
+		MutableGameState copy = mutable.copy();
+		copy.make(copy.getAvailableMoves().iterator().next());
+		assertThat(new ImmutableBoard(mutable)).isEqualTo(start);
+		copy.unmake();
+		assertThat(new ImmutableBoard(copy)).isEqualTo(start);
+	}
+
+	@Test public void testCopiesBoardMidGame() {
+		Player[] players = randomPlayers(3);
+		GameState state = new MyGameStateFactory().build(setup, players[0], detectives(players));
+		Move move = state.getAvailableMoves().iterator().next();
+		int mrX = move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+		state = state.advance(move);
+		MutableGameState mutable = MutableGameState.of(state, mrX);
+		assertThat(new ImmutableBoard(mutable)).isEqualTo(new ImmutableBoard(state));
+		assertThat(mutable.zobristKey()).isEqualTo(state.zobristKey());
+		assertThat(mutable.depth()).isZero();
+		assertThatThrownBy(mutable::unmake).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testIllegalMovesAreRejected() {
+		MutableGameState mutable = MutableGameState.of(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 46)));
+		// not RED's turn
+		assertThatThrownBy(() -> mutable.make(new SingleMove(RED, 46, TAXI, 47)))
+				.isInstanceOf(IllegalArgumentException.class);
+		// wrong source
+		assertThatThrownBy(() -> mutable.make(new SingleMove(MRX, 44, TAXI, 58)))
+				.isInstanceOf(IllegalArgumentException.class);
+		// occupied by RED
+		assertThatThrownBy(() -> mutable.make(new SingleMove(MRX, 45, TAXI, 46)))
+				.isInstanceOf(IllegalArgumentException.class);
+		// no such route
+		assertThatThrownBy(() -> mutable.make(new SingleMove(MRX, 45, TAXI, 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(mutable.depth()).isZero();
+	}
+
+	@Test public void testMrXLocationMustMatchBoard() {
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 46)));
+		assertThatThrownBy(() -> MutableGameState.of(state, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
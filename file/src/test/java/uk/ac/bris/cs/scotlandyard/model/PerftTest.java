@@ -0,0 +1,27 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the game state factories against the {@link Perft#REFERENCES} counts
+ */
+public class PerftTest extends ParameterisedModelTestBase {
+
+	@Test public void testReferenceCountsUpToDepthThree() {
+		assertThat(Perft.verify(gameStateFactory, standard24MoveSetup(), 3)).isEmpty();
+	}
+
+	@Test public void testDivideSumsToPerft() {
+		GameState state = Perft.start(gameStateFactory, standard24MoveSetup(), 7, 2);
+		var divided = Perft.divide(state, 2);
+		assertThat(divided.keySet()).isEqualTo(state.getAvailableMoves());
+		assertThat(divided.values().stream().mapToLong(Long::longValue).sum())
+				.isEqualTo(Perft.perft(state, 2))
+				.isEqualTo(Perft.REFERENCES.get(3).count(2));
+	}
+
+}
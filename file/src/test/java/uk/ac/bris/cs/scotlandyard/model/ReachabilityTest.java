@@ -0,0 +1,137 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+
+/**
+ * Tests for {@link Reachability}
+ */
+public class ReachabilityTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static ImmutableMap<Ticket, Integer> tickets(int taxi, int bus, int underground,
+	                                                     int secret) {
+		return ImmutableMap.of(Ticket.TAXI, taxi, Ticket.BUS, bus,
+				Ticket.UNDERGROUND, underground, Ticket.DOUBLE, 0, Ticket.SECRET, secret);
+	}
+
+	/**
+	 * Exhaustive search over every (station, tickets left) state without any pruning
+	 */
+	private static int[] exhaustive(int source, ImmutableMap<Ticket, Integer> tickets) {
+		int[] turns = new int[CompactGraph.of(graph).nodeBound()];
+		Arrays.fill(turns, Reachability.UNREACHABLE);
+		turns[source] = 0;
+		Set<List<Integer>> seen = new HashSet<>();
+		List<List<Integer>> layer = new ArrayList<>();
+		layer.add(List.of(source, tickets.get(Ticket.TAXI), tickets.get(Ticket.BUS),
+				tickets.get(Ticket.UNDERGROUND), tickets.get(Ticket.SECRET)));
+		for (int turn = 1; !layer.isEmpty(); turn++) {
+			List<List<Integer>> next = new ArrayList<>();
+			for (List<Integer> state : layer) {
+				for (int adjacent : graph.adjacentNodes(state.get(0))) {
+					//noinspection ConstantConditions
+					for (Transport t : graph.edgeValueOrDefault(state.get(0), adjacent,
+							ImmutableSet.of())) {
+						int slot = List.of(Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET)
+								.indexOf(t.requiredTicket()) + 1;
+						for (int used : slot == 4 ? new int[]{4} : new int[]{slot, 4}) {
+							if (state.get(used) == 0) continue;
+							List<Integer> after = new ArrayList<>(state);
+							after.set(0, adjacent);
+							after.set(used, state.get(used) - 1);
+							if (seen.add(after)) {
+								next.add(after);
+								if (turns[adjacent] == Reachability.UNREACHABLE) turns[adjacent] = turn;
+							}
+						}
+					}
+				}
+			}
+			layer = next;
+		}
+		return turns;
+	}
+
+	@Test public void testMatchesExhaustiveSearch() {
+		var random = new Random(12);
+		var reachability = Reachability.of(graph);
+		for (int i = 0; i < 30; i++) {
+			int source = ScotlandYard.DETECTIVE_LOCATIONS.get(random.nextInt(13));
+			var tickets = tickets(random.nextInt(5), random.nextInt(4), random.nextInt(3),
+					random.nextInt(3));
+			assertThat(reachability.turns(source, tickets, Integer.MAX_VALUE).toArray())
+					.as("from %s with %s", source, tickets)
+					.isEqualTo(exhaustive(source, tickets));
+		}
+	}
+
+	@Test public void testPlentyOfTicketsMatchesDistances() {
+		var reachability = Reachability.of(graph);
+		var plenty = tickets(50, 50, 50, 0);
+		var road = DistanceOracle.of(graph, EnumSet.complementOf(EnumSet.of(Transport.FERRY)));
+		var all = DistanceOracle.of(graph);
+		for (int source : List.of(1, 67, 108, 194)) {
+			var turns = reachability.turns(source, plenty, Integer.MAX_VALUE);
+			var secret = reachability.turns(source, tickets(0, 0, 0, 50), Integer.MAX_VALUE);
+			for (int target : graph.nodes()) {
+				assertThat(turns.get(target)).isEqualTo(road.distance(source, target));
+				assertThat(secret.get(target)).isEqualTo(all.distance(source, target));
+			}
+		}
+	}
+
+	@Test public void testTicketBudgetsAreRespected() {
+		var reachability = Reachability.of(graph);
+		// 1 to 46 is a single underground or bus route
+		assertThat(reachability.turns(1, tickets(0, 0, 1, 0), 10).get(46)).isEqualTo(1);
+		int byTaxi = DistanceOracle.of(graph, EnumSet.of(Transport.TAXI)).distance(1, 46);
+		assertThat(reachability.turns(1, tickets(20, 0, 0, 0), 20).get(46)).isEqualTo(byTaxi);
+		assertThat(reachability.turns(1, tickets(byTaxi - 1, 0, 0, 0), 20).get(46))
+				.isEqualTo(Reachability.UNREACHABLE);
+		assertThat(reachability.turns(1, tickets(0, 0, 0, 0), 10).get(46))
+				.isEqualTo(Reachability.UNREACHABLE);
+		assertThat(reachability.turns(1, tickets(10, 10, 10, 0), 1).get(46)).isEqualTo(1);
+		assertThat(reachability.turns(1, tickets(10, 10, 10, 0), 0).get(46))
+				.isEqualTo(Reachability.UNREACHABLE);
+	}
+
+	@Test public void testSetupAndPlayerShortcutIsCached() {
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		var player = new Player(RED, defaultDetectiveTickets(), 1);
+		assertThat(Reachability.turns(setup, player)).isSameAs(Reachability.turns(setup, player));
+		assertThat(Reachability.turns(setup, player).get(1)).isZero();
+	}
+
+	@Test public void testSourceMustBeOnTheMap() {
+		assertThatThrownBy(() -> Reachability.of(graph).turns(0, tickets(1, 1, 1, 1), 5))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
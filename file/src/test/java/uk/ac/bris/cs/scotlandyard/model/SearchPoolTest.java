@@ -0,0 +1,159 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.atlassian.fugue.Pair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link SearchPool}
+ */
+public class SearchPoolTest {
+
+	private final SearchPool pool = new SearchPool(1);
+
+	@After public void closePool() { pool.close(); }
+
+	private static long seconds(long n) { return System.nanoTime() + TimeUnit.SECONDS.toNanos(n); }
+
+	// occupies the only worker until the latch is released
+	private Future<Boolean> block(CountDownLatch release) {
+		var started = new CountDownLatch(1);
+		Future<Boolean> blocker = pool.startTurn("blocker", seconds(60)).submit(() -> {
+			started.countDown();
+			return release.await(10, TimeUnit.SECONDS);
+		});
+		try {
+			assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+		return blocker;
+	}
+
+	@Test public void testDeadlineLeavesMargin() {
+		assertThat(SearchPool.deadline(0, new Pair<>(1L, TimeUnit.SECONDS)))
+				.isEqualTo(TimeUnit.MILLISECONDS.toNanos(900));
+		assertThat(SearchPool.deadline(0, new Pair<>(200L, TimeUnit.MILLISECONDS)))
+				.isEqualTo(TimeUnit.MILLISECONDS.toNanos(150));
+		assertThat(SearchPool.deadline(0, new Pair<>(60L, TimeUnit.MILLISECONDS)))
+				.isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+	}
+
+	@Test public void testEarliestDeadlineRunsFirst() throws Exception {
+		var release = new CountDownLatch(1);
+		block(release);
+		List<String> order = new CopyOnWriteArrayList<>();
+		var late = pool.startTurn("late", seconds(30));
+		var early = pool.startTurn("early", seconds(20));
+		Future<?> a = late.submit(() -> order.add("late"));
+		Future<?> b = early.submit(() -> order.add("early"));
+		Future<?> c = early.submit(() -> order.add("early again"));
+		assertThat(pool.queued()).isEqualTo(3);
+		release.countDown();
+		a.get();
+		b.get();
+		c.get();
+		assertThat(order).containsExactly("early", "early again", "late");
+	}
+
+	@Test public void testExpiredTasksDoNotRun() throws Exception {
+		var release = new CountDownLatch(1);
+		Future<Boolean> blocker = block(release);
+		var ran = new AtomicBoolean();
+		var turn = pool.startTurn("expiring", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20));
+		Future<?> task = turn.submit(() -> {
+			ran.set(true);
+			return null;
+		});
+		Thread.sleep(50);
+		release.countDown();
+		assertThat(blocker.get()).isTrue();
+		assertThatThrownBy(task::get).isInstanceOf(CancellationException.class);
+		assertThat(ran).isFalse();
+		assertThat(turn.expired()).isTrue();
+		assertThat(turn.remainingNanos()).isZero();
+	}
+
+	@Test public void testCancelStopsCooperativeTasks() throws Exception {
+		var turn = pool.startTurn("cancelled", seconds(60));
+		var started = new CountDownLatch(1);
+		Future<Integer> task = turn.submit(() -> {
+			started.countDown();
+			int spins = 0;
+			while (!turn.expired()) spins++;
+			return spins;
+		});
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		turn.close();
+		assertThat(turn.expired()).isTrue();
+		assertThatThrownBy(() -> turn.submit(() -> 1)).isInstanceOf(IllegalStateException.class);
+		// the worker is free again
+		assertThat(pool.startTurn("next", seconds(60)).submit(() -> 42).get(10, TimeUnit.SECONDS))
+				.isEqualTo(42);
+		assertThat(task.isDone()).isTrue();
+	}
+
+	@Test public void testTasksMayForkSubtasks() throws Exception {
+		final class Sum extends RecursiveTask<Long> {
+			private static final long serialVersionUID = 1L;
+			final int from;
+			final int to;
+			Sum(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+			@Override protected Long compute() {
+				if (to - from <= 16) {
+					long sum = 0;
+					for (int i = from; i < to; i++) sum += i;
+					return sum;
+				}
+				int mid = (from + to) / 2;
+				var left = new Sum(from, mid);
+				left.fork();
+				return new Sum(mid, to).compute() + left.join();
+			}
+		}
+		var turn = pool.startTurn("fork", seconds(60));
+		assertThat(turn.submit(() -> new Sum(0, 1000).compute()).get()).isEqualTo(499500L);
+	}
+
+	@Test public void testUsageCountsProcessorTimePerTurn() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			try (var turn = pool.startTurn("busy", seconds(60))) {
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+				turn.submit(() -> {
+					long x = 0;
+					while (System.nanoTime() < end) x++;
+					return x;
+				}).get();
+				turn.call(() -> 1);
+				assertThat(turn.tasks()).isEqualTo(2);
+				assertThat(turn.cpuNanos()).isPositive();
+			}
+		}
+		var usage = pool.usage("busy");
+		assertThat(usage.turns()).isEqualTo(2);
+		assertThat(usage.cpuNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+		assertThat(usage.maxCpuNanos()).isBetween((long) usage.meanCpuNanos(), usage.cpuNanos());
+		assertThat(pool.usage()).containsKey("busy");
+		assertThat(pool.usage("idle").turns()).isZero();
+	}
+
+	@Test public void testBadParallelismThrows() {
+		assertThatThrownBy(() -> new SearchPool(0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,105 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link StationSet}, around the boundaries of its {@code long} words
+ */
+public class StationSetTest {
+
+	private static List<Integer> stations(StationSet set) {
+		List<Integer> stations = new ArrayList<>();
+		set.forEach(stations::add);
+		return stations;
+	}
+
+	@Test public void testAddAndContainsAtWordBoundaries() {
+		var set = new StationSet(200);
+		for (int station : new int[]{63, 64, 65}) {
+			assertThat(set.contains(station)).isFalse();
+			set.add(station);
+			assertThat(set.contains(station)).isTrue();
+		}
+		assertThat(set.contains(62)).isFalse();
+		assertThat(set.contains(66)).isFalse();
+		assertThat(set.contains(127)).isFalse();
+		assertThat(set.contains(128)).isFalse();
+		assertThat(set.size()).isEqualTo(3);
+		assertThat(stations(set)).containsExactly(63, 64, 65);
+	}
+
+	@Test public void testRemoveAtWordBoundaries() {
+		var set = new StationSet(200);
+		set.add(63);
+		set.add(64);
+		set.add(65);
+		set.remove(64);
+		assertThat(stations(set)).containsExactly(63, 65);
+		assertThat(set.size()).isEqualTo(2);
+		set.remove(63);
+		assertThat(stations(set)).containsExactly(65);
+		set.remove(65);
+		assertThat(set.isEmpty()).isTrue();
+		assertThat(set.size()).isZero();
+		// removing what is not there, or could never be, does nothing
+		set.remove(64);
+		set.remove(-1);
+		set.remove(200);
+		assertThat(set.isEmpty()).isTrue();
+	}
+
+	@Test public void testNextAcrossWordBoundaries() {
+		var set = new StationSet(200);
+		set.add(63);
+		set.add(65);
+		set.add(199);
+		assertThat(set.next(0)).isEqualTo(63);
+		assertThat(set.next(63)).isEqualTo(63);
+		assertThat(set.next(64)).isEqualTo(65);
+		assertThat(set.next(65)).isEqualTo(65);
+		assertThat(set.next(66)).isEqualTo(199);
+		assertThat(set.next(200)).isEqualTo(-1);
+		assertThat(set.next(-5)).isEqualTo(63);
+		set.remove(199);
+		assertThat(set.next(66)).isEqualTo(-1);
+		set.add(64);
+		assertThat(set.next(64)).isEqualTo(64);
+	}
+
+	@Test public void testBoundOfWholeWords() {
+		for (int bound : new int[]{63, 64, 65}) {
+			var set = new StationSet(bound);
+			set.add(bound - 1);
+			assertThat(set.contains(bound - 1)).isTrue();
+			assertThat(set.contains(bound)).isFalse();
+			assertThat(set.next(0)).isEqualTo(bound - 1);
+			assertThat(set.size()).isEqualTo(1);
+			assertThatThrownBy(() -> set.add(bound)).isInstanceOf(IndexOutOfBoundsException.class);
+		}
+		assertThatThrownBy(() -> new StationSet(200).add(-1))
+				.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> new StationSet(-1)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(new StationSet(0).next(0)).isEqualTo(-1);
+	}
+
+	@Test public void testCopyIsIndependent() {
+		var set = new StationSet(200);
+		set.add(64);
+		var copy = set.copy();
+		assertThat(copy).isEqualTo(set).hasSameHashCodeAs(set);
+		copy.add(65);
+		assertThat(set.contains(65)).isFalse();
+		assertThat(copy).isNotEqualTo(set);
+		set.clear();
+		assertThat(set.isEmpty()).isTrue();
+		assertThat(copy.size()).isEqualTo(2);
+		assertThat(copy).hasToString("[64, 65]");
+	}
+
+}